@@ -0,0 +1,39 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+/**
+ * A listener receiving the changes of a check in one call, instead of one
+ * call per change; registered with an observer through a
+ * {@link NIOBatchingListener}.
+ *
+ * @see NIOFileChangeSet
+ */
+public interface NIOBatchListener {
+
+    /**
+     * Changes found by a check.
+     * <p>
+     * Called once at the end of every check, even when nothing changed, and
+     * also during the check each time the changes reach the maximum batch
+     * size, if set.
+     *
+     * @param observer The file system observer
+     * @param changes  The changes
+     */
+    void onChangeSet(final NIOFileAlterationObserver observer, final NIOFileChangeSet changes);
+}
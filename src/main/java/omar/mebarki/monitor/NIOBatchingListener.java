@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the changes of each check of an observer and hands them over to
+ * a {@link NIOBatchListener} in change sets.
+ * <pre>
+ * observer.addListener(new NIOBatchingListener(batchListener, 10000));
+ * </pre>
+ */
+public class NIOBatchingListener extends NIOFileAlterationListenerAdaptor implements NIOFileChangeListener {
+
+    private final NIOBatchListener listener;
+    private final int maxBatchSize;
+    private final List<NIOFileChange> creates = new ArrayList<>();
+    private final List<NIOFileChange> changes = new ArrayList<>();
+    private final List<NIOFileChange> deletes = new ArrayList<>();
+    private NIOFileAlterationObserver observer;
+
+    /**
+     * Construct a batching listener delivering all the changes of a check at once.
+     *
+     * @param listener The batch listener
+     */
+    public NIOBatchingListener(final NIOBatchListener listener) {
+        this(listener, 0);
+    }
+
+    /**
+     * Construct a batching listener.
+     *
+     * @param listener     The batch listener
+     * @param maxBatchSize The maximum number of changes per change set, or 0 for no maximum
+     */
+    public NIOBatchingListener(final NIOBatchListener listener, final int maxBatchSize) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Batch listener is missing");
+        }
+        if (maxBatchSize < 0) {
+            throw new IllegalArgumentException("Maximum batch size must not be negative");
+        }
+        this.listener = listener;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Return the maximum number of changes per change set.
+     *
+     * @return the maximum batch size, or 0 for no maximum
+     */
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * File system observer started checking event.
+     *
+     * @param observer The file system observer
+     */
+    @Override
+    public void onStart(final NIOFileAlterationObserver observer) {
+        this.observer = observer;
+        clear();
+    }
+
+    /**
+     * Add a change to the batch.
+     *
+     * @param change The change
+     */
+    @Override
+    public void onChange(final NIOFileChange change) {
+        switch (change.getKind()) {
+            case CREATE:
+                creates.add(change);
+                break;
+            case CHANGE:
+                changes.add(change);
+                break;
+            default:
+                deletes.add(change);
+                break;
+        }
+        if (maxBatchSize > 0 && creates.size() + changes.size() + deletes.size() >= maxBatchSize) {
+            flush(false);
+        }
+    }
+
+    /**
+     * Deliver the last change set of the check.
+     *
+     * @param observer The file system observer
+     */
+    @Override
+    public void onStop(final NIOFileAlterationObserver observer) {
+        this.observer = observer;
+        flush(true);
+        this.observer = null;
+    }
+
+    private void flush(final boolean last) {
+        final NIOFileChangeSet set = new NIOFileChangeSet(creates, changes, deletes, last);
+        clear();
+        listener.onChangeSet(observer, set);
+    }
+
+    private void clear() {
+        creates.clear();
+        changes.clear();
+        deletes.clear();
+    }
+}
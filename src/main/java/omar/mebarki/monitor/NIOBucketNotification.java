@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A record of an S3 bucket event notification.
+ * <p>
+ * Notification messages are JSON documents holding a list of records, either
+ * as sent by S3 to a queue or a webhook, or wrapped into the "Message" field
+ * of an SNS notification. Test events sent when a notification is configured
+ * hold no record.
+ */
+public final class NIOBucketNotification {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final String eventName;
+    private final String bucket;
+    private final String key;
+    private final long size;
+    private final long eventTime;
+
+    /**
+     * Construct a notification record.
+     *
+     * @param eventName The event name, for example "ObjectCreated:Put"
+     * @param bucket    The bucket name
+     * @param key       The decoded object key
+     * @param size      The object size, zero for removals
+     * @param eventTime The time of the event in milliseconds, zero if unknown
+     */
+    public NIOBucketNotification(final String eventName, final String bucket, final String key,
+                                 final long size, final long eventTime) {
+        if (eventName == null) {
+            throw new IllegalArgumentException("Event name is missing");
+        }
+        if (bucket == null) {
+            throw new IllegalArgumentException("Bucket is missing");
+        }
+        if (key == null) {
+            throw new IllegalArgumentException("Key is missing");
+        }
+        this.eventName = eventName;
+        this.bucket = bucket;
+        this.key = key;
+        this.size = size;
+        this.eventTime = eventTime;
+    }
+
+    /**
+     * Parse the records of a notification message.
+     *
+     * @param message The JSON notification message
+     * @return the records, empty for a test event
+     * @throws IOException if the message is not a notification
+     */
+    public static List<NIOBucketNotification> parse(final String message) throws IOException {
+        JsonNode json = MAPPER.readTree(message);
+        if (json == null || !json.isObject()) {
+            throw new IOException("Not a bucket notification: " + message);
+        }
+        if (json.has("Message") && json.path("Message").isTextual()) {
+            // delivered through SNS
+            json = MAPPER.readTree(json.path("Message").asText());
+        }
+        if (!json.has("Records")) {
+            if ("s3:TestEvent".equals(json.path("Event").asText())) {
+                return Collections.emptyList();
+            }
+            throw new IOException("Not a bucket notification: " + message);
+        }
+        final List<NIOBucketNotification> notifications = new ArrayList<>();
+        for (final JsonNode record : json.path("Records")) {
+            final JsonNode s3 = record.path("s3");
+            final String eventName = record.path("eventName").asText(null);
+            final String bucket = s3.path("bucket").path("name").asText(null);
+            final String key = s3.path("object").path("key").asText(null);
+            if (eventName == null || bucket == null || key == null) {
+                throw new IOException("Incomplete bucket notification record: " + record);
+            }
+            notifications.add(new NIOBucketNotification(eventName, bucket, URLDecoder.decode(key, "UTF-8"),
+                    s3.path("object").path("size").asLong(0), parseTime(record.path("eventTime").asText(null))));
+        }
+        return notifications;
+    }
+
+    private static long parseTime(final String time) {
+        if (time == null) {
+            return 0;
+        }
+        try {
+            return Instant.parse(time).toEpochMilli();
+        } catch (final DateTimeParseException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Return the event name.
+     *
+     * @return the event name, for example "ObjectCreated:Put"
+     */
+    public String getEventName() {
+        return eventName;
+    }
+
+    /**
+     * Return whether the object was removed.
+     *
+     * @return true for "ObjectRemoved" events
+     */
+    public boolean isRemoval() {
+        return eventName.startsWith("ObjectRemoved");
+    }
+
+    /**
+     * Return the bucket name.
+     *
+     * @return the bucket name
+     */
+    public String getBucket() {
+        return bucket;
+    }
+
+    /**
+     * Return the object key.
+     *
+     * @return the decoded object key
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Return the object size.
+     *
+     * @return the size in bytes, zero for removals
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Return the time of the event.
+     *
+     * @return the time in milliseconds, zero if unknown
+     */
+    public long getEventTime() {
+        return eventTime;
+    }
+
+    /**
+     * Provide a String representation of this record.
+     *
+     * @return a String representation of this record
+     */
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + eventName + ", " + bucket + "/" + key + "]";
+    }
+}
@@ -0,0 +1,345 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Publishes the changes found by observers as a Reactive Streams
+ * {@link Publisher}, paced by the demand of its subscribers.
+ * <p>
+ * Registered with observers, the publisher hands each change to every
+ * subscriber that requested more, right away on the thread of the check.
+ * Changes beyond the demand of a subscriber are buffered, up to a limit per
+ * subscriber; once the buffer of a subscriber is full, the check waits for
+ * it to request more, so a slow subscriber slows the scan down instead of
+ * letting changes pile up. The slowest subscriber sets the pace, unless a
+ * maximum wait is set: a subscriber that does not request more in time is
+ * then failed, so that it cannot hold the observer's check forever.
+ * <pre>
+ * NIOChangePublisher publisher = new NIOChangePublisher(1024);
+ * observer.addListener(publisher);
+ * publisher.subscribe(subscriber);
+ * </pre>
+ * Subscribers are completed when the publisher is closed, once they have
+ * received the changes buffered for them.
+ */
+public class NIOChangePublisher extends NIOFileAlterationListenerAdaptor
+        implements NIOFileChangeListener, Publisher<NIOFileChange>, Closeable {
+
+    private final int bufferSize;
+    private final long maxWaitNanos;
+    private final List<ChangeSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private volatile boolean closed;
+
+    /**
+     * Construct a publisher.
+     *
+     * @param bufferSize The number of changes buffered per subscriber before the checks wait
+     */
+    public NIOChangePublisher(final int bufferSize) {
+        this(bufferSize, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Construct a publisher bounding how long a check waits for a subscriber.
+     *
+     * @param bufferSize The number of changes buffered per subscriber before the checks wait
+     * @param maxWait    The longest a check waits for a subscriber whose buffer
+     *                   is full before failing it, zero to wait as long as needed
+     * @param unit       The unit of the maximum wait
+     */
+    public NIOChangePublisher(final int bufferSize, final long maxWait, final TimeUnit unit) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be positive");
+        }
+        if (maxWait < 0) {
+            throw new IllegalArgumentException("Maximum wait must not be negative");
+        }
+        if (unit == null) {
+            throw new IllegalArgumentException("Time unit is missing");
+        }
+        this.bufferSize = bufferSize;
+        this.maxWaitNanos = unit.toNanos(maxWait);
+    }
+
+    /**
+     * Return the number of changes buffered per subscriber before the checks wait.
+     *
+     * @return the buffer size
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Return the longest a check waits for a subscriber whose buffer is full.
+     *
+     * @param unit The unit of the result
+     * @return the maximum wait, zero if unbounded
+     */
+    public long getMaxWait(final TimeUnit unit) {
+        return unit.convert(maxWaitNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Return the number of subscribers not cancelled nor completed.
+     *
+     * @return the number of subscribers
+     */
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    /**
+     * Subscribe to the changes found from now on.
+     *
+     * @param subscriber The subscriber
+     */
+    @Override
+    public void subscribe(final Subscriber<? super NIOFileChange> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("Subscriber is missing");
+        }
+        final ChangeSubscription subscription = new ChangeSubscription(subscriber);
+        subscriptions.add(subscription);
+        subscriber.onSubscribe(subscription);
+        if (closed) {
+            subscription.complete();
+        }
+    }
+
+    /**
+     * Hand a change over to every subscriber, waiting for those whose buffer is full.
+     *
+     * @param change The change
+     */
+    @Override
+    public void onChange(final NIOFileChange change) {
+        for (final ChangeSubscription subscription : subscriptions) {
+            subscription.offer(change);
+        }
+    }
+
+    /**
+     * Complete the subscribers once they have received the changes buffered
+     * for them; changes found afterwards are not published.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (final ChangeSubscription subscription : subscriptions) {
+            subscription.complete();
+        }
+    }
+
+    /**
+     * The subscription of a subscriber, with the changes buffered for it.
+     */
+    private final class ChangeSubscription implements Subscription {
+
+        private final Subscriber<? super NIOFileChange> subscriber;
+        private final ArrayDeque<NIOFileChange> buffer = new ArrayDeque<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notFull = lock.newCondition();
+        private final AtomicInteger wip = new AtomicInteger();
+        private long demand;
+        private boolean completing;
+        private Throwable error;
+        private boolean done;
+
+        private ChangeSubscription(final Subscriber<? super NIOFileChange> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(final long n) {
+            if (n <= 0) {
+                fail(new IllegalArgumentException("Requested " + n + " changes, expected a positive number"));
+                return;
+            }
+            lock.lock();
+            try {
+                demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+            } finally {
+                lock.unlock();
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            lock.lock();
+            try {
+                done = true;
+                buffer.clear();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            subscriptions.remove(this);
+        }
+
+        private void offer(final NIOFileChange change) {
+            boolean timedOut = false;
+            lock.lock();
+            try {
+                boolean interrupted = false;
+                long nanos = maxWaitNanos;
+                while (buffer.size() >= bufferSize && !done && !completing && error == null) {
+                    try {
+                        if (maxWaitNanos == 0) {
+                            notFull.await();
+                        } else if (nanos > 0) {
+                            nanos = notFull.awaitNanos(nanos);
+                        } else {
+                            timedOut = true;
+                            break;
+                        }
+                    } catch (final InterruptedException e) {
+                        // the change is still buffered, beyond the limit, rather than lost
+                        interrupted = true;
+                        break;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+                if (done || completing || error != null) {
+                    return;
+                }
+                if (!timedOut) {
+                    buffer.add(change);
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (timedOut) {
+                fail(new IllegalStateException("Subscriber did not request more changes within "
+                        + TimeUnit.NANOSECONDS.toMillis(maxWaitNanos) + " ms"));
+                return;
+            }
+            drain();
+        }
+
+        private void complete() {
+            lock.lock();
+            try {
+                completing = true;
+                // a check waiting for room returns, the change not being published
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            drain();
+        }
+
+        /**
+         * Fail the subscriber; the error is signalled by {@link #drain()},
+         * so that it never overlaps a change being signalled.
+         */
+        private void fail(final Throwable failure) {
+            lock.lock();
+            try {
+                if (done || error != null) {
+                    return;
+                }
+                error = failure;
+                buffer.clear();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            subscriptions.remove(this);
+            drain();
+        }
+
+        /**
+         * Signal the subscriber of the changes it requested, from one thread
+         * at a time: the thread that finds another one draining leaves the
+         * work to it.
+         */
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            while (true) {
+                while (true) {
+                    final NIOFileChange change;
+                    boolean completed = false;
+                    final Throwable failure;
+                    lock.lock();
+                    try {
+                        if (done) {
+                            return;
+                        }
+                        failure = error;
+                        if (failure != null) {
+                            done = true;
+                        } else if (buffer.isEmpty() && completing) {
+                            done = true;
+                            completed = true;
+                        }
+                        change = failure != null || completed || demand == 0 ? null : buffer.poll();
+                        if (change != null) {
+                            demand--;
+                            notFull.signal();
+                        }
+                    } finally {
+                        lock.unlock();
+                    }
+                    if (failure != null) {
+                        subscriber.onError(failure);
+                        return;
+                    }
+                    if (completed) {
+                        subscriptions.remove(this);
+                        subscriber.onComplete();
+                        return;
+                    }
+                    if (change == null) {
+                        break;
+                    }
+                    try {
+                        subscriber.onNext(change);
+                    } catch (final RuntimeException e) {
+                        // a subscriber throwing has violated the specification, cancel it
+                        e.printStackTrace();
+                        cancel();
+                        return;
+                    }
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+    }
+}
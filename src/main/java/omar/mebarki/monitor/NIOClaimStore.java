@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import java.io.IOException;
+
+/**
+ * A store of work claims shared by competing consumers.
+ * <p>
+ * A claim gives a unit of work to one consumer until its visibility timeout
+ * expires, after which any consumer may claim it again, until the work is
+ * completed. Implementations must make each operation atomic across all the
+ * consumers sharing the store.
+ *
+ * @see NIOFileClaimStore
+ * @see NIOWorkQueueListener
+ */
+public interface NIOClaimStore {
+
+    /**
+     * Claim a unit of work, or extend the claim if already held by the consumer.
+     *
+     * @param key               The key of the work
+     * @param consumer          The consumer claiming the work
+     * @param visibilityTimeout The time in milliseconds until other consumers may claim the work
+     * @return true if the consumer holds the claim, false if another consumer
+     * does or the work is completed
+     * @throws IOException if the store cannot be accessed
+     */
+    boolean tryClaim(String key, String consumer, long visibilityTimeout) throws IOException;
+
+    /**
+     * Mark a unit of work completed, so it is never claimed again.
+     *
+     * @param key      The key of the work
+     * @param consumer The consumer holding the claim
+     * @return true if the work is completed, false if the claim expired and
+     * another consumer holds it
+     * @throws IOException if the store cannot be accessed
+     */
+    boolean complete(String key, String consumer) throws IOException;
+
+    /**
+     * Give up a claim, so other consumers may claim the work right away;
+     * does nothing if another consumer holds it.
+     *
+     * @param key      The key of the work
+     * @param consumer The consumer holding the claim
+     * @throws IOException if the store cannot be accessed
+     */
+    void abandon(String key, String consumer) throws IOException;
+
+    /**
+     * Return whether a unit of work is completed.
+     *
+     * @param key The key of the work
+     * @return true if the work is completed
+     * @throws IOException if the store cannot be accessed
+     */
+    boolean isCompleted(String key) throws IOException;
+}
@@ -0,0 +1,321 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Divides the scanning of observed directories between the nodes of a
+ * cluster.
+ * <p>
+ * The entries of each observed directory are divided into shards (see
+ * {@link NIOFileAlterationObserver#setShards(int, BitSet)}), which the nodes
+ * claim through leases of a shared {@link NIOLeaseStore}. Each node also
+ * holds a lease on its own id, so the nodes alive are known. On every round,
+ * a node renews its leases and balances the shards: it releases shards while
+ * it holds more than its share, or more than the least share while another
+ * node holds less, and claims free shards up to its share. The shards of a
+ * node that leaves are claimed by the others once its leases expire, and a
+ * node that joins gets its share as the others release theirs.
+ * <p>
+ * Rounds run every third of the lease duration once started, so a node
+ * normally renews its leases twice before they expire. The observers are
+ * restricted to the shards owned from another thread, so that renewals
+ * never wait for a check. The next check of a shard newly owned reports
+ * the entries modified during the handover window before it was owned,
+ * which the previous owner may not have seen.
+ */
+public class NIOClusterCoordinator implements Runnable, Closeable {
+
+    static final String NODE_PREFIX = "node/";
+    static final String SHARD_PREFIX = "shard/";
+
+    private final NIOLeaseStore store;
+    private final String nodeId;
+    private final int shardCount;
+    private final long leaseDuration;
+    private final List<NIOFileAlterationObserver> observers = new CopyOnWriteArrayList<>();
+    private BitSet owned = new BitSet();
+    private long handoverWindow;
+    private long handoverTime = Long.MAX_VALUE;
+    private ScheduledExecutorService scheduler;
+    private ExecutorService loader;
+
+    /**
+     * Construct a coordinator.
+     *
+     * @param store         The lease store shared by the nodes
+     * @param nodeId        The id of this node, unique in the cluster
+     * @param shardCount    The number of shards, the same on every node
+     * @param leaseDuration The time in milliseconds a lease lasts without being renewed
+     */
+    public NIOClusterCoordinator(final NIOLeaseStore store, final String nodeId, final int shardCount,
+                                 final long leaseDuration) {
+        if (store == null) {
+            throw new IllegalArgumentException("Lease store is missing");
+        }
+        if (nodeId == null) {
+            throw new IllegalArgumentException("Node id is missing");
+        }
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be positive");
+        }
+        if (leaseDuration < 3) {
+            throw new IllegalArgumentException("Lease duration must be at least 3 milliseconds");
+        }
+        this.store = store;
+        this.nodeId = nodeId;
+        this.shardCount = shardCount;
+        this.leaseDuration = leaseDuration;
+        this.handoverWindow = leaseDuration;
+    }
+
+    /**
+     * Add an observer whose directory is divided between the nodes.
+     *
+     * @param observer The observer, restricted right away to the shards owned
+     */
+    public synchronized void addObserver(final NIOFileAlterationObserver observer) {
+        if (observer != null && !observers.contains(observer)) {
+            observers.add(observer);
+            observer.setShards(shardCount, owned);
+        }
+    }
+
+    /**
+     * Remove an observer, which then observes its whole directory again.
+     *
+     * @param observer The observer
+     */
+    public synchronized void removeObserver(final NIOFileAlterationObserver observer) {
+        if (observer != null && observers.remove(observer)) {
+            observer.setShards(0, null);
+        }
+    }
+
+    /**
+     * Return the id of this node.
+     *
+     * @return the node id
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Return the handover window.
+     *
+     * @return the time in milliseconds
+     * @see #setHandoverWindow(long)
+     */
+    public synchronized long getHandoverWindow() {
+        return handoverWindow;
+    }
+
+    /**
+     * Set how long before a shard is owned its changes are reported by the
+     * next check: the previous owner may have stopped checking it that long
+     * before. Defaults to the lease duration; add the interval between the
+     * checks of the observers.
+     *
+     * @param handoverWindow The time in milliseconds
+     */
+    public synchronized void setHandoverWindow(final long handoverWindow) {
+        if (handoverWindow < 0) {
+            throw new IllegalArgumentException("Handover window must not be negative");
+        }
+        this.handoverWindow = handoverWindow;
+    }
+
+    /**
+     * Return the shards owned by this node.
+     *
+     * @return a copy of the set of owned shards
+     */
+    public synchronized BitSet getOwnedShards() {
+        return (BitSet) owned.clone();
+    }
+
+    /**
+     * Run a first round, then a round every third of the lease duration.
+     *
+     * @throws IOException if the lease store cannot be accessed
+     */
+    public synchronized void start() throws IOException {
+        if (scheduler != null) {
+            throw new IllegalStateException("Coordinator is already running");
+        }
+        loader = Executors.newSingleThreadExecutor(runnable -> newThread(runnable, "-loader"));
+        rebalance();
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> newThread(runnable, ""));
+        scheduler.scheduleWithFixedDelay(this, leaseDuration / 3, leaseDuration / 3, TimeUnit.MILLISECONDS);
+    }
+
+    private Thread newThread(final Runnable runnable, final String suffix) {
+        final Thread thread = new Thread(runnable, getClass().getSimpleName() + "-" + nodeId + suffix);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Stop the rounds and release the leases of this node.
+     *
+     * @throws IOException if the lease store cannot be accessed
+     */
+    @Override
+    public void close() throws IOException {
+        final ScheduledExecutorService current;
+        final ExecutorService currentLoader;
+        synchronized (this) {
+            current = scheduler;
+            currentLoader = loader;
+            scheduler = null;
+            loader = null;
+        }
+        try {
+            if (current != null) {
+                current.shutdownNow();
+                current.awaitTermination(leaseDuration, TimeUnit.MILLISECONDS);
+            }
+            if (currentLoader != null) {
+                currentLoader.shutdown();
+                currentLoader.awaitTermination(leaseDuration, TimeUnit.MILLISECONDS);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            for (int shard = owned.nextSetBit(0); shard >= 0; shard = owned.nextSetBit(shard + 1)) {
+                store.release(SHARD_PREFIX + shard, nodeId);
+            }
+            store.release(NODE_PREFIX + nodeId, nodeId);
+            owned = new BitSet();
+            for (final NIOFileAlterationObserver observer : observers) {
+                observer.setShards(shardCount, owned);
+            }
+        }
+    }
+
+    /**
+     * Run a round.
+     */
+    @Override
+    public void run() {
+        try {
+            rebalance();
+        } catch (final IOException | RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Renew the leases of this node and balance the shards, restricting the
+     * observers to the shards owned afterwards. Once started, the observers
+     * are restricted from another thread.
+     *
+     * @throws IOException if the lease store cannot be accessed
+     */
+    public synchronized void rebalance() throws IOException {
+        if (!store.tryAcquire(NODE_PREFIX + nodeId, nodeId, leaseDuration)) {
+            throw new IOException("Node " + nodeId + " is already running");
+        }
+        final BitSet held = new BitSet();
+        for (int shard = owned.nextSetBit(0); shard >= 0; shard = owned.nextSetBit(shard + 1)) {
+            if (store.tryAcquire(SHARD_PREFIX + shard, nodeId, leaseDuration)) {
+                held.set(shard);
+            }
+        }
+
+        final Set<String> nodes = new TreeSet<>(store.getOwners(NODE_PREFIX).values());
+        nodes.add(nodeId);
+        final Map<String, String> owners = store.getOwners(SHARD_PREFIX);
+        final Map<String, Integer> counts = new HashMap<>();
+        for (final String node : nodes) {
+            counts.put(node, 0);
+        }
+        for (final String owner : owners.values()) {
+            counts.computeIfPresent(owner, (node, count) -> count + 1);
+        }
+        final int least = shardCount / nodes.size();
+        final int most = least + (shardCount % nodes.size() == 0 ? 0 : 1);
+        boolean starving = false;
+        for (final Map.Entry<String, Integer> count : counts.entrySet()) {
+            if (!count.getKey().equals(nodeId) && count.getValue() < least) {
+                starving = true;
+            }
+        }
+        final int share = starving ? least : most;
+
+        for (int shard = held.length() - 1; shard >= 0 && held.cardinality() > share; shard--) {
+            if (held.get(shard)) {
+                store.release(SHARD_PREFIX + shard, nodeId);
+                held.clear(shard);
+            }
+        }
+        final int start = Math.floorMod(nodeId.hashCode(), shardCount);
+        for (int i = 0; i < shardCount && held.cardinality() < share; i++) {
+            final int shard = (start + i) % shardCount;
+            if (!held.get(shard) && !owners.containsKey(SHARD_PREFIX + shard)
+                    && store.tryAcquire(SHARD_PREFIX + shard, nodeId, leaseDuration)) {
+                held.set(shard);
+            }
+        }
+
+        if (!held.equals(owned)) {
+            final BitSet taken = (BitSet) held.clone();
+            taken.andNot(owned);
+            if (!taken.isEmpty()) {
+                handoverTime = Math.min(handoverTime, System.currentTimeMillis() - handoverWindow);
+            }
+            owned = held;
+            if (loader != null) {
+                loader.execute(this::restrictObservers);
+            } else {
+                restrictObservers();
+            }
+        }
+    }
+
+    /**
+     * Restrict the observers to the shards owned, the shards newly owned
+     * being reported as of the earliest handover time not applied yet.
+     */
+    private void restrictObservers() {
+        final BitSet shards;
+        final long since;
+        synchronized (this) {
+            shards = owned;
+            since = handoverTime;
+            handoverTime = Long.MAX_VALUE;
+        }
+        for (final NIOFileAlterationObserver observer : observers) {
+            observer.setShards(shardCount, shards, since);
+        }
+    }
+}
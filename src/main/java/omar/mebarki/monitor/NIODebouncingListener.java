@@ -0,0 +1,355 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds back the changes of each file until the file stays unchanged for a
+ * quiet period, then delivers a single change for the whole burst.
+ * <p>
+ * Registered with an observer, the listener collapses the successive
+ * changes of a path as {@link NIOFileChange} does: a create followed by
+ * changes is delivered as one create, a create followed by a delete is not
+ * delivered at all. The start and stop events of every check are passed on
+ * to the listeners added to it.
+ * <p>
+ * The changes that settled are released by a timer as soon as their quiet
+ * period ends, whatever the poll interval of the observer, in the order
+ * their bursts began and between start and stop events of the observer
+ * that found them. Changes settling while a check runs are delivered just
+ * before its stop event instead. Closing the listener delivers the changes
+ * still held back.
+ * <pre>
+ * NIODebouncingListener debouncer = new NIODebouncingListener(5000);
+ * debouncer.addListener(listener);
+ * observer.addListener(debouncer);
+ * ...
+ * debouncer.close();
+ * </pre>
+ */
+public class NIODebouncingListener extends NIOFileAlterationListenerAdaptor
+        implements NIOFileChangeListener, Closeable {
+
+    private final long quietPeriod;
+    private final List<NIOFileAlterationListener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<Path, Pending> pending = new LinkedHashMap<>();
+    private final boolean ownScheduler;
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> release;
+    private NIOFileAlterationObserver observer;
+    private int checking;
+    private boolean closed;
+
+    /**
+     * Construct a debouncing listener releasing the settled changes from a
+     * timer thread of its own.
+     *
+     * @param quietPeriod The time in milliseconds a file must stay unchanged
+     *                    before its change is delivered
+     */
+    public NIODebouncingListener(final long quietPeriod) {
+        this(quietPeriod, null);
+    }
+
+    /**
+     * Construct a debouncing listener.
+     *
+     * @param quietPeriod The time in milliseconds a file must stay unchanged
+     *                    before its change is delivered
+     * @param scheduler   The scheduler releasing the settled changes, not
+     *                    shut down on close, or null to use a thread of its own
+     */
+    public NIODebouncingListener(final long quietPeriod, final ScheduledExecutorService scheduler) {
+        if (quietPeriod < 0) {
+            throw new IllegalArgumentException("Quiet period must not be negative");
+        }
+        this.quietPeriod = quietPeriod;
+        this.scheduler = scheduler;
+        this.ownScheduler = scheduler == null;
+    }
+
+    /**
+     * Add a listener notified of the settled changes.
+     *
+     * @param listener The listener to add
+     */
+    public void addListener(final NIOFileAlterationListener listener) {
+        if (listener != null) {
+            listeners.add(listener);
+        }
+    }
+
+    /**
+     * Remove a listener.
+     *
+     * @param listener The listener to remove
+     */
+    public void removeListener(final NIOFileAlterationListener listener) {
+        if (listener != null) {
+            listeners.remove(listener);
+        }
+    }
+
+    /**
+     * Return the quiet period.
+     *
+     * @return the time in milliseconds
+     */
+    public long getQuietPeriod() {
+        return quietPeriod;
+    }
+
+    /**
+     * Return the number of files whose change is held back.
+     *
+     * @return the number of files
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * File system observer started checking event.
+     *
+     * @param observer The file system observer
+     */
+    @Override
+    public synchronized void onStart(final NIOFileAlterationObserver observer) {
+        this.observer = observer;
+        checking++;
+        for (final NIOFileAlterationListener listener : listeners) {
+            listener.onStart(observer);
+        }
+    }
+
+    /**
+     * Hold back a change, collapsed with the pending one of the same file;
+     * once closed, deliver it right away.
+     *
+     * @param change The change
+     */
+    @Override
+    public synchronized void onChange(final NIOFileChange change) {
+        if (closed) {
+            deliver(change);
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        final Pending previous = pending.get(change.getFile());
+        if (previous == null) {
+            pending.put(change.getFile(), new Pending(change, now));
+            scheduleRelease(now);
+            return;
+        }
+        final NIOFileChange first = previous.change;
+        if (first.getKind() == NIOFileChange.Kind.DELETE && change.getKind() == NIOFileChange.Kind.CREATE
+                && first.isDirectory() != change.isDirectory()) {
+            // a file replaced by a directory, or the reverse, is not a change
+            deliver(first);
+            pending.remove(change.getFile());
+            pending.put(change.getFile(), new Pending(change, now));
+            return;
+        }
+        final NIOFileChange merged = NIOFileChange.coalesce(first, change);
+        if (merged == null) {
+            pending.remove(change.getFile());
+        } else {
+            previous.change = merged;
+            previous.lastSeen = now;
+        }
+    }
+
+    /**
+     * Deliver the changes that settled, then pass on the stop event.
+     *
+     * @param observer The file system observer
+     */
+    @Override
+    public synchronized void onStop(final NIOFileAlterationObserver observer) {
+        final long now = System.currentTimeMillis();
+        deliverSettled(now);
+        for (final NIOFileAlterationListener listener : listeners) {
+            listener.onStop(observer);
+        }
+        checking--;
+        scheduleRelease(now);
+    }
+
+    /**
+     * Deliver all the changes held back, settled or not.
+     *
+     * @return the number of changes delivered
+     */
+    public synchronized int flush() {
+        if (checking > 0) {
+            return deliverSettled(Long.MAX_VALUE);
+        }
+        return deliverBetweenEvents(Long.MAX_VALUE);
+    }
+
+    /**
+     * Deliver the changes held back and stop the timer; changes found
+     * afterwards are delivered right away.
+     */
+    @Override
+    public void close() {
+        final ScheduledExecutorService current;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            flush();
+            closed = true;
+            if (release != null) {
+                release.cancel(false);
+                release = null;
+            }
+            current = ownScheduler ? scheduler : null;
+            scheduler = null;
+        }
+        if (current != null) {
+            current.shutdown();
+        }
+    }
+
+    /**
+     * Deliver the changes unchanged since the quiet period.
+     *
+     * @param now The current time in milliseconds
+     * @return the number of changes delivered
+     */
+    synchronized int deliverSettled(final long now) {
+        int delivered = 0;
+        final Iterator<Pending> iterator = pending.values().iterator();
+        while (iterator.hasNext()) {
+            final Pending next = iterator.next();
+            if (now - next.lastSeen >= quietPeriod) {
+                iterator.remove();
+                deliver(next.change);
+                delivered++;
+            }
+        }
+        return delivered;
+    }
+
+    /**
+     * Deliver the settled changes between start and stop events of the last
+     * observer, outside of its checks.
+     *
+     * @param now The current time in milliseconds
+     * @return the number of changes delivered
+     */
+    private int deliverBetweenEvents(final long now) {
+        if (!isSettled(now)) {
+            return 0;
+        }
+        final NIOFileAlterationObserver current = observer;
+        if (current != null) {
+            for (final NIOFileAlterationListener listener : listeners) {
+                listener.onStart(current);
+            }
+        }
+        final int delivered = deliverSettled(now);
+        if (current != null) {
+            for (final NIOFileAlterationListener listener : listeners) {
+                listener.onStop(current);
+            }
+        }
+        return delivered;
+    }
+
+    private boolean isSettled(final long now) {
+        for (final Pending next : pending.values()) {
+            if (now - next.lastSeen >= quietPeriod) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Release the settled changes from the timer, unless a check runs and
+     * delivers them at its stop event.
+     */
+    private synchronized void release() {
+        release = null;
+        if (closed || checking > 0) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        try {
+            deliverBetweenEvents(now);
+        } catch (final RuntimeException e) {
+            e.printStackTrace();
+        }
+        scheduleRelease(now);
+    }
+
+    /**
+     * Schedule the release of the change settling first, if not scheduled yet.
+     *
+     * @param now The current time in milliseconds
+     */
+    private void scheduleRelease(final long now) {
+        if (release != null || closed || checking > 0 || pending.isEmpty()) {
+            return;
+        }
+        long settling = Long.MAX_VALUE;
+        for (final Pending next : pending.values()) {
+            settling = Math.min(settling, next.lastSeen + quietPeriod);
+        }
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, getClass().getSimpleName());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        release = scheduler.schedule(this::release, Math.max(0, settling - now), TimeUnit.MILLISECONDS);
+    }
+
+    private void deliver(final NIOFileChange change) {
+        for (final NIOFileAlterationListener listener : listeners) {
+            change.deliverTo(listener);
+        }
+    }
+
+    /**
+     * The change held back for a file.
+     */
+    private static final class Pending {
+
+        private NIOFileChange change;
+        private long lastSeen;
+
+        private Pending(final NIOFileChange change, final long lastSeen) {
+            this.change = change;
+            this.lastSeen = lastSeen;
+        }
+    }
+}
@@ -1,12 +1,31 @@
 package omar.mebarki.monitor;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * A runnable that spawns a monitoring thread triggering any
  * registered {@link NIOFileAlterationObserver} at a specified interval.
+ * <p>
+ * The monitoring thread only drives a timer wheel; the checks themselves
+ * run on a shared pool of worker threads, so a slow observer does not delay
+ * the others and each observer may have its own {@link NIOObserverSchedule}.
  *
  * @version $Id$
  * @see NIOFileAlterationObserver
@@ -15,9 +34,21 @@ import java.util.concurrent.ThreadFactory;
 public final class NIOFileAlterationMonitor implements Runnable {
 
     private final long interval;
+    private final NIOObserverSchedule defaultSchedule;
     private final List<NIOFileAlterationObserver> observers = new CopyOnWriteArrayList<>();
     private Thread thread = null;
     private ThreadFactory threadFactory;
+    private Executor initializationExecutor;
+    private int initializationThreads = 8;
+    private Executor executor;
+    private int workerThreads = Runtime.getRuntime().availableProcessors();
+    private long tickDuration = 10;
+    private final Map<NIOFileAlterationObserver, NIOObserverSchedule> schedules = new ConcurrentHashMap<>();
+    private final Map<NIOFileAlterationObserver, ScheduledCheck> checks = new ConcurrentHashMap<>();
+    private NIOClusterCoordinator clusterCoordinator;
+    private volatile NIOTimerWheel wheel;
+    private volatile Executor workers;
+    private ExecutorService workerPool;
     private volatile boolean running = false;
 
     /**
@@ -34,7 +65,35 @@ public final class NIOFileAlterationMonitor implements Runnable {
      *                 checks of the file system
      */
     public NIOFileAlterationMonitor(final long interval) {
-        this.interval = interval;
+        this(NIOObserverSchedule.fixedDelay(interval));
+    }
+
+    /**
+     * Construct a monitor with the specified default schedule.
+     *
+     * @param schedule How often to check the observers added without a schedule
+     */
+    public NIOFileAlterationMonitor(final NIOObserverSchedule schedule) {
+        if (schedule == null) {
+            throw new IllegalArgumentException("Schedule is missing");
+        }
+        this.interval = schedule.getInterval();
+        this.defaultSchedule = schedule;
+    }
+
+    /**
+     * Construct a monitor with the specified default schedule and set of observers.
+     *
+     * @param schedule  How often to check the observers added without a schedule
+     * @param observers The set of observers to add to the monitor.
+     */
+    public NIOFileAlterationMonitor(final NIOObserverSchedule schedule, final NIOFileAlterationObserver... observers) {
+        this(schedule);
+        if (observers != null) {
+            for (final NIOFileAlterationObserver observer : observers) {
+                addObserver(observer);
+            }
+        }
     }
 
     /**
@@ -72,14 +131,171 @@ public final class NIOFileAlterationMonitor implements Runnable {
     }
 
     /**
-     * Add a file system observer to this monitor.
+     * Set the executor running the initialization tasks of {@link #startAsync()}.
+     *
+     * @param initializationExecutor the executor, or null to use a pool
+     *                               created for each start
+     */
+    public synchronized void setInitializationExecutor(final Executor initializationExecutor) {
+        this.initializationExecutor = initializationExecutor;
+    }
+
+    /**
+     * Set the number of threads of the pool created by {@link #startAsync()}
+     * when no initialization executor is set.
+     *
+     * @param initializationThreads the number of threads, 8 by default
+     */
+    public synchronized void setInitializationThreads(final int initializationThreads) {
+        if (initializationThreads < 1) {
+            throw new IllegalArgumentException("At least one initialization thread is required");
+        }
+        this.initializationThreads = initializationThreads;
+    }
+
+    /**
+     * Set the executor running the checks of the observers.
+     *
+     * @param executor the executor, or null to use a pool created for each start
+     */
+    public synchronized void setExecutor(final Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Set the number of threads of the pool running the checks when no
+     * executor is set.
+     *
+     * @param workerThreads the number of threads, the number of processors by default
+     */
+    public synchronized void setWorkerThreads(final int workerThreads) {
+        if (workerThreads < 1) {
+            throw new IllegalArgumentException("At least one worker thread is required");
+        }
+        this.workerThreads = workerThreads;
+    }
+
+    /**
+     * Set the resolution of the scheduler, used from the next start.
+     *
+     * @param tickDuration the duration of a tick in milliseconds, 10 by default
+     */
+    public synchronized void setTickDuration(final long tickDuration) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("Tick duration must be positive");
+        }
+        this.tickDuration = tickDuration;
+    }
+
+    /**
+     * Divide the observed directories between the nodes of a cluster.
+     * <p>
+     * When the monitor starts, all its observers are added to the
+     * coordinator, which is then started; it is closed when the monitor
+     * stops.
+     *
+     * @param clusterCoordinator the coordinator, or null to observe the whole directories
+     */
+    public synchronized void setClusterCoordinator(final NIOClusterCoordinator clusterCoordinator) {
+        this.clusterCoordinator = clusterCoordinator;
+    }
+
+    /**
+     * Add a file system observer to this monitor, checked with the default
+     * schedule of the monitor.
      *
      * @param observer The file system observer to add
      */
     public void addObserver(final NIOFileAlterationObserver observer) {
+        addObserver(observer, defaultSchedule);
+    }
+
+    /**
+     * Add a file system observer to this monitor with its own schedule.
+     * <p>
+     * The observer is scheduled right away when the monitor is running.
+     *
+     * @param observer The file system observer to add
+     * @param schedule How often to check the observer
+     */
+    public void addObserver(final NIOFileAlterationObserver observer, final NIOObserverSchedule schedule) {
+        if (schedule == null) {
+            throw new IllegalArgumentException("Schedule is missing");
+        }
         if (observer != null) {
             observers.add(observer);
+            schedules.put(observer, schedule);
+            if (running) {
+                schedule(observer);
+            }
+        }
+    }
+
+    /**
+     * Add file system observers to this monitor, the observers of nested
+     * directories sharing a single scan, with the default schedule of the
+     * monitor.
+     *
+     * @param observers The file system observers to add
+     * @return the groups of observers sharing a scan
+     * @see #addObserverGroup(NIOObserverSchedule, NIOFileAlterationObserver...)
+     */
+    public List<NIOObserverGroup> addObserverGroup(final NIOFileAlterationObserver... observers) {
+        return addObserverGroup(defaultSchedule, observers);
+    }
+
+    /**
+     * Add file system observers to this monitor, the observers of nested
+     * directories sharing a single scan.
+     * <p>
+     * The observers are divided into groups whose directories are all under
+     * the directory of one of them. Each group is checked by a single
+     * observer of the outermost directory, added to this monitor, which
+     * dispatches the changes to the listeners of the members; an observer
+     * whose directory overlaps no other one is added as it is.
+     *
+     * @param schedule  How often to check the groups
+     * @param observers The file system observers to add
+     * @return the groups of observers sharing a scan
+     * @see NIOObserverGroup
+     */
+    public List<NIOObserverGroup> addObserverGroup(final NIOObserverSchedule schedule,
+                                                   final NIOFileAlterationObserver... observers) {
+        final List<NIOFileAlterationObserver> sorted = new ArrayList<>();
+        if (observers != null) {
+            for (final NIOFileAlterationObserver observer : observers) {
+                if (observer != null) {
+                    sorted.add(observer);
+                }
+            }
+        }
+        sorted.sort(Comparator.comparingInt(observer -> observer.getDirectory().getNameCount()));
+        final List<List<NIOFileAlterationObserver>> sets = new ArrayList<>();
+        for (final NIOFileAlterationObserver observer : sorted) {
+            List<NIOFileAlterationObserver> set = null;
+            for (final List<NIOFileAlterationObserver> candidate : sets) {
+                if (observer.getDirectory().startsWith(candidate.get(0).getDirectory())) {
+                    set = candidate;
+                    break;
+                }
+            }
+            if (set == null) {
+                set = new ArrayList<>();
+                sets.add(set);
+            }
+            set.add(observer);
+        }
+        final List<NIOObserverGroup> groups = new ArrayList<>();
+        for (final List<NIOFileAlterationObserver> set : sets) {
+            if (set.size() == 1) {
+                addObserver(set.get(0), schedule);
+            } else {
+                final NIOObserverGroup group = new NIOObserverGroup(set.toArray(new NIOFileAlterationObserver[0]));
+                addObserver(group.getObserver(), schedule);
+                groups.add(group);
+            }
         }
+        return groups;
     }
 
     /**
@@ -91,7 +307,90 @@ public final class NIOFileAlterationMonitor implements Runnable {
         if (observer != null) {
             while (observers.remove(observer)) {
             }
+            schedules.remove(observer);
+            final ScheduledCheck check = checks.remove(observer);
+            if (check != null) {
+                check.cancel();
+            }
+        }
+    }
+
+    /**
+     * Return the schedule of an observer.
+     *
+     * @param observer The file system observer
+     * @return the schedule, or null if the observer is not registered
+     */
+    public NIOObserverSchedule getSchedule(final NIOFileAlterationObserver observer) {
+        return observer != null ? schedules.get(observer) : null;
+    }
+
+    /**
+     * Check all the observers right away.
+     *
+     * @return a future completed once the observers are checked
+     * @see #triggerNow(Path)
+     */
+    public CompletableFuture<Void> triggerNow() {
+        return triggerNow(null);
+    }
+
+    /**
+     * Check a subtree right away in the observers it is part of, on the
+     * worker threads.
+     * <p>
+     * Triggers made for an observer while a previous one is still waiting
+     * for a worker thread are coalesced into it, and triggered checks never
+     * overlap the scheduled ones.
+     *
+     * @param prefix The file or directory to check, all the observed
+     *               directories if null
+     * @return a future completed once the subtree is checked
+     * @see NIOFileAlterationObserver#triggerNow(Path)
+     */
+    public CompletableFuture<Void> triggerNow(final Path prefix) {
+        if (!running) {
+            throw new IllegalStateException("Monitor is not running");
+        }
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (final Map.Entry<NIOFileAlterationObserver, ScheduledCheck> entry : checks.entrySet()) {
+            final Path directory = entry.getKey().getDirectory();
+            if (prefix == null || directory.startsWith(prefix)) {
+                futures.add(entry.getValue().trigger(null));
+            } else if (prefix.startsWith(directory)) {
+                futures.add(entry.getValue().trigger(prefix));
+            }
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Return the current interval of an observer, which only varies with an
+     * adaptive schedule.
+     *
+     * @param observer The file system observer
+     * @return the interval in milliseconds before jitter, or the schedule
+     * interval if the monitor is not running
+     */
+    public long getCurrentInterval(final NIOFileAlterationObserver observer) {
+        final ScheduledCheck check = observer != null ? checks.get(observer) : null;
+        if (check != null) {
+            return check.currentInterval;
         }
+        final NIOObserverSchedule schedule = getSchedule(observer);
+        return schedule != null ? schedule.getInterval() : interval;
+    }
+
+    /**
+     * Return the number of checks of an observer that were due while the
+     * previous one was still running, since the monitor was started.
+     *
+     * @param observer The file system observer
+     * @return the number of overruns
+     */
+    public long getOverrunCount(final NIOFileAlterationObserver observer) {
+        final ScheduledCheck check = observer != null ? checks.get(observer) : null;
+        return check != null ? check.overruns.get() : 0;
     }
 
     /**
@@ -113,10 +412,77 @@ public final class NIOFileAlterationMonitor implements Runnable {
         if (running) {
             throw new IllegalStateException("Monitor is already running");
         }
+        startCoordinator();
         for (final NIOFileAlterationObserver observer : observers) {
             observer.initialize();
         }
+        startThread();
+    }
+
+    /**
+     * Start monitoring without waiting for the observers to be initialized.
+     * <p>
+     * The observers are initialized concurrently in the background while the
+     * monitoring thread starts right away; each observer fires events for the
+     * parts of its baseline already loaded.
+     *
+     * @return a future completed once all observers are initialized
+     * @see NIOFileAlterationObserver#initializeAsync(Executor)
+     */
+    public synchronized CompletableFuture<Void> startAsync() {
+        if (running) {
+            throw new IllegalStateException("Monitor is already running");
+        }
+        try {
+            startCoordinator();
+        } catch (final IOException e) {
+            throw new IllegalStateException("Cannot join the cluster", e);
+        }
+        Executor executor = initializationExecutor;
+        ExecutorService pool = null;
+        if (executor == null) {
+            pool = threadFactory != null
+                    ? Executors.newFixedThreadPool(initializationThreads, threadFactory)
+                    : Executors.newFixedThreadPool(initializationThreads);
+            executor = pool;
+        }
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (final NIOFileAlterationObserver observer : observers) {
+            futures.add(observer.initializeAsync(executor));
+        }
+        startThread();
+        final CompletableFuture<Void> all = CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+        if (pool != null) {
+            final ExecutorService createdPool = pool;
+            all.whenComplete((result, error) -> createdPool.shutdown());
+        }
+        return all;
+    }
+
+    private void startCoordinator() throws IOException {
+        if (clusterCoordinator != null) {
+            for (final NIOFileAlterationObserver observer : observers) {
+                clusterCoordinator.addObserver(observer);
+            }
+            clusterCoordinator.start();
+        }
+    }
+
+    private void startThread() {
+        wheel = new NIOTimerWheel(tickDuration, TimeUnit.MILLISECONDS, 512);
+        workerPool = null;
+        if (executor != null) {
+            workers = executor;
+        } else {
+            workerPool = threadFactory != null
+                    ? Executors.newFixedThreadPool(workerThreads, threadFactory)
+                    : Executors.newFixedThreadPool(workerThreads);
+            workers = workerPool;
+        }
         running = true;
+        for (final NIOFileAlterationObserver observer : observers) {
+            schedule(observer);
+        }
         if (threadFactory != null) {
             thread = threadFactory.newThread(this);
         } else {
@@ -125,6 +491,19 @@ public final class NIOFileAlterationMonitor implements Runnable {
         thread.start();
     }
 
+    private void schedule(final NIOFileAlterationObserver observer) {
+        final NIOObserverSchedule schedule = schedules.get(observer);
+        if (schedule == null) {
+            return;
+        }
+        final ScheduledCheck check = new ScheduledCheck(observer, schedule);
+        final ScheduledCheck previous = checks.put(observer, check);
+        if (previous != null) {
+            previous.cancel();
+        }
+        check.start();
+    }
+
     /**
      * Stop monitoring.
      *
@@ -147,11 +526,28 @@ public final class NIOFileAlterationMonitor implements Runnable {
             throw new IllegalStateException("Monitor is not running");
         }
         running = false;
+        LockSupport.unpark(thread);
         try {
             thread.join(stopInterval);
         } catch (final InterruptedException e) {
             Thread.currentThread().interrupt();
         }
+        for (final ScheduledCheck check : checks.values()) {
+            check.cancel();
+        }
+        checks.clear();
+        if (clusterCoordinator != null) {
+            clusterCoordinator.close();
+        }
+        if (workerPool != null) {
+            workerPool.shutdown();
+            try {
+                workerPool.awaitTermination(stopInterval > 0 ? stopInterval : Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            workerPool = null;
+        }
         for (final NIOFileAlterationObserver observer : observers) {
             observer.destroy();
         }
@@ -162,16 +558,159 @@ public final class NIOFileAlterationMonitor implements Runnable {
      */
     @Override
     public void run() {
+        final NIOTimerWheel timerWheel = wheel;
         while (running) {
-            for (final NIOFileAlterationObserver observer : observers) {
-                observer.checkAndNotify();
+            timerWheel.advance(System.nanoTime());
+            final long sleep = timerWheel.nextTickTime() - System.nanoTime();
+            if (sleep > 0 && running) {
+                LockSupport.parkNanos(this, sleep);
+            }
+        }
+    }
+
+    /**
+     * The checks of one observer while the monitor is running.
+     */
+    private final class ScheduledCheck implements Runnable {
+        private final NIOFileAlterationObserver observer;
+        private final NIOObserverSchedule schedule;
+        private final long intervalNanos;
+        private final AtomicBoolean checking = new AtomicBoolean();
+        private final AtomicLong overruns = new AtomicLong();
+        private volatile boolean pending;
+        private volatile boolean cancelled;
+        private volatile NIOTimerWheel.Timeout timeout;
+        private volatile long currentInterval;
+        private long nextRun;
+        private CompletableFuture<Void> queuedTrigger;
+        private long queuedTicket;
+
+        ScheduledCheck(final NIOFileAlterationObserver observer, final NIOObserverSchedule schedule) {
+            this.observer = observer;
+            this.schedule = schedule;
+            this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(schedule.getInterval());
+            this.currentInterval = schedule.getInterval();
+        }
+
+        void start() {
+            nextRun = System.nanoTime();
+            timeout = wheel.schedule(this::due, 0, TimeUnit.NANOSECONDS);
+        }
+
+        void cancel() {
+            cancelled = true;
+            final NIOTimerWheel.Timeout current = timeout;
+            if (current != null) {
+                current.cancel();
             }
-            if (!running) {
-                break;
+        }
+
+        /**
+         * Called by the monitoring thread when a check is due.
+         */
+        private void due() {
+            if (cancelled || !running) {
+                return;
+            }
+            if (schedule.getMode() == NIOObserverSchedule.Mode.FIXED_RATE) {
+                final long now = System.nanoTime();
+                nextRun += intervalNanos;
+                if (nextRun - now <= 0) {
+                    // keep the phase, dropping the periods already missed
+                    nextRun = intervalNanos > 0 ? now + intervalNanos - (now - nextRun) % intervalNanos : now;
+                }
+                timeout = wheel.schedule(this::due, nextRun - now, TimeUnit.NANOSECONDS);
+            }
+            if (checking.compareAndSet(false, true)) {
+                submit();
+            } else {
+                overruns.incrementAndGet();
+                if (schedule.getOverrun() == NIOObserverSchedule.Overrun.COALESCE) {
+                    pending = true;
+                    if (checking.compareAndSet(false, true)) {
+                        pending = false;
+                        submit();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Queue a triggered check, unless one is already waiting for a worker thread.
+         */
+        synchronized CompletableFuture<Void> trigger(final Path prefix) {
+            queuedTicket = observer.requestTrigger(prefix);
+            if (queuedTrigger == null) {
+                final CompletableFuture<Void> future = new CompletableFuture<>();
+                queuedTrigger = future;
+                try {
+                    workers.execute(() -> runTrigger(future));
+                } catch (final RejectedExecutionException e) {
+                    queuedTrigger = null;
+                    future.completeExceptionally(e);
+                    return future;
+                }
+            }
+            return queuedTrigger;
+        }
+
+        private void runTrigger(final CompletableFuture<Void> future) {
+            final long ticket;
+            synchronized (this) {
+                queuedTrigger = null;
+                ticket = queuedTicket;
+            }
+            try {
+                observer.runTriggers(ticket);
+                future.complete(null);
+            } catch (final RuntimeException e) {
+                future.completeExceptionally(e);
             }
+        }
+
+        private void submit() {
             try {
-                Thread.sleep(interval);
-            } catch (final InterruptedException ignored) {
+                workers.execute(this);
+            } catch (final RejectedExecutionException e) {
+                checking.set(false);
+                if (schedule.getMode() != NIOObserverSchedule.Mode.FIXED_RATE && !cancelled && running) {
+                    // no check will reschedule itself, so try again after an interval
+                    timeout = wheel.schedule(this::due, schedule.jitter(currentInterval), TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+
+        /**
+         * Run one check on a worker thread.
+         */
+        @Override
+        public void run() {
+            try {
+                if (!cancelled && running) {
+                    observer.checkAndNotify();
+                }
+            } catch (final RuntimeException e) {
+                e.printStackTrace();
+            } finally {
+                checking.set(false);
+                // even after an error, so that the observer keeps being checked
+                reschedule();
+            }
+        }
+
+        /**
+         * Schedule the next check once one finished, or at a fixed rate run the one coalesced meanwhile.
+         */
+        private void reschedule() {
+            if (cancelled || !running) {
+                return;
+            }
+            if (schedule.getMode() != NIOObserverSchedule.Mode.FIXED_RATE) {
+                currentInterval = schedule.nextInterval(currentInterval, observer.getLastChangeCount());
+                timeout = wheel.schedule(this::due, schedule.jitter(currentInterval), TimeUnit.MILLISECONDS);
+            } else if (pending && checking.compareAndSet(false, true)) {
+                pending = false;
+                submit();
             }
         }
     }
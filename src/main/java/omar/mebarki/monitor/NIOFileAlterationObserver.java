@@ -25,9 +25,21 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
 
 
 public class NIOFileAlterationObserver implements Serializable {
@@ -35,9 +47,46 @@ public class NIOFileAlterationObserver implements Serializable {
     private static Path[] EMPTY_FILE_ARRAY = new Path[0];
     private static final long serialVersionUID = 1185122225658782848L;
     private final List<NIOFileAlterationListener> listeners = new CopyOnWriteArrayList<>();
+    private final NIOListenerTrie routedListeners = new NIOListenerTrie();
     private final NIOFileEntry rootEntry;
     private final NIOFileFilter fileFilter;
     private final Comparator<Path> comparator;
+    private transient volatile NIOSnapshotIndex index;
+    private Path checkpointFile;
+    private long checkpointInterval;
+    private long lastCheckpoint;
+    private NIOSnapshotLoader snapshotLoader;
+    private boolean reconciling;
+    private long reconcileUntil;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Set<NIOFileEntry> pendingSubtrees = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private volatile boolean listingRoot;
+    private volatile int subtreeCount;
+    private transient volatile CompletableFuture<Void> ready = new CompletableFuture<>();
+    private transient int changeCount;
+    private transient long cycle;
+    private int heatHalfLife;
+    private int maxStaleness;
+    private int partitionCount;
+    private int maxRequests;
+    private int partitionCursor;
+    private long[] partitionScanTimes;
+    private transient Listing checkListing = new Listing();
+    private transient volatile int lastRequestCount;
+    private final Set<Path> triggers = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final Queue<NIOFileChange> notifiedChanges = new ConcurrentLinkedQueue<>();
+    private transient long takenTriggers;
+    private transient volatile long checkedTriggers;
+    private int shardCount;
+    private BitSet ownedShards = new BitSet();
+    private final Map<String, Long> handovers = new HashMap<>();
+    private volatile boolean preloaded;
+    private transient volatile int lastChangeCount;
+    private boolean moveDetection;
+    private transient NIOMoveDetector heldChanges;
+    private transient List<NIOFileChange> collectedChanges;
+    private transient Listing initListing = new Listing();
+    private transient volatile List<Path> lastFailedSubtrees = Collections.emptyList();
 
     /**
      * Construct an observer for the specified directory.
@@ -117,80 +166,1426 @@ public class NIOFileAlterationObserver implements Serializable {
         return fileFilter;
     }
 
+    /**
+     * Return the root entry of the observed snapshot.
+     *
+     * @return the root entry
+     */
+    NIOFileEntry getRootEntry() {
+        return rootEntry;
+    }
+
+    /**
+     * Return the Merkle hash of the observed snapshot.
+     * <p>
+     * Two observers whose snapshots hold the same names, types, lengths and
+     * last modified times have the same hash, whatever their root directories.
+     *
+     * @return the hash of the observed snapshot
+     * @see NIOFileEntry#getHash()
+     */
+    public byte[] getSnapshotHash() {
+        return rootEntry.getHash();
+    }
+
+    /**
+     * Compare the snapshot of this observer with the snapshot of another one,
+     * for example a replica of the observed bucket.
+     * <p>
+     * Only subtrees whose hashes differ are descended. No file system access
+     * is made; the snapshots are compared as they were at the last check.
+     *
+     * @param other    The observer to compare with, reported as the right side
+     * @param listener The listener notified of each difference
+     * @return {@code true} if both snapshots are identical, otherwise {@code false}
+     */
+    public boolean compareSnapshot(final NIOFileAlterationObserver other, final NIOSnapshotDiffListener listener) {
+        if (other == null) {
+            throw new IllegalArgumentException("Observer is missing");
+        }
+        return NIOSnapshotDiff.compare(rootEntry, other.rootEntry, listener);
+    }
+
+    /**
+     * Return the query index over the observed snapshot, creating it on
+     * first use.
+     * <p>
+     * Once created, the index is kept up to date as events are fired. It is
+     * built holding the snapshot, so creating it waits for a check running
+     * concurrently to finish, and no change is missed meanwhile.
+     *
+     * @return the snapshot index
+     */
+    public NIOSnapshotIndex getIndex() {
+        NIOSnapshotIndex result = index;
+        if (result == null) {
+            lock.lock();
+            try {
+                result = index;
+                if (result == null) {
+                    result = new NIOSnapshotIndex(rootEntry, comparator);
+                    index = result;
+                }
+            } finally {
+                unlock();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return the checkpoint file.
+     *
+     * @return the checkpoint file, or null if none
+     */
+    public Path getCheckpointFile() {
+        return checkpointFile;
+    }
+
+    /**
+     * Set the file the snapshot is checkpointed to.
+     * <p>
+     * When set, {@link #initialize()} loads the snapshot from this file if it
+     * exists instead of walking the observed directory, so the first check
+     * reports the changes made while the observer was not running. The
+     * snapshot is written back by {@link #destroy()} and, if a checkpoint
+     * interval is set, after checks.
+     *
+     * @param checkpointFile the checkpoint file, or null for none
+     * @see NIOSnapshotCheckpoint
+     */
+    public void setCheckpointFile(final Path checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+
+    /**
+     * Return the checkpoint interval.
+     *
+     * @return the minimum time in milliseconds between two checkpoints
+     * written after checks, zero if only written by {@link #destroy()}
+     */
+    public long getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    /**
+     * Set the checkpoint interval.
+     *
+     * @param checkpointInterval the minimum time in milliseconds between two
+     *                           checkpoints written after checks, zero to only
+     *                           write one in {@link #destroy()}
+     */
+    public void setCheckpointInterval(final long checkpointInterval) {
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Write the snapshot to the checkpoint file, waiting for a check running
+     * concurrently to finish so that the checkpoint is consistent.
+     *
+     * @throws IOException if the checkpoint cannot be written
+     * @throws IllegalStateException if no checkpoint file is set
+     */
+    public void checkpoint() throws IOException {
+        if (checkpointFile == null) {
+            throw new IllegalStateException("Checkpoint file is not set");
+        }
+        lock.lock();
+        try {
+            NIOSnapshotCheckpoint.save(rootEntry, checkpointFile);
+            lastCheckpoint = System.currentTimeMillis();
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Return the baseline snapshot loader.
+     *
+     * @return the snapshot loader, or null if none
+     */
+    public NIOSnapshotLoader getSnapshotLoader() {
+        return snapshotLoader;
+    }
+
+    /**
+     * Set the source of the baseline snapshot, for example an S3 Inventory
+     * report, loaded by {@link #initialize()} instead of walking the observed
+     * directory.
+     * <p>
+     * The first check after the baseline is loaded reconciles it with the
+     * observed directory: only entries modified after the time the baseline
+     * is accurate as of, and deleted entries, fire events. A checkpoint, when
+     * available, takes precedence over the loader.
+     *
+     * @param snapshotLoader the snapshot loader, or null to walk the directory
+     * @see NIOInventoryLoader
+     */
+    public void setSnapshotLoader(final NIOSnapshotLoader snapshotLoader) {
+        this.snapshotLoader = snapshotLoader;
+    }
+
+    /**
+     * Return the half-life of the change frequency score of the directories.
+     *
+     * @return the half-life in checks, zero if every directory is listed by every check
+     */
+    public int getHeatHalfLife() {
+        return heatHalfLife;
+    }
+
+    /**
+     * Return the maximum staleness of the directories.
+     *
+     * @return the maximum number of checks between two listings of a directory
+     */
+    public int getMaxStaleness() {
+        return maxStaleness;
+    }
+
+    /**
+     * List each directory at a frequency following where changes happen.
+     * <p>
+     * Each directory keeps a change frequency score, growing by one with each
+     * change under it and halving every half-life checks. A directory whose
+     * score is at least one is listed by every check; below, it is listed
+     * every 2, 4, 8... checks as its score halves, and at least every
+     * maximum staleness checks. A directory not listed by a check is skipped
+     * with all its descendants, whose scores are never higher than its own.
+     *
+     * @param heatHalfLife the half-life in checks, zero to list every directory
+     *                     by every check
+     * @param maxStaleness the maximum number of checks between two listings
+     *                     of a directory
+     */
+    public void setHeatScan(final int heatHalfLife, final int maxStaleness) {
+        if (heatHalfLife < 0) {
+            throw new IllegalArgumentException("Half-life must not be negative");
+        }
+        if (heatHalfLife > 0 && maxStaleness < 1) {
+            throw new IllegalArgumentException("Maximum staleness must be positive");
+        }
+        this.heatHalfLife = heatHalfLife;
+        this.maxStaleness = maxStaleness;
+    }
+
+    /**
+     * Return the number of partitions of a rotating scan.
+     *
+     * @return the number of partitions, zero if every check lists the whole tree
+     */
+    public int getPartitionCount() {
+        return partitionCount;
+    }
+
+    /**
+     * Return the partition the next check starts with.
+     *
+     * @return the rotation cursor
+     */
+    public int getPartitionCursor() {
+        return partitionCursor;
+    }
+
+    /**
+     * Return the time since a partition was last listed.
+     *
+     * @param partition The partition, between zero and the number of partitions
+     * @return the time in milliseconds since the partition was last listed,
+     * or since the observer was initialized
+     */
+    public long getCoverageAge(final int partition) {
+        if (partition < 0 || partition >= partitionCount) {
+            throw new IllegalArgumentException("No partition " + partition);
+        }
+        return System.currentTimeMillis() - partitionScanTimes[partition];
+    }
+
+    /**
+     * Spread the listing of the tree over several checks.
+     * <p>
+     * The subdirectories of the observed directory are divided into
+     * partitions by a hash of their names, so each always falls into the same
+     * partition. The observed directory itself is listed by every check, but
+     * each check then only lists the subtrees of one partition, rotating so
+     * that the whole tree is covered every number of partitions checks. When
+     * the requests per check are capped, a check goes on with the following
+     * partitions while the directory listings it made stay under the cap; a
+     * partition is never split, and at least one is listed by every check.
+     *
+     * @param partitionCount the number of partitions, zero to list the whole
+     *                       tree by every check
+     * @param maxRequests    the maximum number of directory listings per
+     *                       check, zero to list one partition per check
+     */
+    public void setPartitionScan(final int partitionCount, final int maxRequests) {
+        if (partitionCount < 0) {
+            throw new IllegalArgumentException("Partition count must not be negative");
+        }
+        if (maxRequests < 0) {
+            throw new IllegalArgumentException("Maximum requests must not be negative");
+        }
+        lock.lock();
+        try {
+            this.partitionCount = partitionCount;
+            this.maxRequests = maxRequests;
+            this.partitionCursor = 0;
+            this.partitionScanTimes = new long[partitionCount];
+            Arrays.fill(partitionScanTimes, System.currentTimeMillis());
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Return the number of directory listings made by the last check.
+     *
+     * @return the number of listing requests
+     */
+    public int getLastRequestCount() {
+        return lastRequestCount;
+    }
+
+    /**
+     * Return the directories the last check failed to list; their contents
+     * were left as they were, to be checked again by the next check.
+     *
+     * @return the directories that could not be listed
+     */
+    public List<Path> getLastFailedSubtrees() {
+        return lastFailedSubtrees;
+    }
+
+    /**
+     * Return the number of directory listings made to load the baseline by
+     * the last initialization, so far if it runs in the background.
+     *
+     * @return the number of listing requests
+     */
+    public int getInitializationRequestCount() {
+        lock.lock();
+        try {
+            return initListing.requestCount;
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Return the directories the last initialization failed to list; the
+     * next check reports their contents as created.
+     *
+     * @return the directories that could not be listed
+     */
+    public List<Path> getInitializationFailedSubtrees() {
+        lock.lock();
+        try {
+            return Collections.unmodifiableList(new ArrayList<>(initListing.failedSubtrees));
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Return the number of shards the observed directory is divided into.
+     *
+     * @return the number of shards, zero if the whole directory is observed
+     */
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * Return the shards observed.
+     *
+     * @return a copy of the set of observed shards
+     */
+    public BitSet getOwnedShards() {
+        lock.lock();
+        try {
+            return (BitSet) ownedShards.clone();
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Return the shard of a subdirectory or file of the observed directory.
+     *
+     * @param name       The name of the subdirectory or file
+     * @param shardCount The number of shards
+     * @return the shard, between zero and the number of shards
+     */
+    public static int shardOf(final String name, final int shardCount) {
+        return Math.floorMod(name.hashCode(), shardCount);
+    }
+
+    /**
+     * Only observe some shards of the observed directory, the others being
+     * observed by other nodes.
+     * <p>
+     * The entries of the observed directory are divided into shards by a
+     * hash of their names, see {@link #shardOf(String, int)}. The observed
+     * directory itself is listed by every check, but only the entries of the
+     * owned shards fire events and only their subtrees are listed. The
+     * snapshot of a shard newly owned is loaded by the next check without
+     * firing any event, and that of a shard no longer owned is dropped.
+     *
+     * @param shardCount  the number of shards, zero to observe the whole directory
+     * @param ownedShards the shards to observe
+     * @see NIOClusterCoordinator
+     */
+    public void setShards(final int shardCount, final BitSet ownedShards) {
+        setShards(shardCount, ownedShards, Long.MAX_VALUE);
+    }
+
+    /**
+     * Only observe some shards of the observed directory, taking over shards
+     * observed by another node until now.
+     * <p>
+     * As {@link #setShards(int, BitSet)}, except that the next check fires
+     * events for the entries of the shards newly owned modified after the
+     * handover time, so that the changes the previous owner had not seen yet
+     * are not lost. This method does not list anything, so it only waits for
+     * a check running concurrently.
+     *
+     * @param shardCount   the number of shards, zero to observe the whole directory
+     * @param ownedShards  the shards to observe
+     * @param handoverTime the time in milliseconds as of which the previous
+     *                     owner of the shards newly owned had observed them
+     * @see NIOClusterCoordinator
+     */
+    public void setShards(final int shardCount, final BitSet ownedShards, final long handoverTime) {
+        if (shardCount < 0) {
+            throw new IllegalArgumentException("Shard count must not be negative");
+        }
+        lock.lock();
+        try {
+            final int previousCount = this.shardCount;
+            final BitSet previous = this.ownedShards;
+            this.shardCount = shardCount;
+            this.ownedShards = ownedShards != null ? (BitSet) ownedShards.clone() : new BitSet();
+            for (final NIOFileEntry child : rootEntry.getChildren()) {
+                final boolean wasOwned = previousCount == 0 || previous.get(shardOf(child.getName(), previousCount));
+                final boolean owned = isOwned(child.getName());
+                if (wasOwned && !owned) {
+                    pendingSubtrees.remove(child);
+                    handovers.remove(child.getName());
+                    child.setChildren(NIOFileEntry.EMPTY_ENTRIES);
+                } else if (!wasOwned && owned) {
+                    // listed by the next check
+                    handovers.merge(child.getName(), handoverTime, Math::min);
+                }
+            }
+            rebuildIndex();
+        } finally {
+            unlock();
+        }
+    }
+
+    private boolean isOwned(final String name) {
+        return shardCount == 0 || ownedShards.get(shardOf(name, shardCount));
+    }
+
+    /**
+     * Drop the subtrees of the shards not owned, loaded from a checkpoint
+     * or a baseline.
+     */
+    private void dropForeignSubtrees() {
+        if (shardCount == 0) {
+            return;
+        }
+        for (final NIOFileEntry child : rootEntry.getChildren()) {
+            if (!isOwned(child.getName())) {
+                child.setChildren(NIOFileEntry.EMPTY_ENTRIES);
+            }
+        }
+    }
+
+    /**
+     * Set whether the checks detect the files and directories moved.
+     * <p>
+     * When set, the changes of each check are held until its end, and each
+     * delete paired with a create of the same contents is reported to the
+     * {@link NIOFileMoveListener}s as a move instead; other listeners are
+     * still notified of the delete and the create. Entries have no ETag, so
+     * a file is only paired with one of the same name and length, and a
+     * directory with one holding the same names and lengths.
+     *
+     * @param moveDetection true to detect moves
+     */
+    public void setMoveDetection(final boolean moveDetection) {
+        lock.lock();
+        try {
+            this.moveDetection = moveDetection;
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Return whether the checks detect the files and directories moved.
+     *
+     * @return true if moves are detected
+     */
+    public boolean isMoveDetection() {
+        return moveDetection;
+    }
+
     /**
      * Add a file system listener.
      *
-     * @param listener The file system listener
+     * @param listener The file system listener
+     */
+    public void addListener(final NIOFileAlterationListener listener) {
+        if (listener != null) {
+            listeners.add(listener);
+        }
+    }
+
+    /**
+     * Add a file system listener notified only of the changes of a prefix:
+     * the file or directory of the prefix, and all those under it.
+     * <p>
+     * Prefixed listeners are kept in a trie of the names of their prefixes,
+     * so notifying a change costs in proportion to the depth of its path
+     * rather than to the number of prefixed listeners. They are notified of
+     * the start and stop of every check, once each, and of a change once
+     * per prefix they are added for.
+     *
+     * @param prefix   The file or directory, relative to or under the observed directory
+     * @param listener The file system listener
+     */
+    public void addListener(final Path prefix, final NIOFileAlterationListener listener) {
+        if (prefix == null) {
+            throw new IllegalArgumentException("Prefix is missing");
+        }
+        final Path observed = toObservedPath(prefix.isAbsolute() ? prefix : rootEntry.getFile().resolve(prefix));
+        if (observed == null) {
+            throw new IllegalArgumentException("Prefix is not under " + rootEntry.getFile());
+        }
+        if (listener != null) {
+            routedListeners.add(observed, rootEntry.getFile().getNameCount(), listener);
+        }
+    }
+
+    /**
+     * Remove a file system listener, with all its prefixes.
+     *
+     * @param listener The file system listener
+     */
+    public void removeListener(final NIOFileAlterationListener listener) {
+        if (listener != null) {
+            while (listeners.remove(listener)) {
+            }
+            routedListeners.remove(listener);
+        }
+    }
+
+    /**
+     * Returns the set of registered file system listeners.
+     *
+     * @return The file system listeners
+     */
+    public Iterable<NIOFileAlterationListener> getListeners() {
+        return listeners;
+    }
+
+    /**
+     * Initialize the observer.
+     *
+     * @throws Exception if an error occurs
+     */
+    public void initialize() throws Exception {
+        lock.lock();
+        try {
+            if (preloaded) {
+                preloaded = false;
+            } else if (!loadCheckpoint()) {
+                rootEntry.refresh(rootEntry.getFile());
+                if (!loadBaseline()) {
+                    final Listing listing = new Listing();
+                    final NIOFileEntry[] children = doListFiles(rootEntry.getFile(), rootEntry, listing);
+                    rootEntry.setChildren(children);
+                    initListing = listing;
+                }
+            }
+            dropForeignSubtrees();
+            rebuildIndex();
+            if (partitionScanTimes != null) {
+                Arrays.fill(partitionScanTimes, System.currentTimeMillis());
+            }
+        } finally {
+            unlock();
+        }
+        ready.complete(null);
+    }
+
+    /**
+     * Initialize the observer in the background.
+     * <p>
+     * The observed directory is listed first, then each of its subdirectories
+     * is loaded by a separate task, so that large trees load concurrently.
+     * Checks may run meanwhile: subtrees already loaded are compared and fire
+     * events as usual, while those still loading are left alone until their
+     * baseline is complete. A checkpoint or snapshot loader, when set, is
+     * loaded by a single task instead.
+     *
+     * @param executor The executor running the initialization tasks
+     * @return a future completed once the whole baseline is loaded
+     * @see #getReadyFuture()
+     * @see #getInitializationProgress()
+     */
+    public CompletableFuture<Void> initializeAsync(final Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor is missing");
+        }
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        ready = future;
+        if (preloaded) {
+            preloaded = false;
+            lock.lock();
+            try {
+                rebuildIndex();
+            } finally {
+                unlock();
+            }
+            future.complete(null);
+            return future;
+        }
+        listingRoot = true;
+        executor.execute(() -> {
+            try {
+                listRoot(executor, future);
+            } catch (final Throwable t) {
+                listingRoot = false;
+                future.completeExceptionally(t);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Return the future completed once the baseline snapshot is loaded.
+     *
+     * @return the readiness future
+     */
+    public CompletableFuture<Void> getReadyFuture() {
+        return ready;
+    }
+
+    /**
+     * Return the progress of the initialization.
+     *
+     * @return the fraction of the observed directory's subtrees loaded,
+     * from 0 to 1
+     */
+    public double getInitializationProgress() {
+        if (ready.isDone()) {
+            return 1.0;
+        }
+        final int count = subtreeCount;
+        if (listingRoot || count == 0) {
+            return 0.0;
+        }
+        return (count - pendingSubtrees.size()) / (double) count;
+    }
+
+    private boolean isReady() {
+        return ready.isDone() && !ready.isCompletedExceptionally();
+    }
+
+    /**
+     * List the observed directory and submit a task per subdirectory.
+     */
+    private void listRoot(final Executor executor, final CompletableFuture<Void> future) {
+        lock.lock();
+        try {
+            initListing = new Listing();
+            if (loadCheckpoint()) {
+                dropForeignSubtrees();
+                rebuildIndex();
+                listingRoot = false;
+                future.complete(null);
+                return;
+            }
+            rootEntry.refresh(rootEntry.getFile());
+            if (loadBaseline()) {
+                dropForeignSubtrees();
+                rebuildIndex();
+                listingRoot = false;
+                future.complete(null);
+                return;
+            }
+        } finally {
+            unlock();
+        }
+        final Listing listing = new Listing();
+        final Path[] files = listFiles(rootEntry.getFile(), listing);
+        final NIOFileEntry[] children = files.length > 0 ? new NIOFileEntry[files.length] : NIOFileEntry.EMPTY_ENTRIES;
+        final List<NIOFileEntry> subtrees = new ArrayList<>();
+        for (int i = 0; i < files.length; i++) {
+            children[i] = rootEntry.newChildInstance(files[i]);
+            children[i].refresh(files[i]);
+            if (children[i].isDirectory() && isOwned(children[i].getName())) {
+                subtrees.add(children[i]);
+            }
+        }
+        lock.lock();
+        try {
+            rootEntry.setChildren(children);
+            initListing.merge(listing);
+            pendingSubtrees.addAll(subtrees);
+            subtreeCount = subtrees.size();
+            rebuildIndex();
+            listingRoot = false;
+        } finally {
+            unlock();
+        }
+        if (subtrees.isEmpty()) {
+            future.complete(null);
+        }
+        for (final NIOFileEntry subtree : subtrees) {
+            executor.execute(() -> loadSubtree(subtree, future));
+        }
+    }
+
+    /**
+     * Load the baseline of a subdirectory of the observed directory.
+     */
+    private void loadSubtree(final NIOFileEntry subtree, final CompletableFuture<Void> future) {
+        try {
+            final Listing listing = new Listing();
+            final NIOFileEntry[] children = doListFiles(subtree.getFile(), subtree, listing);
+            lock.lock();
+            try {
+                initListing.merge(listing);
+                if (pendingSubtrees.remove(subtree)) {
+                    subtree.setChildren(children);
+                    final NIOSnapshotIndex currentIndex = index;
+                    if (currentIndex != null) {
+                        currentIndex.add(subtree);
+                    }
+                }
+            } finally {
+                unlock();
+            }
+        } catch (final Throwable t) {
+            pendingSubtrees.remove(subtree);
+            future.completeExceptionally(t);
+            return;
+        }
+        if (pendingSubtrees.isEmpty()) {
+            future.complete(null);
+        }
+    }
+
+    private void rebuildIndex() {
+        final NIOSnapshotIndex currentIndex = index;
+        if (currentIndex != null) {
+            currentIndex.rebuild();
+        }
+    }
+
+    /**
+     * Final processing.
+     *
+     * @throws Exception if an error occurs
+     */
+    public void destroy() throws Exception {
+        if (checkpointFile != null && isReady()) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * Load the snapshot from the checkpoint file, if any.
+     *
+     * @return {@code true} if the snapshot was loaded, otherwise {@code false}
+     */
+    private boolean loadCheckpoint() {
+        if (checkpointFile == null || !Files.exists(checkpointFile)) {
+            return false;
+        }
+        try {
+            NIOSnapshotCheckpoint.load(rootEntry, checkpointFile);
+            lastCheckpoint = System.currentTimeMillis();
+            return true;
+        } catch (final IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Load the baseline snapshot from the snapshot loader, if any.
+     *
+     * @return {@code true} if the baseline was loaded, otherwise {@code false}
+     */
+    private boolean loadBaseline() {
+        if (snapshotLoader == null) {
+            return false;
+        }
+        try {
+            reconcileUntil = snapshotLoader.load(rootEntry, comparator);
+            reconciling = true;
+            return true;
+        } catch (final IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Return the number of changes found by the last check.
+     *
+     * @return the number of created, changed and deleted files and directories
+     */
+    public int getLastChangeCount() {
+        return lastChangeCount;
+    }
+
+    /**
+     * Check whether the file and its children have been created, modified or deleted.
+     */
+    public void checkAndNotify() {
+        check(null);
+    }
+
+    /**
+     * Check whether the file and its children have been created, modified or
+     * deleted, in the background.
+     * <p>
+     * The listeners are notified as by {@link #checkAndNotify()}, from the
+     * thread running the check; the future completes exceptionally if one of
+     * them throws.
+     *
+     * @param executor The executor running the check
+     * @return a future completed with the result of the check once done
+     */
+    public CompletableFuture<NIOScanResult> checkAndNotifyAsync(final Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor is missing");
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            final long start = System.nanoTime();
+            final List<NIOFileChange> changes = new ArrayList<>();
+            final Listing listing = check(changes);
+            if (listing == null) {
+                return NIOScanResult.skipped(System.nanoTime() - start);
+            }
+            return new NIOScanResult(NIOFileChangeSet.of(changes), listing.requestCount,
+                    System.nanoTime() - start, listing.failedSubtrees);
+        }, executor);
+    }
+
+    /**
+     * Run a check.
+     *
+     * @param changes The list collecting the changes found, or null
+     * @return the listings made by the check, or null if the check did not
+     * run since the observed directory is still being listed
+     */
+    private Listing check(final List<NIOFileChange> changes) {
+        if (listingRoot) {
+            // the baseline of the observed directory itself is not known yet
+            return null;
+        }
+        final Listing listing;
+        lock.lock();
+        try {
+            collectedChanges = changes;
+            doCheckAndNotify();
+            // each check lists into its own instance, which later checks leave alone
+            listing = checkListing;
+        } finally {
+            collectedChanges = null;
+            unlock();
+        }
+        if (!ready.isDone() && !listingRoot && pendingSubtrees.isEmpty()) {
+            ready.complete(null);
+        }
+        return listing;
+    }
+
+    /**
+     * Apply a change made to the observed directory to the snapshot, without
+     * firing any event nor accessing the file system.
+     * <p>
+     * Used to keep the snapshot of a standby observer up to date from the
+     * changes found by a primary observer of the same directory; the parent
+     * directories of a file not known yet are added along with it.
+     *
+     * @param change The change, ignored if not under the observed directory
+     * @see NIOStandby
+     */
+    public void applyChange(final NIOFileChange change) {
+        final Path observed = toObservedPath(change.getFile());
+        if (observed == null || observed.equals(rootEntry.getFile())) {
+            return;
+        }
+        lock.lock();
+        try {
+            NIOFileEntry parent = rootEntry;
+            final Iterator<Path> names = rootEntry.getFile().relativize(observed).iterator();
+            while (names.hasNext()) {
+                final Path file = parent.getFile().resolve(names.next().toString());
+                NIOFileEntry entry = findChild(parent, file);
+                if (!names.hasNext()) {
+                    applyChange(parent, entry, file, change);
+                    return;
+                }
+                if (entry == null) {
+                    if (change.getKind() == NIOFileChange.Kind.DELETE) {
+                        return;
+                    }
+                    entry = parent.newChildInstance(file);
+                    entry.setExists(true);
+                    entry.setDirectory(true);
+                    setChild(parent, entry, true);
+                }
+                parent = entry;
+            }
+        } finally {
+            unlock();
+        }
+    }
+
+    private void applyChange(final NIOFileEntry parent, final NIOFileEntry previous, final Path file,
+                             final NIOFileChange change) {
+        final NIOSnapshotIndex currentIndex = index;
+        if (change.getKind() == NIOFileChange.Kind.DELETE) {
+            if (previous != null) {
+                if (currentIndex != null) {
+                    unindex(currentIndex, previous);
+                }
+                setChild(parent, previous, false);
+            }
+            return;
+        }
+        final NIOFileEntry entry = previous != null ? previous : parent.newChildInstance(file);
+        entry.setExists(true);
+        entry.setDirectory(change.isDirectory());
+        entry.setLength(change.getLength());
+        entry.setLastModified(change.getLastModified());
+        if (previous == null) {
+            setChild(parent, entry, true);
+        }
+        if (currentIndex != null && !entry.isDirectory()) {
+            currentIndex.update(entry);
+        }
+    }
+
+    private static void unindex(final NIOSnapshotIndex currentIndex, final NIOFileEntry entry) {
+        for (final NIOFileEntry child : entry.getChildren()) {
+            unindex(currentIndex, child);
+        }
+        if (!entry.isDirectory()) {
+            currentIndex.remove(entry);
+        }
+    }
+
+    /**
+     * Report changes known to have been made to the observed directory, as
+     * a check of their paths would, but without accessing the file system:
+     * the snapshot is patched and the listeners are notified of the changes
+     * within one onStart()/onStop() pair, so that a delete and a create can
+     * be paired as a move.
+     * <p>
+     * This method never waits for the snapshot: while a check or another
+     * thread holds it, the changes are queued and applied by that thread,
+     * before the stop event of its check or once it releases the snapshot,
+     * along with the changes queued meanwhile.
+     * <p>
+     * The kind of a change other than a delete is decided from the snapshot:
+     * a create if the path is not known yet, a change if its attributes
+     * differ, nothing otherwise. The parent directories not known yet are
+     * reported as created along with it. Changes not under the observed
+     * directory, in a shard not owned, in a subtree still loading or
+     * rejected by the file filter are ignored.
+     *
+     * @param changes The changes, with the attributes of the files after them
+     * @see NIOWriteThroughFiles
      */
-    public void addListener(final NIOFileAlterationListener listener) {
-        if (listener != null) {
-            listeners.add(listener);
+    public void notifyChanges(final List<NIOFileChange> changes) {
+        if (changes == null) {
+            throw new IllegalArgumentException("Changes are missing");
+        }
+        if (listingRoot) {
+            // the baseline of the observed directory itself is not known yet
+            return;
+        }
+        notifiedChanges.addAll(changes);
+        applyNotifiedChanges();
+    }
+
+    /**
+     * Apply the changes queued by {@link #notifyChanges(List)} within one
+     * onStart()/onStop() pair, unless the snapshot is held: its holder
+     * applies them then.
+     */
+    private void applyNotifiedChanges() {
+        while (!notifiedChanges.isEmpty() && !lock.isHeldByCurrentThread() && lock.tryLock()) {
+            try {
+                if (!notifiedChanges.isEmpty()) {
+                    fireStart();
+                    fireStop();
+                }
+            } finally {
+                // the changes queued after the stop event are applied by the next round
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Release the snapshot, then apply the changes queued while it was held.
+     */
+    private void unlock() {
+        lock.unlock();
+        if (!notifiedChanges.isEmpty()) {
+            applyNotifiedChanges();
+        }
+    }
+
+    private void notifyChange(final NIOFileChange change) {
+        final Path observed = toObservedPath(change.getFile());
+        if (observed == null || observed.equals(rootEntry.getFile())) {
+            return;
+        }
+        final boolean delete = change.getKind() == NIOFileChange.Kind.DELETE;
+        NIOFileEntry parent = rootEntry;
+        final Iterator<Path> names = rootEntry.getFile().relativize(observed).iterator();
+        while (names.hasNext()) {
+            final String name = names.next().toString();
+            if (parent == rootEntry && !isOwned(name)) {
+                // observed by the node owning its shard
+                return;
+            }
+            final Path file = parent.getFile().resolve(name);
+            NIOFileEntry entry = findChild(parent, file);
+            if (!names.hasNext()) {
+                if (delete) {
+                    if (entry != null) {
+                        pendingSubtrees.remove(entry);
+                        checkAndNotify(entry, entry.getChildren(), EMPTY_FILE_ARRAY);
+                        doDelete(entry);
+                        setChild(parent, entry, false);
+                    }
+                } else if (isAccepted(file)) {
+                    notifyUpdate(parent, entry, file, change);
+                }
+                return;
+            }
+            if (entry == null) {
+                if (delete || !isAccepted(file)) {
+                    return;
+                }
+                entry = parent.newChildInstance(file);
+                entry.setExists(true);
+                entry.setDirectory(true);
+                entry.setScanCycle(cycle);
+                setChild(parent, entry, true);
+                doCreate(entry);
+            } else if (pendingSubtrees.contains(entry)) {
+                // still loading its baseline
+                return;
+            }
+            parent = entry;
+        }
+    }
+
+    private void notifyUpdate(final NIOFileEntry parent, final NIOFileEntry previous, final Path file,
+                              final NIOFileChange change) {
+        if (previous == null) {
+            final NIOFileEntry entry = parent.newChildInstance(file);
+            entry.setExists(true);
+            entry.setDirectory(change.isDirectory());
+            entry.setLength(change.getLength());
+            entry.setLastModified(change.getLastModified());
+            entry.setScanCycle(cycle);
+            setChild(parent, entry, true);
+            doCreate(entry);
+            return;
+        }
+        if (pendingSubtrees.contains(previous) || (previous.isDirectory() == change.isDirectory()
+                && previous.getLength() == change.getLength()
+                && previous.getLastModified() == change.getLastModified())) {
+            return;
+        }
+        if (previous.isDirectory() && !change.isDirectory()) {
+            checkAndNotify(previous, previous.getChildren(), EMPTY_FILE_ARRAY);
+        }
+        previous.setDirectory(change.isDirectory());
+        previous.setLength(change.getLength());
+        previous.setLastModified(change.getLastModified());
+        final NIOSnapshotIndex currentIndex = index;
+        if (currentIndex != null) {
+            currentIndex.update(previous);
+        }
+        fire(NIOFileChange.Kind.CHANGE, previous);
+    }
+
+    private boolean isAccepted(final Path file) {
+        try {
+            return fileFilter == null || fileFilter.accept(file);
+        } catch (final IOException e) {
+            e.printStackTrace();
+            return false;
         }
     }
 
     /**
-     * Remove a file system listener.
+     * Use the snapshot built so far as the baseline: the next initialization
+     * neither walks the observed directory nor loads a checkpoint or a baseline.
      *
-     * @param listener The file system listener
+     * @see NIOStandby#promote()
      */
-    public void removeListener(final NIOFileAlterationListener listener) {
-        if (listener != null) {
-            while (listeners.remove(listener)) {
+    void adoptSnapshot() {
+        lock.lock();
+        try {
+            rootEntry.setExists(true);
+            rootEntry.setDirectory(true);
+            preloaded = true;
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Check the whole observed directory right away.
+     *
+     * @see #triggerNow(Path)
+     */
+    public void triggerNow() {
+        triggerNow(null);
+    }
+
+    /**
+     * Check a subtree of the observed directory right away, merging the
+     * result into the snapshot.
+     * <p>
+     * This method may be called from any thread. It waits for a check
+     * running concurrently to finish, and triggers made meanwhile by other
+     * threads are coalesced: the first of them to get hold of the snapshot
+     * checks all their subtrees at once, and the others return as soon as it
+     * is done. When this method returns, the subtree has been checked after
+     * it was called. While the observed directory is still being listed by
+     * {@link #initializeAsync(Executor)}, it waits for the baseline to be
+     * loaded first, so it must not be called from a thread of the executor
+     * loading it.
+     *
+     * @param prefix The file or directory to check, the observed directory
+     *               if null
+     * @throws java.util.concurrent.CompletionException if the baseline
+     *                                                  being listed could not be loaded
+     */
+    public void triggerNow(final Path prefix) {
+        runTriggers(requestTrigger(prefix));
+    }
+
+    /**
+     * Return a path as resolved against the observed directory.
+     *
+     * @param path The path, relative or absolute
+     * @return the path to pass to {@link #triggerNow(Path)}, or null if it is
+     * not under the observed directory
+     */
+    Path toObservedPath(final Path path) {
+        final Path directory = rootEntry.getFile();
+        if (!path.getFileSystem().equals(directory.getFileSystem())) {
+            return null;
+        }
+        final Path absoluteDirectory = directory.toAbsolutePath().normalize();
+        final Path absolute = path.toAbsolutePath().normalize();
+        if (!absolute.startsWith(absoluteDirectory)) {
+            return null;
+        }
+        return directory.resolve(absoluteDirectory.relativize(absolute));
+    }
+
+    /**
+     * Add a subtree to those checked by the next {@link #runTriggers(long)}.
+     * <p>
+     * Each check takes all the triggers requested so far at once and is
+     * numbered in sequence; the ticket returned is the number of the check
+     * that takes this trigger.
+     *
+     * @param prefix The file or directory to check, the observed directory
+     *               if null
+     * @return the ticket to pass to {@link #runTriggers(long)}
+     */
+    long requestTrigger(final Path prefix) {
+        final Path directory = rootEntry.getFile();
+        if (prefix != null && !prefix.startsWith(directory)) {
+            throw new IllegalArgumentException("Prefix is not under " + directory);
+        }
+        synchronized (triggers) {
+            triggers.add(prefix != null ? prefix : directory);
+            return takenTriggers + 1;
+        }
+    }
+
+    /**
+     * Take all the triggers requested so far.
+     *
+     * @param prefixes The list receiving the subtrees to check, or null
+     * @return the number of the check taking them
+     */
+    private long takeTriggers(final List<Path> prefixes) {
+        synchronized (triggers) {
+            if (prefixes != null) {
+                prefixes.addAll(triggers);
             }
+            triggers.clear();
+            return ++takenTriggers;
         }
     }
 
     /**
-     * Returns the set of registered file system listeners.
+     * Check the subtrees of all the triggers requested so far, unless the
+     * check taking a trigger has already finished. Waits for a check that
+     * has taken it and is still running, and for the baseline being listed.
      *
-     * @return The file system listeners
+     * @param ticket The ticket returned by {@link #requestTrigger(Path)}
      */
-    public Iterable<NIOFileAlterationListener> getListeners() {
-        return listeners;
+    void runTriggers(final long ticket) {
+        if (checkedTriggers >= ticket) {
+            return;
+        }
+        if (listingRoot) {
+            // the subtree can only be compared once the baseline is known
+            getReadyFuture().join();
+        }
+        lock.lock();
+        try {
+            if (checkedTriggers >= ticket) {
+                // checked by a concurrent trigger or check while waiting for the lock
+                return;
+            }
+            final List<Path> prefixes = new ArrayList<>();
+            final long generation = takeTriggers(prefixes);
+            if (prefixes.contains(rootEntry.getFile())) {
+                doCheckAndNotify();
+                return;
+            }
+            if (prefixes.isEmpty()) {
+                checkedTriggers = generation;
+                return;
+            }
+            fireStart();
+            for (final Path prefix : prefixes) {
+                if (!isUnderAny(prefix, prefixes)) {
+                    checkPrefix(prefix);
+                }
+            }
+            fireStop();
+            checkedTriggers = generation;
+        } finally {
+            unlock();
+        }
+    }
+
+    private static boolean isUnderAny(final Path prefix, final List<Path> prefixes) {
+        for (final Path other : prefixes) {
+            if (!other.equals(prefix) && prefix.startsWith(other)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
-     * Initialize the observer.
+     * Check one subtree, walking down the snapshot to the deepest entry
+     * already known on its path.
      *
-     * @throws Exception if an error occurs
+     * @param prefix The file or directory to check
      */
-    public void initialize() throws Exception {
-        rootEntry.refresh(rootEntry.getFile());
-        final NIOFileEntry[] children = doListFiles(rootEntry.getFile(), rootEntry);
-        rootEntry.setChildren(children);
+    private void checkPrefix(final Path prefix) {
+        NIOFileEntry parent = rootEntry;
+        final Iterator<Path> names = rootEntry.getFile().relativize(prefix).iterator();
+        while (names.hasNext()) {
+            final String name = names.next().toString();
+            if (parent == rootEntry && !isOwned(name)) {
+                // observed by the node owning its shard
+                return;
+            }
+            final Path file = parent.getFile().resolve(name);
+            final NIOFileEntry entry = findChild(parent, file);
+            if (entry == null || !names.hasNext()) {
+                checkChild(parent, entry, file);
+                return;
+            }
+            if (pendingSubtrees.contains(entry)) {
+                // still loading its baseline
+                return;
+            }
+            parent = entry;
+        }
     }
 
     /**
-     * Final processing.
+     * Compare a single child of a directory with the file system.
      *
-     * @throws Exception if an error occurs
+     * @param parent The parent entry
+     * @param entry  The previous entry of the child, null if none
+     * @param file   The child file
      */
-    public void destroy() throws Exception {
+    private void checkChild(final NIOFileEntry parent, final NIOFileEntry entry, final Path file) {
+        checkListing.requestCount++;
+        boolean exists = Files.exists(file);
+        try {
+            exists = exists && (fileFilter == null || fileFilter.accept(file));
+        } catch (final IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        if (entry == null) {
+            if (exists) {
+                final NIOFileEntry created = createS3FileEntry(parent, file, checkListing);
+                setChild(parent, created, true);
+                doCreate(created);
+            }
+        } else if (!exists) {
+            pendingSubtrees.remove(entry);
+            checkAndNotify(entry, entry.getChildren(), EMPTY_FILE_ARRAY);
+            doDelete(entry);
+            setChild(parent, entry, false);
+        } else if (!pendingSubtrees.contains(entry)) {
+            entry.setScanCycle(cycle);
+            doMatch(entry, file);
+            checkChildren(entry, file);
+        }
+    }
+
+    private NIOFileEntry findChild(final NIOFileEntry parent, final Path file) {
+        final NIOFileEntry[] children = parent.getChildren();
+        final int i = search(children, file);
+        return i >= 0 ? children[i] : null;
+    }
+
+    private int search(final NIOFileEntry[] children, final Path file) {
+        int low = 0;
+        int high = children.length - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int cmp = comparator.compare(children[mid].getFile(), file);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
     }
 
     /**
-     * Check whether the file and its children have been created, modified or deleted.
+     * Add or remove a child of a directory, keeping the children sorted.
+     *
+     * @param parent The parent entry
+     * @param child  The child entry
+     * @param add    true to add the child, false to remove it
      */
-    public void checkAndNotify() {
+    private void setChild(final NIOFileEntry parent, final NIOFileEntry child, final boolean add) {
+        final NIOFileEntry[] children = parent.getChildren();
+        final int i = search(children, child.getFile());
+        final NIOFileEntry[] updated;
+        if (add) {
+            final int at = i >= 0 ? i : -(i + 1);
+            updated = new NIOFileEntry[children.length + (i >= 0 ? 0 : 1)];
+            System.arraycopy(children, 0, updated, 0, at);
+            updated[at] = child;
+            final int from = i >= 0 ? at + 1 : at;
+            System.arraycopy(children, from, updated, at + 1, children.length - from);
+        } else if (i >= 0) {
+            updated = new NIOFileEntry[children.length - 1];
+            System.arraycopy(children, 0, updated, 0, i);
+            System.arraycopy(children, i + 1, updated, i, children.length - i - 1);
+        } else {
+            return;
+        }
+        parent.setChildren(updated.length > 0 ? updated : NIOFileEntry.EMPTY_ENTRIES);
+    }
+
+    /**
+     * Reset the counters of a check and fire onStart().
+     */
+    private void fireStart() {
+        changeCount = 0;
+        checkListing = new Listing();
+        heldChanges = moveDetection ? new NIOMoveDetector() : null;
+        deliverStart();
+    }
+
+    /**
+     * Apply the changes notified meanwhile, record the counters of a check,
+     * release the changes held for move detection and fire onStop().
+     */
+    private void fireStop() {
+        NIOFileChange notified;
+        while ((notified = notifiedChanges.poll()) != null) {
+            notifyChange(notified);
+        }
+        lastChangeCount = changeCount;
+        lastRequestCount = checkListing.requestCount;
+        lastFailedSubtrees = Collections.unmodifiableList(checkListing.failedSubtrees);
+        releaseHeldChanges();
+        deliverStop();
+    }
 
-        /* fire onStart() */
+    /**
+     * Fire onStart() to the listeners, those registered for a prefix included.
+     */
+    void deliverStart() {
         for (final NIOFileAlterationListener listener : listeners) {
             listener.onStart(this);
         }
+        for (final NIOFileAlterationListener listener : routedListeners.getListeners()) {
+            listener.onStart(this);
+        }
+    }
+
+    /**
+     * Fire onStop() to the listeners, those registered for a prefix included.
+     */
+    void deliverStop() {
+        for (final NIOFileAlterationListener listener : listeners) {
+            listener.onStop(this);
+        }
+        for (final NIOFileAlterationListener listener : routedListeners.getListeners()) {
+            listener.onStop(this);
+        }
+    }
+
+    private void doCheckAndNotify() {
+        // the whole tree is checked, including the subtrees triggered so far
+        final long generation = takeTriggers(null);
+        cycle++;
+        fireStart();
 
         /* fire directory/file events */
         final Path rootFile = rootEntry.getFile();
         if (Files.exists(rootFile)) {
-            checkAndNotify(rootEntry, rootEntry.getChildren(), listFiles(rootFile));
+            checkChildren(rootEntry, rootFile);
         } else if (rootEntry.isExists()) {
             checkAndNotify(rootEntry, rootEntry.getChildren(), EMPTY_FILE_ARRAY);
         } else {
             // Didn't exist and still doesn't
         }
 
-        /* fire onStop() */
-        for (final NIOFileAlterationListener listener : listeners) {
-            listener.onStop(this);
+        reconciling = false;
+        fireStop();
+        checkedTriggers = generation;
+
+        if (checkpointFile != null && checkpointInterval > 0 && isReady()
+                && System.currentTimeMillis() - lastCheckpoint >= checkpointInterval) {
+            try {
+                checkpoint();
+            } catch (final IOException e) {
+                e.printStackTrace();
+            }
         }
     }
 
@@ -204,40 +1599,187 @@ public class NIOFileAlterationObserver implements Serializable {
     private void checkAndNotify(final NIOFileEntry parent, final NIOFileEntry[] previous, final Path[] files) {
         int c = 0;
         final NIOFileEntry[] current = files.length > 0 ? new NIOFileEntry[files.length] : NIOFileEntry.EMPTY_ENTRIES;
+        final List<NIOFileEntry> partitioned = partitionCount > 0 && parent == rootEntry ? new ArrayList<>() : null;
+        final boolean sharded = shardCount > 0 && parent == rootEntry;
         for (final NIOFileEntry entry : previous) {
             while (c < files.length && comparator.compare(entry.getFile(), files[c]) > 0) {
-                current[c] = createS3FileEntry(parent, files[c]);
-                doCreate(current[c]);
+                current[c] = createChild(parent, files[c]);
                 c++;
             }
+            final boolean foreign = sharded && !isOwned(entry.getName());
+            final Long handover = sharded && !foreign ? handovers.remove(entry.getName()) : null;
             if (c < files.length && comparator.compare(entry.getFile(), files[c]) == 0) {
-                doMatch(entry, files[c]);
-                checkAndNotify(entry, entry.getChildren(), listFiles(files[c]));
+                if (foreign) {
+                    // observed by the node owning its shard
+                } else if (handover != null) {
+                    checkHandover(entry, files[c], handover);
+                } else if (partitioned != null && entry.isDirectory()) {
+                    partitioned.add(entry);
+                } else {
+                    checkMatch(entry, files[c]);
+                }
                 current[c] = entry;
                 c++;
+            } else if (foreign) {
+                final NIOSnapshotIndex currentIndex = index;
+                if (currentIndex != null) {
+                    currentIndex.remove(entry);
+                }
             } else {
+                pendingSubtrees.remove(entry);
                 checkAndNotify(entry, entry.getChildren(), EMPTY_FILE_ARRAY);
                 doDelete(entry);
             }
         }
         for (; c < files.length; c++) {
-            current[c] = createS3FileEntry(parent, files[c]);
-            doCreate(current[c]);
+            current[c] = createChild(parent, files[c]);
         }
         parent.setChildren(current);
+        if (partitioned != null) {
+            checkPartitions(partitioned);
+        }
     }
 
     /**
-     * Create a new file entry for the specified file.
+     * Compare an entry with the file it still matches, and its children.
+     *
+     * @param entry The previous file system entry
+     * @param file  The current file
+     */
+    private void checkMatch(final NIOFileEntry entry, final Path file) {
+        if (!pendingSubtrees.isEmpty() && pendingSubtrees.contains(entry)) {
+            // still loading its baseline
+            return;
+        }
+        if (isCold(entry)) {
+            // listed by a later check
+            return;
+        }
+        entry.setScanCycle(cycle);
+        doMatch(entry, file);
+        checkChildren(entry, file);
+    }
+
+    /**
+     * Load the subtree of a shard newly owned, firing events only for the
+     * entries modified after the handover.
+     *
+     * @param entry        The entry of the observed directory, without children
+     * @param file         The file it still matches
+     * @param handoverTime The time as of which the previous owner observed it
+     */
+    private void checkHandover(final NIOFileEntry entry, final Path file, final long handoverTime) {
+        final boolean wasReconciling = reconciling;
+        final long previousUntil = reconcileUntil;
+        reconciling = true;
+        reconcileUntil = wasReconciling ? Math.min(previousUntil, handoverTime) : handoverTime;
+        try {
+            entry.setScanCycle(cycle);
+            doMatch(entry, file);
+            checkChildren(entry, file);
+        } finally {
+            reconciling = wasReconciling;
+            reconcileUntil = previousUntil;
+        }
+    }
+
+    /**
+     * Compare the children of a directory entry with those listed, unless
+     * the listing fails.
+     *
+     * @param entry The directory entry
+     * @param file  The directory
+     */
+    private void checkChildren(final NIOFileEntry entry, final Path file) {
+        final Path[] files = tryListFiles(file, checkListing);
+        if (files == null) {
+            // not reported as deleted: checked again by the next check
+            return;
+        }
+        checkAndNotify(entry, entry.getChildren(), files);
+    }
+
+    /**
+     * Compare the subdirectories of the observed directory in the partitions
+     * due for the current check.
+     *
+     * @param directories The subdirectories still existing
+     */
+    private void checkPartitions(final List<NIOFileEntry> directories) {
+        for (int scanned = 0; scanned < partitionCount; scanned++) {
+            if (scanned > 0 && (maxRequests == 0 || checkListing.requestCount >= maxRequests)) {
+                break;
+            }
+            final int partition = partitionCursor;
+            for (final NIOFileEntry entry : directories) {
+                if (partitionOf(entry) == partition) {
+                    checkMatch(entry, entry.getFile());
+                }
+            }
+            partitionScanTimes[partition] = System.currentTimeMillis();
+            partitionCursor = (partition + 1) % partitionCount;
+        }
+    }
+
+    private int partitionOf(final NIOFileEntry entry) {
+        return Math.floorMod(entry.getName().hashCode(), partitionCount);
+    }
+
+    /**
+     * Whether a directory is skipped by the current check.
+     *
+     * @param entry The entry
+     * @return true if the directory is not to be listed by the current check
+     */
+    private boolean isCold(final NIOFileEntry entry) {
+        if (heatHalfLife <= 0 || !entry.isDirectory()) {
+            return false;
+        }
+        final long elapsed = cycle - entry.getScanCycle();
+        if (elapsed >= maxStaleness) {
+            return false;
+        }
+        final double heat = entry.getHeat(cycle, heatHalfLife);
+        if (heat >= 1) {
+            return false;
+        }
+        final double halvings = heat > 0 ? Math.ceil(-Math.log(heat) / Math.log(2)) : Double.MAX_VALUE;
+        return halvings >= 31 || elapsed < 1L << (int) halvings;
+    }
+
+    /**
+     * Create the entry of a new file and fire its creation, unless it is in
+     * a shard not owned.
      *
      * @param parent The parent file entry
-     * @param file   The file to create an entry for
+     * @param file   The new file
+     * @return the new entry
+     */
+    private NIOFileEntry createChild(final NIOFileEntry parent, final Path file) {
+        final NIOFileEntry entry = createS3FileEntry(parent, file, checkListing);
+        if (parent != rootEntry || isOwned(entry.getName())) {
+            doCreate(entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Create a new file entry for the specified file.
+     *
+     * @param parent  The parent file entry
+     * @param file    The file to create an entry for
+     * @param listing The listings made so far
      * @return A new file entry
      */
-    private NIOFileEntry createS3FileEntry(final NIOFileEntry parent, final Path file) {
+    private NIOFileEntry createS3FileEntry(final NIOFileEntry parent, final Path file, final Listing listing) {
         final NIOFileEntry entry = parent.newChildInstance(file);
         entry.refresh(file);
-        final NIOFileEntry[] children = doListFiles(file, entry);
+        entry.setScanCycle(cycle);
+        if (parent == rootEntry && !isOwned(entry.getName())) {
+            // listed by the node owning its shard
+            return entry;
+        }
+        final NIOFileEntry[] children = doListFiles(file, entry, listing);
         entry.setChildren(children);
         return entry;
     }
@@ -245,15 +1787,16 @@ public class NIOFileAlterationObserver implements Serializable {
     /**
      * List the files
      *
-     * @param file  The file to list files for
-     * @param entry the parent entry
+     * @param file    The file to list files for
+     * @param entry   the parent entry
+     * @param listing The listings made so far
      * @return The child files
      */
-    private NIOFileEntry[] doListFiles(final Path file, final NIOFileEntry entry) {
-        final Path[] files = listFiles(file);
+    private NIOFileEntry[] doListFiles(final Path file, final NIOFileEntry entry, final Listing listing) {
+        final Path[] files = listFiles(file, listing);
         final NIOFileEntry[] children = files.length > 0 ? new NIOFileEntry[files.length] : NIOFileEntry.EMPTY_ENTRIES;
         for (int i = 0; i < files.length; i++) {
-            children[i] = createS3FileEntry(entry, files[i]);
+            children[i] = createS3FileEntry(entry, files[i], listing);
         }
         return children;
     }
@@ -264,12 +1807,12 @@ public class NIOFileAlterationObserver implements Serializable {
      * @param entry The file entry
      */
     private void doCreate(final NIOFileEntry entry) {
-        for (final NIOFileAlterationListener listener : listeners) {
-            if (entry.isDirectory()) {
-                listener.onDirectoryCreate(entry.getFile());
-            } else {
-                listener.onFileCreate(entry.getFile());
-            }
+        final NIOSnapshotIndex currentIndex = index;
+        if (currentIndex != null && !entry.isDirectory()) {
+            currentIndex.update(entry);
+        }
+        if (!reconciling || entry.getLastModified() > reconcileUntil) {
+            fire(NIOFileChange.Kind.CREATE, entry);
         }
         final NIOFileEntry[] children = entry.getChildren();
         for (final NIOFileEntry aChildren : children) {
@@ -285,12 +1828,12 @@ public class NIOFileAlterationObserver implements Serializable {
      */
     private void doMatch(final NIOFileEntry entry, final Path file) {
         if (entry.refresh(file)) {
-            for (final NIOFileAlterationListener listener : listeners) {
-                if (entry.isDirectory()) {
-                    listener.onDirectoryChange(file);
-                } else {
-                    listener.onFileChange(file);
-                }
+            final NIOSnapshotIndex currentIndex = index;
+            if (currentIndex != null) {
+                currentIndex.update(entry);
+            }
+            if (!reconciling || (!entry.isDirectory() && entry.getLastModified() > reconcileUntil)) {
+                fire(NIOFileChange.Kind.CHANGE, entry);
             }
         }
     }
@@ -301,31 +1844,116 @@ public class NIOFileAlterationObserver implements Serializable {
      * @param entry The file entry
      */
     private void doDelete(final NIOFileEntry entry) {
-        for (final NIOFileAlterationListener listener : listeners) {
-            if (entry.isDirectory()) {
-                listener.onDirectoryDelete(entry.getFile());
-            } else {
-                listener.onFileDelete(entry.getFile());
+        final NIOSnapshotIndex currentIndex = index;
+        if (currentIndex != null) {
+            currentIndex.remove(entry);
+        }
+        fire(NIOFileChange.Kind.DELETE, entry);
+    }
+
+    /**
+     * Fire a change to the registered listeners.
+     *
+     * @param kind  The kind of change
+     * @param entry The entry that changed
+     */
+    private void fire(final NIOFileChange.Kind kind, final NIOFileEntry entry) {
+        changeCount++;
+        if (heatHalfLife > 0) {
+            NIOFileEntry directory = kind == NIOFileChange.Kind.CREATE && entry.isDirectory() ? entry : entry.getParent();
+            for (; directory != null; directory = directory.getParent()) {
+                directory.addHeat(cycle, heatHalfLife, 1);
             }
         }
+        if (collectedChanges == null && listeners.isEmpty() && routedListeners.isEmpty()) {
+            return;
+        }
+        final NIOFileChange change = NIOFileChange.of(kind, entry);
+        if (collectedChanges != null) {
+            collectedChanges.add(change);
+        }
+        if (heldChanges != null) {
+            heldChanges.add(change, entry);
+            return;
+        }
+        deliver(change);
+    }
+
+    /**
+     * Notify the listeners of a change, then those registered for its prefixes.
+     *
+     * @param change The change
+     */
+    void deliver(final NIOFileChange change) {
+        for (final NIOFileAlterationListener listener : listeners) {
+            change.deliverTo(listener);
+        }
+        if (!routedListeners.isEmpty()) {
+            routedListeners.visit(change.getFile(), rootEntry.getFile().getNameCount(), change::deliverTo);
+        }
+    }
+
+    /**
+     * Return the listeners of a path: those of the observer, then those of its prefixes.
+     *
+     * @param file The path
+     * @return the listeners
+     */
+    private List<NIOFileAlterationListener> listenersOf(final Path file) {
+        if (routedListeners.isEmpty()) {
+            return listeners;
+        }
+        final List<NIOFileAlterationListener> all = new ArrayList<>(listeners);
+        routedListeners.visit(file, rootEntry.getFile().getNameCount(), all::add);
+        return all;
+    }
+
+    /**
+     * Notify the listeners of the changes held during the check, with the
+     * moves detected.
+     */
+    private void releaseHeldChanges() {
+        final NIOMoveDetector held = heldChanges;
+        heldChanges = null;
+        if (held != null) {
+            held.release(this::listenersOf);
+        }
     }
 
     /**
      * List the contents of a directory
      *
-     * @param file The file to list the contents of
+     * @param file    The file to list the contents of
+     * @param listing The listings made so far
      * @return the directory contents or a zero length array if
      * the empty or the file is not a directory
      */
-    private Path[] listFiles(final Path file) {
+    private Path[] listFiles(final Path file, final Listing listing) {
+        final Path[] children = tryListFiles(file, listing);
+        return children != null ? children : EMPTY_FILE_ARRAY;
+    }
+
+    /**
+     * List the contents of a directory, recording the directory as failed
+     * if it cannot be listed.
+     *
+     * @param file    The file to list the contents of
+     * @param listing The listings made so far
+     * @return the directory contents, a zero length array if the file is not
+     * a directory, or null if the listing failed
+     */
+    private Path[] tryListFiles(final Path file, final Listing listing) {
         Path[] children = null;
         try {
             if (Files.isDirectory(file)) {
+                listing.requestCount++;
                 children = fileFilter == null ? listDir(file) : listDir(file, fileFilter);
 
             }
         } catch (Exception e) {
             e.printStackTrace();
+            listing.failedSubtrees.add(file);
+            return null;
         }
         if (children == null) {
             children = EMPTY_FILE_ARRAY;
@@ -379,4 +2007,19 @@ public class NIOFileAlterationObserver implements Serializable {
         return builder.toString();
     }
 
+    /**
+     * The directory listings made by a check, or by a task loading the
+     * baseline. Loading tasks count their own and merge them under the lock,
+     * since they run concurrently with the checks.
+     */
+    private static final class Listing {
+
+        private int requestCount;
+        private final List<Path> failedSubtrees = new ArrayList<>();
+
+        private void merge(final Listing other) {
+            requestCount += other.requestCount;
+            failedSubtrees.addAll(other.failedSubtrees);
+        }
+    }
 }
@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import java.io.Serializable;
+import java.nio.file.Path;
+
+/**
+ * An immutable file system change, with the attributes of the entry
+ * as known to the observer when the change was detected.
+ * <p>
+ * For a deletion, the attributes are those from the last time the
+ * entry was seen.
+ *
+ * @see NIOFileChangeListener
+ */
+public final class NIOFileChange implements Serializable {
+
+    private static final long serialVersionUID = 4830291732052437121L;
+
+    /**
+     * The kind of change.
+     */
+    public enum Kind {
+        CREATE, CHANGE, DELETE
+    }
+
+    private final Kind kind;
+    private final Path file;
+    private final boolean directory;
+    private final long length;
+    private final long lastModified;
+
+    /**
+     * Construct a change.
+     *
+     * @param kind         The kind of change
+     * @param file         The file or directory that changed
+     * @param directory    Whether it is a directory
+     * @param length       The length
+     * @param lastModified The last modified time
+     */
+    public NIOFileChange(final Kind kind, final Path file, final boolean directory,
+                         final long length, final long lastModified) {
+        if (kind == null) {
+            throw new IllegalArgumentException("Kind is missing");
+        }
+        if (file == null) {
+            throw new IllegalArgumentException("Path is missing");
+        }
+        this.kind = kind;
+        this.file = file;
+        this.directory = directory;
+        this.length = length;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Construct a change from a snapshot entry.
+     *
+     * @param kind  The kind of change
+     * @param entry The entry that changed
+     * @return a new change
+     */
+    static NIOFileChange of(final Kind kind, final NIOFileEntry entry) {
+        return new NIOFileChange(kind, entry.getFile(), entry.isDirectory(), entry.getLength(), entry.getLastModified());
+    }
+
+    /**
+     * Collapse two successive changes of the same path into one.
+     * <p>
+     * A create followed by a change stays a create, with the later
+     * attributes; a create followed by a delete cancels out; a delete
+     * followed by the create of an entry of the same type becomes a change.
+     * Otherwise the later change wins.
+     *
+     * @param first The earlier change
+     * @param next  The later change
+     * @return the collapsed change, or null if the changes cancel out
+     */
+    static NIOFileChange coalesce(final NIOFileChange first, final NIOFileChange next) {
+        if (first.kind == Kind.CREATE && next.kind == Kind.DELETE) {
+            return null;
+        }
+        final Kind kind;
+        if (first.kind == Kind.CREATE && next.kind == Kind.CHANGE) {
+            kind = Kind.CREATE;
+        } else if (first.kind == Kind.DELETE && next.kind == Kind.CREATE && first.directory == next.directory) {
+            kind = Kind.CHANGE;
+        } else {
+            return next;
+        }
+        return new NIOFileChange(kind, next.file, next.directory, next.length, next.lastModified);
+    }
+
+    /**
+     * Notify a listener of this change, through {@link NIOFileChangeListener#onChange(NIOFileChange)}
+     * if it is a change listener, otherwise through its per-event methods.
+     *
+     * @param listener The listener to notify
+     */
+    void deliverTo(final NIOFileAlterationListener listener) {
+        if (listener instanceof NIOFileChangeListener) {
+            ((NIOFileChangeListener) listener).onChange(this);
+        } else {
+            dispatchTo(listener);
+        }
+    }
+
+    /**
+     * Notify a listener of this change through its per-event methods.
+     *
+     * @param listener The listener to notify
+     */
+    public void dispatchTo(final NIOFileAlterationListener listener) {
+        switch (kind) {
+            case CREATE:
+                if (directory) {
+                    listener.onDirectoryCreate(file);
+                } else {
+                    listener.onFileCreate(file);
+                }
+                break;
+            case CHANGE:
+                if (directory) {
+                    listener.onDirectoryChange(file);
+                } else {
+                    listener.onFileChange(file);
+                }
+                break;
+            case DELETE:
+                if (directory) {
+                    listener.onDirectoryDelete(file);
+                } else {
+                    listener.onFileDelete(file);
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown change kind " + kind);
+        }
+    }
+
+    /**
+     * Return the kind of change.
+     *
+     * @return the kind of change
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Return the file or directory that changed.
+     *
+     * @return the file or directory
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Indicate whether the change is on a directory.
+     *
+     * @return whether the change is on a directory
+     */
+    public boolean isDirectory() {
+        return directory;
+    }
+
+    /**
+     * Return the length.
+     *
+     * @return the length
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Return the last modified time.
+     *
+     * @return the last modified time
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Provide a String representation of this change.
+     *
+     * @return a String representation of this change
+     */
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + kind + (directory ? " directory " : " file ") + file +
+                ", length=" + length + ", lastModified=" + lastModified + "]";
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+/**
+ * A {@link NIOFileAlterationListener} that receives each change as a typed
+ * {@link NIOFileChange}, with the attributes known to the observer.
+ * <p>
+ * The observer calls {@link #onChange(NIOFileChange)} instead of the
+ * per-event methods. The default implementation forwards to them.
+ *
+ * @see NIOFileAlterationObserver
+ */
+public interface NIOFileChangeListener extends NIOFileAlterationListener {
+
+    /**
+     * File or directory created, changed or deleted Event.
+     *
+     * @param change The change
+     */
+    default void onChange(final NIOFileChange change) {
+        change.dispatchTo(this);
+    }
+}
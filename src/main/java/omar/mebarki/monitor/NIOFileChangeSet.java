@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable set of changes found by one check, grouped by kind, each in
+ * the order detected.
+ *
+ * @see NIOBatchListener
+ */
+public final class NIOFileChangeSet implements Serializable {
+
+    private static final long serialVersionUID = -2307715946207330942L;
+
+    private final List<NIOFileChange> creates;
+    private final List<NIOFileChange> changes;
+    private final List<NIOFileChange> deletes;
+    private final boolean last;
+
+    /**
+     * Construct a change set.
+     *
+     * @param creates The files and directories created
+     * @param changes The files and directories changed
+     * @param deletes The files and directories deleted
+     * @param last    Whether it is the last change set of the check
+     */
+    public NIOFileChangeSet(final List<NIOFileChange> creates, final List<NIOFileChange> changes,
+                            final List<NIOFileChange> deletes, final boolean last) {
+        this.creates = Collections.unmodifiableList(new ArrayList<>(creates));
+        this.changes = Collections.unmodifiableList(new ArrayList<>(changes));
+        this.deletes = Collections.unmodifiableList(new ArrayList<>(deletes));
+        this.last = last;
+    }
+
+    /**
+     * Group changes by kind into the last change set of a check.
+     *
+     * @param changes The changes, in the order detected
+     * @return the change set
+     */
+    static NIOFileChangeSet of(final List<NIOFileChange> changes) {
+        final List<NIOFileChange> creates = new ArrayList<>();
+        final List<NIOFileChange> changed = new ArrayList<>();
+        final List<NIOFileChange> deletes = new ArrayList<>();
+        for (final NIOFileChange change : changes) {
+            switch (change.getKind()) {
+                case CREATE:
+                    creates.add(change);
+                    break;
+                case CHANGE:
+                    changed.add(change);
+                    break;
+                default:
+                    deletes.add(change);
+                    break;
+            }
+        }
+        return new NIOFileChangeSet(creates, changed, deletes, true);
+    }
+
+    /**
+     * Return the files and directories created.
+     *
+     * @return the creates
+     */
+    public List<NIOFileChange> getCreates() {
+        return creates;
+    }
+
+    /**
+     * Return the files and directories changed.
+     *
+     * @return the changes
+     */
+    public List<NIOFileChange> getChanges() {
+        return changes;
+    }
+
+    /**
+     * Return the files and directories deleted.
+     *
+     * @return the deletes
+     */
+    public List<NIOFileChange> getDeletes() {
+        return deletes;
+    }
+
+    /**
+     * Return whether this is the last change set of the check; the check
+     * delivers one if its changes exceed the maximum batch size.
+     *
+     * @return true if no other change set follows for the check
+     */
+    public boolean isLast() {
+        return last;
+    }
+
+    /**
+     * Return the number of changes.
+     *
+     * @return the number of changes
+     */
+    public int size() {
+        return creates.size() + changes.size() + deletes.size();
+    }
+
+    /**
+     * Return whether there is no change.
+     *
+     * @return true if there is no change
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Provide a String representation of this change set.
+     *
+     * @return a String representation of this change set
+     */
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[creates=" + creates.size() + ", changes=" + changes.size() +
+                ", deletes=" + deletes.size() + ", last=" + last + "]";
+    }
+}
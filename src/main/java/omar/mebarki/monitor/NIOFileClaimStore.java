@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link NIOClaimStore} kept in a local directory, shared by the consumers
+ * running on one host or on a shared file system.
+ * <p>
+ * Each claim is a file holding its consumer and expiry time, or
+ * {@value #COMPLETED} and the completion time once the work is completed.
+ * Operations are made atomic by an exclusive lock on a lock file of the
+ * directory, which also serializes the threads of a JVM.
+ * <p>
+ * Completed claims are kept for a retention period, then removed by
+ * {@link #compact()}, which completing a claim runs at most once per
+ * retention period; claims expired without being completed are removed
+ * likewise. The retention must outlast the time a consumer keeps a file
+ * queued, or the file may be delivered again once its claim is removed.
+ */
+public class NIOFileClaimStore implements NIOClaimStore {
+
+    static final String COMPLETED = "completed";
+    private static final String CLAIM_SUFFIX = ".claim";
+    private static final long DEFAULT_RETENTION = TimeUnit.DAYS.toMillis(1);
+
+    private final NIOLockedDirectory directory;
+    private final long retention;
+    private volatile long lastCompaction = System.currentTimeMillis();
+
+    /**
+     * Construct a store keeping the completed claims for a day.
+     *
+     * @param directory The directory holding the claims, created if needed
+     * @throws IOException if the directory cannot be created
+     */
+    public NIOFileClaimStore(final Path directory) throws IOException {
+        this(directory, DEFAULT_RETENTION);
+    }
+
+    /**
+     * Construct a store.
+     *
+     * @param directory The directory holding the claims, created if needed
+     * @param retention The time in milliseconds a completed or expired claim
+     *                  is kept before being removed
+     * @throws IOException if the directory cannot be created
+     */
+    public NIOFileClaimStore(final Path directory, final long retention) throws IOException {
+        if (retention <= 0) {
+            throw new IllegalArgumentException("Retention must be positive");
+        }
+        this.directory = new NIOLockedDirectory(directory, CLAIM_SUFFIX);
+        this.retention = retention;
+    }
+
+    /**
+     * Return the time a completed or expired claim is kept before being removed.
+     *
+     * @return the retention in milliseconds
+     */
+    public long getRetention() {
+        return retention;
+    }
+
+    @Override
+    public boolean tryClaim(final String key, final String consumer, final long visibilityTimeout) throws IOException {
+        return directory.locked(() -> {
+            final Path file = directory.file(key);
+            final String[] claim = NIOLockedDirectory.read(file);
+            if (claim != null && (isCompleted(claim)
+                    || Long.parseLong(claim[1]) > System.currentTimeMillis() && !claim[0].equals(consumer))) {
+                return false;
+            }
+            NIOLockedDirectory.write(file, consumer + "\n" + (System.currentTimeMillis() + visibilityTimeout));
+            return true;
+        });
+    }
+
+    @Override
+    public boolean complete(final String key, final String consumer) throws IOException {
+        final boolean completed = directory.locked(() -> {
+            final Path file = directory.file(key);
+            final String[] claim = NIOLockedDirectory.read(file);
+            if (claim != null && isCompleted(claim)) {
+                return true;
+            }
+            // an expired claim not taken over yet still lets the work complete
+            if (claim != null && !claim[0].equals(consumer) && Long.parseLong(claim[1]) > System.currentTimeMillis()) {
+                return false;
+            }
+            NIOLockedDirectory.write(file, consumer + "\n" + COMPLETED + "@" + System.currentTimeMillis());
+            return true;
+        });
+        if (System.currentTimeMillis() - lastCompaction >= retention) {
+            compact();
+        }
+        return completed;
+    }
+
+    @Override
+    public void abandon(final String key, final String consumer) throws IOException {
+        directory.locked(() -> {
+            final Path file = directory.file(key);
+            final String[] claim = NIOLockedDirectory.read(file);
+            if (claim != null && claim[0].equals(consumer) && !isCompleted(claim)) {
+                Files.deleteIfExists(file);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public boolean isCompleted(final String key) throws IOException {
+        return directory.locked(() -> {
+            final String[] claim = NIOLockedDirectory.read(directory.file(key));
+            return claim != null && isCompleted(claim);
+        });
+    }
+
+    /**
+     * Remove the claims completed or expired longer than the retention ago.
+     *
+     * @return the number of claims removed
+     * @throws IOException if the store cannot be accessed
+     */
+    public int compact() throws IOException {
+        lastCompaction = System.currentTimeMillis();
+        return directory.locked(() -> {
+            int removed = 0;
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory.getDirectory(), "*" + CLAIM_SUFFIX)) {
+                final long now = System.currentTimeMillis();
+                for (final Path file : stream) {
+                    final String[] claim = NIOLockedDirectory.read(file);
+                    if (claim != null && now - endOf(claim) >= retention && Files.deleteIfExists(file)) {
+                        removed++;
+                    }
+                }
+            }
+            return removed;
+        });
+    }
+
+    private static boolean isCompleted(final String[] claim) {
+        return claim[1].startsWith(COMPLETED);
+    }
+
+    /**
+     * Return the time a claim was completed or expires.
+     *
+     * @param claim The claim
+     * @return the time in milliseconds
+     */
+    private static long endOf(final String[] claim) {
+        if (!isCompleted(claim)) {
+            return Long.parseLong(claim[1]);
+        }
+        final int at = claim[1].indexOf('@');
+        // completed before completion times were recorded
+        return at < 0 ? 0 : Long.parseLong(claim[1].substring(at + 1));
+    }
+}
@@ -18,9 +18,13 @@ package omar.mebarki.monitor;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 
 public class NIOFileEntry implements Serializable {
@@ -29,8 +33,17 @@ public class NIOFileEntry implements Serializable {
 
     static final NIOFileEntry[] EMPTY_ENTRIES = new NIOFileEntry[0];
 
+    private static final AtomicLongFieldUpdater<NIOFileEntry> VERSION =
+            AtomicLongFieldUpdater.newUpdater(NIOFileEntry.class, "version");
+
     private final NIOFileEntry parent;
-    private NIOFileEntry[] children;
+    private volatile NIOFileEntry[] children;
+    private transient volatile long version;
+    private transient volatile Cached<byte[]> hash;
+    private transient volatile Cached<long[]> totals;
+    private transient double heat;
+    private transient long heatCycle;
+    private transient long scanCycle;
     private final Path file;
     private String name;
     private boolean exists;
@@ -104,10 +117,171 @@ public class NIOFileEntry implements Serializable {
         }
 
         // Return if there are changes
-        return exists != origExists ||
+        final boolean changed = exists != origExists ||
                 lastModified != origLastModified ||
                 directory != origDirectory ||
                 length != origLength;
+        if (changed) {
+            invalidate();
+        }
+        return changed;
+    }
+
+    /**
+     * Return the Merkle hash of this entry.
+     * <p>
+     * A file hashes its <code>length</code> and <code>lastModified</code>
+     * properties; a directory hashes the names, types and hashes of its
+     * children. The entry's own name is not part of its hash, so two
+     * directories holding the same content under different roots (for
+     * example two buckets) have the same hash. Entries carry no content
+     * digest or ETag, so the hash only tells files apart by these two
+     * properties: a replica written with a new date differs, while two files
+     * of the same length and date but different content do not.
+     * <p>
+     * Directory hashes are cached and recomputed lazily after any change
+     * below them, so only the directories on the path of a change are
+     * rehashed. A hash computed while the subtree changes is not kept.
+     *
+     * @return the hash of this entry
+     */
+    public byte[] getHash() {
+        if (!directory) {
+            final byte[] bytes = new byte[16];
+            putLong(bytes, 0, length);
+            putLong(bytes, 8, lastModified);
+            return bytes;
+        }
+        final long current = version;
+        final Cached<byte[]> cached = hash;
+        if (cached != null && cached.version == current) {
+            return cached.value;
+        }
+        final MessageDigest digest = newDigest();
+        for (final NIOFileEntry child : getChildren()) {
+            digest.update(child.isDirectory() ? (byte) 1 : (byte) 0);
+            digest.update(child.getName().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(child.getHash());
+        }
+        final byte[] result = digest.digest();
+        hash = new Cached<>(current, result);
+        return result;
+    }
+
+    /**
+     * Return the number of files in this entry's subtree, or one if
+     * this entry is a file.
+     * <p>
+     * Like the hash, the total is cached on directories and only
+     * recomputed for the directories on the path of a change.
+     *
+     * @return the number of files
+     */
+    public long getTotalCount() {
+        return directory ? getTotals()[0] : (exists ? 1 : 0);
+    }
+
+    /**
+     * Return the sum of the lengths of the files in this entry's subtree,
+     * or this entry's length if it is a file.
+     *
+     * @return the total length in bytes
+     */
+    public long getTotalLength() {
+        return directory ? getTotals()[1] : length;
+    }
+
+    private long[] getTotals() {
+        final long current = version;
+        final Cached<long[]> cached = totals;
+        if (cached != null && cached.version == current) {
+            return cached.value;
+        }
+        long count = 0;
+        long bytes = 0;
+        for (final NIOFileEntry child : getChildren()) {
+            count += child.getTotalCount();
+            bytes += child.getTotalLength();
+        }
+        final long[] result = {count, bytes};
+        totals = new Cached<>(current, result);
+        return result;
+    }
+
+    /**
+     * Discard the cached hash and totals of this entry and of its ancestors.
+     * <p>
+     * Each entry on the path gets a new version, which the values cached
+     * by readers are checked against. Since the version is read before the
+     * subtree, a value computed while the subtree changes is cached under
+     * an outdated version and never used.
+     */
+    void invalidate() {
+        for (NIOFileEntry entry = this; entry != null; entry = entry.parent) {
+            VERSION.incrementAndGet(entry);
+        }
+    }
+
+    /**
+     * Return the change frequency score of this directory at a check cycle.
+     * <p>
+     * The score grows by one with each change under the directory and
+     * halves every half-life cycles.
+     *
+     * @param cycle    The check cycle
+     * @param halfLife The number of cycles for the score to halve
+     * @return the decayed score
+     */
+    double getHeat(final long cycle, final int halfLife) {
+        if (heat == 0 || cycle <= heatCycle) {
+            return heat;
+        }
+        return heat * Math.pow(0.5, (double) (cycle - heatCycle) / halfLife);
+    }
+
+    /**
+     * Add to the change frequency score of this directory at a check cycle.
+     *
+     * @param cycle    The check cycle
+     * @param halfLife The number of cycles for the score to halve
+     * @param amount   The amount to add
+     */
+    void addHeat(final long cycle, final int halfLife, final double amount) {
+        heat = getHeat(cycle, halfLife) + amount;
+        heatCycle = Math.max(heatCycle, cycle);
+    }
+
+    /**
+     * Return the check cycle this directory was last listed at.
+     *
+     * @return the check cycle
+     */
+    long getScanCycle() {
+        return scanCycle;
+    }
+
+    /**
+     * Set the check cycle this directory was last listed at.
+     *
+     * @param scanCycle the check cycle
+     */
+    void setScanCycle(final long scanCycle) {
+        this.scanCycle = scanCycle;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 digest not available", e);
+        }
+    }
+
+    private static void putLong(final byte[] bytes, final int offset, final long value) {
+        for (int i = 0; i < 8; i++) {
+            bytes[offset + i] = (byte) (value >>> (56 - 8 * i));
+        }
     }
 
     /**
@@ -158,7 +332,25 @@ public class NIOFileEntry implements Serializable {
      * @param children This directory's files, may be null
      */
     public void setChildren(final NIOFileEntry[] children) {
+        final NIOFileEntry[] previous = this.children;
         this.children = children;
+        if (!sameEntries(previous, children)) {
+            invalidate();
+        }
+    }
+
+    private static boolean sameEntries(final NIOFileEntry[] previous, final NIOFileEntry[] current) {
+        final int previousLength = previous == null ? 0 : previous.length;
+        final int currentLength = current == null ? 0 : current.length;
+        if (previousLength != currentLength) {
+            return false;
+        }
+        for (int i = 0; i < currentLength; i++) {
+            if (previous[i] != current[i]) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -186,6 +378,7 @@ public class NIOFileEntry implements Serializable {
      */
     public void setName(final String name) {
         this.name = name;
+        invalidate();
     }
 
     /**
@@ -206,6 +399,7 @@ public class NIOFileEntry implements Serializable {
      */
     public void setLastModified(final long lastModified) {
         this.lastModified = lastModified;
+        invalidate();
     }
 
     /**
@@ -224,6 +418,7 @@ public class NIOFileEntry implements Serializable {
      */
     public void setLength(final long length) {
         this.length = length;
+        invalidate();
     }
 
     /**
@@ -244,6 +439,7 @@ public class NIOFileEntry implements Serializable {
      */
     public void setExists(final boolean exists) {
         this.exists = exists;
+        invalidate();
     }
 
     /**
@@ -262,5 +458,21 @@ public class NIOFileEntry implements Serializable {
      */
     public void setDirectory(final boolean directory) {
         this.directory = directory;
+        invalidate();
+    }
+
+    /**
+     * A value computed from a subtree, with the version of the entry it was
+     * computed at.
+     */
+    private static final class Cached<T> {
+
+        private final long version;
+        private final T value;
+
+        Cached(final long version, final T value) {
+            this.version = version;
+            this.value = value;
+        }
     }
 }
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A {@link NIOLeaseStore} kept in a local directory, shared by the nodes
+ * running on one host or on a shared file system.
+ * <p>
+ * Each lease is a file holding its owner and expiry time. Operations are
+ * made atomic by an exclusive lock on a lock file of the directory, which
+ * also serializes the threads of a JVM. A lease file that cannot be parsed,
+ * for example one corrupted on a shared file system, counts as expired.
+ */
+public class NIOFileLeaseStore implements NIOLeaseStore {
+
+    private static final String LEASE_SUFFIX = ".lease";
+
+    private final NIOLockedDirectory directory;
+
+    /**
+     * Construct a store.
+     *
+     * @param directory The directory holding the leases, created if needed
+     * @throws IOException if the directory cannot be created
+     */
+    public NIOFileLeaseStore(final Path directory) throws IOException {
+        this.directory = new NIOLockedDirectory(directory, LEASE_SUFFIX);
+    }
+
+    @Override
+    public boolean tryAcquire(final String key, final String owner, final long duration) throws IOException {
+        return directory.locked(() -> {
+            final long now = System.currentTimeMillis();
+            final Path file = directory.file(key);
+            final String[] lease = NIOLockedDirectory.read(file);
+            if (lease != null && expiryOf(lease) > now && !lease[0].equals(owner)) {
+                return false;
+            }
+            NIOLockedDirectory.write(file, owner + "\n" + (now + duration));
+            return true;
+        });
+    }
+
+    @Override
+    public void release(final String key, final String owner) throws IOException {
+        directory.locked(() -> {
+            final Path file = directory.file(key);
+            final String[] lease = NIOLockedDirectory.read(file);
+            if (lease != null && lease[0].equals(owner)) {
+                Files.deleteIfExists(file);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public Map<String, String> getOwners(final String keyPrefix) throws IOException {
+        return directory.locked(() -> {
+            final Map<String, String> owners = new TreeMap<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory.getDirectory(), "*" + LEASE_SUFFIX)) {
+                final long now = System.currentTimeMillis();
+                for (final Path file : stream) {
+                    final String key = directory.key(file);
+                    final String[] lease = NIOLockedDirectory.read(file);
+                    if (key.startsWith(keyPrefix) && lease != null && expiryOf(lease) > now) {
+                        owners.put(key, lease[0]);
+                    }
+                }
+            }
+            return owners;
+        });
+    }
+
+    /**
+     * Return the time a lease expires.
+     *
+     * @param lease The lease
+     * @return the time in milliseconds, zero if the lease cannot be parsed
+     */
+    private static long expiryOf(final String[] lease) {
+        try {
+            return Long.parseLong(lease[1].trim());
+        } catch (final NumberFormatException e) {
+            return 0;
+        }
+    }
+}
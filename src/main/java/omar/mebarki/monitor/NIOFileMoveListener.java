@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import java.nio.file.Path;
+
+/**
+ * A {@link NIOFileAlterationListener} also notified of the files and
+ * directories moved, when the observer detects moves (see
+ * {@link NIOFileAlterationObserver#setMoveDetection(boolean)}).
+ * <p>
+ * A move is reported instead of the delete of its source and the create of
+ * its target; for a directory, instead of the creates of its contents too.
+ */
+public interface NIOFileMoveListener extends NIOFileAlterationListener {
+
+    /**
+     * File moved Event.
+     *
+     * @param from The file deleted
+     * @param to   The file created
+     */
+    void onFileMove(final Path from, final Path to);
+
+    /**
+     * Directory moved Event.
+     *
+     * @param from The directory deleted
+     * @param to   The directory created, with the same contents
+     */
+    void onDirectoryMove(final Path from, final Path to);
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A {@link NIOLeaseStore} held in memory, shared by the nodes of a single
+ * JVM, for tests.
+ */
+public class NIOInMemoryLeaseStore implements NIOLeaseStore {
+
+    private final Map<String, Lease> leases = new HashMap<>();
+
+    @Override
+    public synchronized boolean tryAcquire(final String key, final String owner, final long duration) {
+        final long now = System.currentTimeMillis();
+        final Lease lease = leases.get(key);
+        if (lease != null && lease.expires > now && !lease.owner.equals(owner)) {
+            return false;
+        }
+        leases.put(key, new Lease(owner, now + duration));
+        return true;
+    }
+
+    @Override
+    public synchronized void release(final String key, final String owner) {
+        final Lease lease = leases.get(key);
+        if (lease != null && lease.owner.equals(owner)) {
+            leases.remove(key);
+        }
+    }
+
+    @Override
+    public synchronized Map<String, String> getOwners(final String keyPrefix) {
+        final long now = System.currentTimeMillis();
+        final Map<String, String> owners = new TreeMap<>();
+        for (final Map.Entry<String, Lease> entry : leases.entrySet()) {
+            if (entry.getKey().startsWith(keyPrefix) && entry.getValue().expires > now) {
+                owners.put(entry.getKey(), entry.getValue().owner);
+            }
+        }
+        return owners;
+    }
+
+    private static final class Lease {
+        private final String owner;
+        private final long expires;
+
+        private Lease(final String owner, final long expires) {
+            this.owner = owner;
+            this.expires = expires;
+        }
+    }
+}
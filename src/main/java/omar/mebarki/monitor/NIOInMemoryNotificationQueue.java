@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link NIONotificationQueue} held in memory, fed by a
+ * {@link NIONotificationWebhook} or by the application itself.
+ * <p>
+ * Messages received are kept aside until deleted; those not deleted within
+ * the visibility timeout are received again, under a new receipt.
+ */
+public class NIOInMemoryNotificationQueue implements NIONotificationQueue {
+
+    private static final long DEFAULT_VISIBILITY_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+
+    private final BlockingQueue<String> messages;
+    private final long visibilityTimeout;
+    private final Map<String, InFlight> inFlight = new LinkedHashMap<>();
+    private final AtomicLong receipts = new AtomicLong();
+
+    /**
+     * Construct an unbounded queue.
+     */
+    public NIOInMemoryNotificationQueue() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Construct a bounded queue hiding the messages received for 30 seconds.
+     *
+     * @param capacity The maximum number of messages waiting, senders waiting for room
+     */
+    public NIOInMemoryNotificationQueue(final int capacity) {
+        this(capacity, DEFAULT_VISIBILITY_TIMEOUT);
+    }
+
+    /**
+     * Construct a bounded queue.
+     *
+     * @param capacity          The maximum number of messages waiting, senders waiting for room
+     * @param visibilityTimeout The time in milliseconds a message received is
+     *                          hidden before being received again
+     */
+    public NIOInMemoryNotificationQueue(final int capacity, final long visibilityTimeout) {
+        if (visibilityTimeout <= 0) {
+            throw new IllegalArgumentException("Visibility timeout must be positive");
+        }
+        this.messages = new LinkedBlockingQueue<>(capacity);
+        this.visibilityTimeout = visibilityTimeout;
+    }
+
+    /**
+     * Add a message to the queue, waiting for room if the queue is full.
+     *
+     * @param message The JSON notification message
+     */
+    @Override
+    public void send(final String message) {
+        if (message == null) {
+            throw new IllegalArgumentException("Message is missing");
+        }
+        try {
+            messages.put(message);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while sending", e);
+        }
+    }
+
+    @Override
+    public List<NIONotificationMessage> receive(final int maxMessages, final long timeout, final TimeUnit unit)
+            throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        final List<NIONotificationMessage> received = new ArrayList<>();
+        final List<String> bodies = new ArrayList<>();
+        while (true) {
+            final long wait;
+            synchronized (inFlight) {
+                redeliver(received, maxMessages);
+                messages.drainTo(bodies, maxMessages - received.size());
+                for (final String body : bodies) {
+                    received.add(hide(body));
+                }
+                bodies.clear();
+                final long remaining = deadline - System.nanoTime();
+                if (!received.isEmpty() || remaining <= 0) {
+                    return received;
+                }
+                // wake up when a message received elsewhere becomes visible again
+                wait = Math.min(remaining, nextExpiry());
+            }
+            final String first = messages.poll(wait, TimeUnit.NANOSECONDS);
+            if (first != null) {
+                synchronized (inFlight) {
+                    received.add(hide(first));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void delete(final NIONotificationMessage message) {
+        if (message == null) {
+            throw new IllegalArgumentException("Message is missing");
+        }
+        synchronized (inFlight) {
+            inFlight.remove(message.getReceipt());
+        }
+    }
+
+    /**
+     * Return the number of messages waiting.
+     *
+     * @return the number of messages
+     */
+    public int size() {
+        return messages.size();
+    }
+
+    /**
+     * Return the number of messages received and not deleted yet.
+     *
+     * @return the number of messages
+     */
+    public int getInFlightCount() {
+        synchronized (inFlight) {
+            return inFlight.size();
+        }
+    }
+
+    private NIONotificationMessage hide(final String body) {
+        final String receipt = Long.toString(receipts.incrementAndGet());
+        inFlight.put(receipt, new InFlight(body, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(visibilityTimeout)));
+        return new NIONotificationMessage(body, receipt);
+    }
+
+    /**
+     * Receive again the messages whose visibility timeout expired.
+     */
+    private void redeliver(final List<NIONotificationMessage> received, final int maxMessages) {
+        final long now = System.nanoTime();
+        final List<String> expired = new ArrayList<>();
+        final Iterator<InFlight> iterator = inFlight.values().iterator();
+        // entries are in the order received, so the earliest expiry is first
+        while (iterator.hasNext() && received.size() + expired.size() < maxMessages) {
+            final InFlight message = iterator.next();
+            if (message.expiry - now > 0) {
+                break;
+            }
+            iterator.remove();
+            expired.add(message.body);
+        }
+        for (final String body : expired) {
+            received.add(hide(body));
+        }
+    }
+
+    private long nextExpiry() {
+        if (inFlight.isEmpty()) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(TimeUnit.MILLISECONDS.toNanos(1), inFlight.values().iterator().next().expiry - System.nanoTime());
+    }
+
+    /**
+     * A message received and not deleted yet.
+     */
+    private static final class InFlight {
+        private final String body;
+        private final long expiry;
+
+        InFlight(final String body, final long expiry) {
+            this.body = body;
+            this.expiry = expiry;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Loads a baseline snapshot from an S3 Inventory report.
+ * <p>
+ * The manifest (<code>manifest.json</code>) and the data files it lists are
+ * read through NIO, so they can be on local disk or on S3 through s3fs. Data
+ * files are streamed one row at a time; only the resulting snapshot tree is
+ * kept in memory.
+ * <p>
+ * Only the CSV format, optionally gzipped, is supported. The <code>Key</code>,
+ * <code>Size</code> and <code>LastModifiedDate</code> columns are required;
+ * rows of versioned inventories that are not the latest version or are delete
+ * markers are skipped. The ETag column is not used since snapshot entries
+ * compare on length and last modified time only.
+ *
+ * @see NIOFileAlterationObserver#setSnapshotLoader(NIOSnapshotLoader)
+ */
+public class NIOInventoryLoader implements NIOSnapshotLoader {
+
+    private final Path manifest;
+    private final Path destinationRoot;
+    private final String keyPrefix;
+
+    /**
+     * Construct a loader for the whole inventoried bucket.
+     *
+     * @param manifest        The inventory manifest
+     * @param destinationRoot The root of the inventory destination bucket,
+     *                        which the data file keys are resolved against
+     */
+    public NIOInventoryLoader(final Path manifest, final Path destinationRoot) {
+        this(manifest, destinationRoot, "");
+    }
+
+    /**
+     * Construct a loader for the keys below a prefix.
+     *
+     * @param manifest        The inventory manifest
+     * @param destinationRoot The root of the inventory destination bucket,
+     *                        which the data file keys are resolved against
+     * @param keyPrefix       The key prefix of the observed directory in the
+     *                        inventoried bucket, empty for the bucket itself
+     */
+    public NIOInventoryLoader(final Path manifest, final Path destinationRoot, final String keyPrefix) {
+        if (manifest == null) {
+            throw new IllegalArgumentException("Manifest is missing");
+        }
+        if (destinationRoot == null) {
+            throw new IllegalArgumentException("Destination root is missing");
+        }
+        this.manifest = manifest;
+        this.destinationRoot = destinationRoot;
+        final String prefix = keyPrefix == null ? "" : keyPrefix;
+        this.keyPrefix = prefix.isEmpty() || prefix.endsWith("/") ? prefix : prefix + "/";
+    }
+
+    /**
+     * Populate the root entry from the inventory data files.
+     *
+     * @param root       The root entry to populate
+     * @param comparator The comparator the snapshot's children are sorted with
+     * @return the creation time of the inventory
+     * @throws IOException if the manifest or a data file cannot be read
+     */
+    @Override
+    public long load(final NIOFileEntry root, final Comparator<Path> comparator) throws IOException {
+        final JsonNode json;
+        try (InputStream in = Files.newInputStream(manifest)) {
+            json = new ObjectMapper().readTree(in);
+        }
+        final String format = json.path("fileFormat").asText();
+        if (!"CSV".equalsIgnoreCase(format)) {
+            throw new IOException("Unsupported inventory format " + format + " in " + manifest);
+        }
+        final List<String> schema = new ArrayList<>();
+        for (final String column : json.path("fileSchema").asText().split(",")) {
+            schema.add(column.trim());
+        }
+        final int keyColumn = column(schema, "Key");
+        final int sizeColumn = column(schema, "Size");
+        final int lastModifiedColumn = column(schema, "LastModifiedDate");
+        final int latestColumn = schema.indexOf("IsLatest");
+        final int deleteMarkerColumn = schema.indexOf("IsDeleteMarker");
+
+        final Node tree = new Node(true);
+        for (final JsonNode file : json.path("files")) {
+            final Path dataFile = destinationRoot.resolve(file.path("key").asText());
+            try (BufferedReader reader = open(dataFile)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    final List<String> row = parseRow(line);
+                    if (isFalse(row, latestColumn) || isTrue(row, deleteMarkerColumn)) {
+                        continue;
+                    }
+                    final String key = URLDecoder.decode(row.get(keyColumn), "UTF-8");
+                    if (!key.startsWith(keyPrefix) || key.length() == keyPrefix.length()) {
+                        continue;
+                    }
+                    add(tree, key.substring(keyPrefix.length()), Long.parseLong(row.get(sizeColumn)),
+                            parseTime(row.get(lastModifiedColumn)));
+                }
+            }
+        }
+        root.setChildren(toEntries(root, tree, comparator));
+        return Long.parseLong(json.path("creationTimestamp").asText("0"));
+    }
+
+    private static int column(final List<String> schema, final String name) throws IOException {
+        final int index = schema.indexOf(name);
+        if (index < 0) {
+            throw new IOException("Inventory schema has no " + name + " column: " + schema);
+        }
+        return index;
+    }
+
+    private static BufferedReader open(final Path dataFile) throws IOException {
+        InputStream in = Files.newInputStream(dataFile);
+        if (dataFile.getFileName().toString().endsWith(".gz")) {
+            in = new GZIPInputStream(in, 64 * 1024);
+        }
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    private static boolean isTrue(final List<String> row, final int column) {
+        return column >= 0 && column < row.size() && "true".equalsIgnoreCase(row.get(column));
+    }
+
+    private static boolean isFalse(final List<String> row, final int column) {
+        return column >= 0 && column < row.size() && "false".equalsIgnoreCase(row.get(column));
+    }
+
+    private static long parseTime(final String value) throws IOException {
+        try {
+            return Instant.parse(value).toEpochMilli();
+        } catch (final DateTimeParseException e) {
+            throw new IOException("Invalid inventory LastModifiedDate " + value, e);
+        }
+    }
+
+    /**
+     * Split a CSV row whose fields may be quoted, with "" escaping a quote.
+     */
+    static List<String> parseRow(final String line) {
+        final List<String> fields = new ArrayList<>();
+        final StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            final char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static void add(final Node tree, final String key, final long size, final long lastModified) {
+        final String[] segments = key.split("/");
+        Node node = tree;
+        for (int i = 0; i < segments.length; i++) {
+            if (segments[i].isEmpty()) {
+                continue;
+            }
+            final boolean last = i == segments.length - 1 && !key.endsWith("/");
+            Node child = node.children.get(segments[i]);
+            if (child == null) {
+                child = new Node(!last);
+                node.children.put(segments[i], child);
+            }
+            if (last) {
+                child.length = size;
+                child.lastModified = lastModified;
+            } else {
+                child.directory = true;
+            }
+            node = child;
+        }
+    }
+
+    private static NIOFileEntry[] toEntries(final NIOFileEntry parent, final Node node,
+                                            final Comparator<Path> comparator) {
+        if (node.children.isEmpty()) {
+            return NIOFileEntry.EMPTY_ENTRIES;
+        }
+        final NIOFileEntry[] entries = new NIOFileEntry[node.children.size()];
+        int i = 0;
+        for (final Map.Entry<String, Node> child : node.children.entrySet()) {
+            final Node childNode = child.getValue();
+            final NIOFileEntry entry = parent.newChildInstance(parent.getFile().resolve(child.getKey()));
+            entry.setExists(true);
+            entry.setDirectory(childNode.directory);
+            entry.setLength(childNode.directory ? 0 : childNode.length);
+            entry.setLastModified(childNode.lastModified);
+            entry.setChildren(toEntries(entry, childNode, comparator));
+            entries[i++] = entry;
+        }
+        Arrays.sort(entries, (e1, e2) -> comparator.compare(e1.getFile(), e2.getFile()));
+        return entries;
+    }
+
+    private static final class Node {
+        private final Map<String, Node> children = new TreeMap<>();
+        private boolean directory;
+        private long length;
+        private long lastModified;
+
+        private Node(final boolean directory) {
+            this.directory = directory;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * A store of renewable leases shared by the nodes of a cluster.
+ * <p>
+ * A lease gives a key to one owner until it expires; only the owner may
+ * renew or release it before then. Implementations must make each operation
+ * atomic across all the nodes sharing the store.
+ *
+ * @see NIOInMemoryLeaseStore
+ * @see NIOFileLeaseStore
+ * @see NIOClusterCoordinator
+ */
+public interface NIOLeaseStore {
+
+    /**
+     * Acquire a lease, or renew it if already held by the owner.
+     *
+     * @param key      The leased key
+     * @param owner    The node acquiring the lease
+     * @param duration The time in milliseconds until the lease expires
+     * @return true if the owner holds the lease, false if another owner does
+     * @throws IOException if the store cannot be accessed
+     */
+    boolean tryAcquire(String key, String owner, long duration) throws IOException;
+
+    /**
+     * Release a lease held by an owner; does nothing if another owner holds it.
+     *
+     * @param key   The leased key
+     * @param owner The node releasing the lease
+     * @throws IOException if the store cannot be accessed
+     */
+    void release(String key, String owner) throws IOException;
+
+    /**
+     * Return the owners of the leases not expired.
+     *
+     * @param keyPrefix The prefix of the keys to return
+     * @return the owner of each key starting with the prefix
+     * @throws IOException if the store cannot be accessed
+     */
+    Map<String, String> getOwners(String keyPrefix) throws IOException;
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import java.io.Serializable;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Listeners registered for prefixes of an observed directory, in a trie of
+ * the names of the prefixes, so routing a change costs in proportion to the
+ * depth of its path rather than to the number of listeners.
+ * <p>
+ * Safe for concurrent use; listeners added or removed while a change is
+ * routed may or may not be notified of it.
+ */
+final class NIOListenerTrie implements Serializable {
+
+    private static final long serialVersionUID = 6314572281806612745L;
+
+    private final Node root = new Node();
+    private final CopyOnWriteArrayList<NIOFileAlterationListener> all = new CopyOnWriteArrayList<>();
+
+    /**
+     * Add a listener for a prefix.
+     *
+     * @param prefix   The prefix
+     * @param start    The index of the first name of the prefix under the observed directory
+     * @param listener The listener
+     */
+    synchronized void add(final Path prefix, final int start, final NIOFileAlterationListener listener) {
+        Node node = root;
+        for (int i = start; i < prefix.getNameCount(); i++) {
+            node = node.children.computeIfAbsent(prefix.getName(i).toString(), key -> new Node());
+        }
+        node.listeners.add(listener);
+        all.addIfAbsent(listener);
+    }
+
+    /**
+     * Remove a listener from all its prefixes.
+     *
+     * @param listener The listener
+     * @return true if the listener was registered
+     */
+    synchronized boolean remove(final NIOFileAlterationListener listener) {
+        if (!all.remove(listener)) {
+            return false;
+        }
+        remove(root, listener);
+        return true;
+    }
+
+    private static boolean remove(final Node node, final NIOFileAlterationListener listener) {
+        while (node.listeners.remove(listener)) {
+        }
+        node.children.values().removeIf(child -> remove(child, listener));
+        return node.listeners.isEmpty() && node.children.isEmpty();
+    }
+
+    /**
+     * Return whether no listener is registered.
+     *
+     * @return true if empty
+     */
+    boolean isEmpty() {
+        return all.isEmpty();
+    }
+
+    /**
+     * Return each listener registered, once.
+     *
+     * @return the listeners
+     */
+    List<NIOFileAlterationListener> getListeners() {
+        return all;
+    }
+
+    /**
+     * Visit the listeners of the prefixes of a path, shortest prefix first.
+     *
+     * @param path    The path
+     * @param start   The index of the first name of the path under the observed directory
+     * @param visitor The visitor of each listener
+     */
+    void visit(final Path path, final int start, final Consumer<NIOFileAlterationListener> visitor) {
+        Node node = root;
+        visitAll(node, visitor);
+        for (int i = start; i < path.getNameCount(); i++) {
+            node = node.children.get(path.getName(i).toString());
+            if (node == null) {
+                return;
+            }
+            visitAll(node, visitor);
+        }
+    }
+
+    private static void visitAll(final Node node, final Consumer<NIOFileAlterationListener> visitor) {
+        for (final NIOFileAlterationListener listener : node.listeners) {
+            visitor.accept(listener);
+        }
+    }
+
+    /**
+     * A prefix of the trie.
+     */
+    private static final class Node implements Serializable {
+
+        private static final long serialVersionUID = -8861424180223364112L;
+
+        private final Map<String, Node> children = new ConcurrentHashMap<>();
+        private final List<NIOFileAlterationListener> listeners = new CopyOnWriteArrayList<>();
+    }
+}
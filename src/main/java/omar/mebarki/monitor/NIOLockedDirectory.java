@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A directory of small record files shared by the processes running on one
+ * host or on a shared file system.
+ * <p>
+ * Each record is a file of two lines named after its encoded key. Operations
+ * are made atomic by an exclusive lock on a lock file of the directory,
+ * which also serializes the threads of a JVM.
+ *
+ * @see NIOFileLeaseStore
+ * @see NIOFileClaimStore
+ */
+final class NIOLockedDirectory {
+
+    private static final String LOCK_FILE = ".lock";
+    private static final Map<Path, Object> MONITORS = new ConcurrentHashMap<>();
+
+    private final Path directory;
+    private final String suffix;
+    private final Object monitor;
+
+    /**
+     * Construct for a directory.
+     *
+     * @param directory The directory holding the records, created if needed
+     * @param suffix    The suffix of the record files
+     * @throws IOException if the directory cannot be created
+     */
+    NIOLockedDirectory(final Path directory, final String suffix) throws IOException {
+        if (directory == null) {
+            throw new IllegalArgumentException("Directory is missing");
+        }
+        this.directory = Files.createDirectories(directory).toAbsolutePath().normalize();
+        this.suffix = suffix;
+        // file locks are held by the JVM, so threads of the JVM are serialized first
+        this.monitor = MONITORS.computeIfAbsent(this.directory, path -> new Object());
+    }
+
+    /**
+     * Return the directory holding the records.
+     *
+     * @return the absolute directory
+     */
+    Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Run an operation holding the lock of the directory.
+     *
+     * @param operation The operation
+     * @param <T>       The type of the result
+     * @return the result of the operation
+     * @throws IOException if the lock cannot be taken or the operation fails
+     */
+    <T> T locked(final Operation<T> operation) throws IOException {
+        synchronized (monitor) {
+            try (FileChannel channel = FileChannel.open(directory.resolve(LOCK_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                final FileLock lock = channel.lock();
+                try {
+                    return operation.run();
+                } finally {
+                    lock.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the file of a record.
+     *
+     * @param key The key of the record
+     * @return the record file
+     * @throws IOException if the key cannot be encoded
+     */
+    Path file(final String key) throws IOException {
+        return directory.resolve(URLEncoder.encode(key, "UTF-8") + suffix);
+    }
+
+    /**
+     * Return the key of a record file.
+     *
+     * @param file The record file
+     * @return the key, or null if the file is not a record
+     * @throws IOException if the key cannot be decoded
+     */
+    String key(final Path file) throws IOException {
+        final String name = file.getFileName().toString();
+        if (!name.endsWith(suffix)) {
+            return null;
+        }
+        return URLDecoder.decode(name.substring(0, name.length() - suffix.length()), "UTF-8");
+    }
+
+    /**
+     * Read a record.
+     *
+     * @param file The record file
+     * @return the two lines of the record, or null if there is none
+     * @throws IOException if the file cannot be read
+     */
+    static String[] read(final Path file) throws IOException {
+        try {
+            final List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            return lines.size() == 2 ? lines.toArray(new String[2]) : null;
+        } catch (final NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Replace a record atomically.
+     *
+     * @param file    The record file
+     * @param content The two lines of the record
+     * @throws IOException if the file cannot be written
+     */
+    static void write(final Path file, final String content) throws IOException {
+        final Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temp, content.getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * An operation run holding the lock of the directory.
+     *
+     * @param <T> The type of the result
+     */
+    @FunctionalInterface
+    interface Operation<T> {
+
+        /**
+         * Run the operation.
+         *
+         * @return the result
+         * @throws IOException if the operation fails
+         */
+        T run() throws IOException;
+    }
+}
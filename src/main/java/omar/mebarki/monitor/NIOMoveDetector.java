@@ -0,0 +1,258 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Holds the changes of a check, then pairs the deletes with the creates of
+ * the same contents to notify the {@link NIOFileMoveListener}s of moves.
+ * <p>
+ * Snapshot entries do not carry an ETag, so a file is only paired with a
+ * file of the same name and length: a file renamed within a check is
+ * reported as a delete and a create, never as a move to an unrelated file.
+ * A deleted directory is paired with a created directory whose subtree has
+ * the same names and file lengths, and at least one file, preferring one of
+ * the same name; subtrees are compared through the changes held, since the
+ * entries of a deleted subtree are detached from each other as they are
+ * deleted. Deletes and creates are indexed by name and contents, so pairing
+ * costs in proportion to the number of changes.
+ */
+final class NIOMoveDetector {
+
+    private final List<NIOFileChange> changes = new ArrayList<>();
+    private final List<NIOFileEntry> entries = new ArrayList<>();
+
+    /**
+     * Hold a change.
+     *
+     * @param change The change
+     * @param entry  The entry that changed
+     */
+    void add(final NIOFileChange change, final NIOFileEntry entry) {
+        changes.add(change);
+        entries.add(entry);
+    }
+
+    /**
+     * Notify the listeners of the changes held, in order, with each move
+     * notified in place of the create of its target, to the move listeners
+     * of its source or its target.
+     *
+     * @param route The listeners of a path
+     */
+    void release(final Function<Path, List<NIOFileAlterationListener>> route) {
+        // the source of each move, by index of the create of its target
+        final Map<Integer, Path> moves = new HashMap<>();
+        final Set<Integer> movedSources = new HashSet<>();
+        final Set<NIOFileEntry> movedFrom = Collections.newSetFromMap(new IdentityHashMap<>());
+        final Set<NIOFileEntry> movedTo = Collections.newSetFromMap(new IdentityHashMap<>());
+        matchDirectories(moves, movedSources, movedFrom, movedTo);
+        matchFiles(moves, movedSources, movedFrom, movedTo);
+
+        for (int i = 0; i < changes.size(); i++) {
+            final NIOFileChange change = changes.get(i);
+            final Path from = moves.get(i);
+            final boolean moved = movedSources.contains(i) || isInside(i, movedFrom, movedTo);
+            final List<NIOFileAlterationListener> listeners = route.apply(change.getFile());
+            for (final NIOFileAlterationListener listener : listeners) {
+                if (!(listener instanceof NIOFileMoveListener)) {
+                    change.deliverTo(listener);
+                } else if (from != null) {
+                    notifyMove((NIOFileMoveListener) listener, from, change);
+                } else if (!moved) {
+                    change.deliverTo(listener);
+                }
+            }
+            if (from != null) {
+                for (final NIOFileAlterationListener listener : route.apply(from)) {
+                    if (listener instanceof NIOFileMoveListener && !listeners.contains(listener)) {
+                        notifyMove((NIOFileMoveListener) listener, from, change);
+                    }
+                }
+            }
+        }
+        changes.clear();
+        entries.clear();
+    }
+
+    private static void notifyMove(final NIOFileMoveListener listener, final Path from, final NIOFileChange to) {
+        if (to.isDirectory()) {
+            listener.onDirectoryMove(from, to.getFile());
+        } else {
+            listener.onFileMove(from, to.getFile());
+        }
+    }
+
+    private void matchDirectories(final Map<Integer, Path> moves, final Set<Integer> movedSources,
+                                  final Set<NIOFileEntry> movedFrom, final Set<NIOFileEntry> movedTo) {
+        final Map<NIOFileEntry, Map<String, Long>> deletedContents = contents(NIOFileChange.Kind.DELETE);
+        final Map<NIOFileEntry, Map<String, Long>> createdContents = contents(NIOFileChange.Kind.CREATE);
+        if (deletedContents.isEmpty() || createdContents.isEmpty()) {
+            return;
+        }
+        // the created top directories, by contents
+        final Map<Map<String, Long>, List<Integer>> createdByContents = new HashMap<>();
+        for (int c = 0; c < changes.size(); c++) {
+            final Map<String, Long> contents = isDirectory(c, NIOFileChange.Kind.CREATE)
+                    ? createdContents.get(entries.get(c)) : null;
+            if (contents != null && hasFiles(contents)) {
+                createdByContents.computeIfAbsent(contents, key -> new ArrayList<>()).add(c);
+            }
+        }
+        for (int d = 0; d < changes.size(); d++) {
+            final Map<String, Long> contents = isDirectory(d, NIOFileChange.Kind.DELETE)
+                    ? deletedContents.get(entries.get(d)) : null;
+            final List<Integer> candidates = contents != null ? createdByContents.get(contents) : null;
+            if (candidates == null || candidates.isEmpty()) {
+                continue;
+            }
+            int target = 0;
+            for (int i = 0; i < candidates.size(); i++) {
+                if (entries.get(candidates.get(i)).getName().equals(entries.get(d).getName())) {
+                    target = i;
+                    break;
+                }
+            }
+            final int c = candidates.remove(target);
+            pair(d, c, moves, movedSources);
+            movedFrom.add(entries.get(d));
+            movedTo.add(entries.get(c));
+        }
+    }
+
+    private void matchFiles(final Map<Integer, Path> moves, final Set<Integer> movedSources,
+                            final Set<NIOFileEntry> movedFrom, final Set<NIOFileEntry> movedTo) {
+        final Map<String, List<Integer>> createsByName = new HashMap<>();
+        for (int c = 0; c < changes.size(); c++) {
+            final NIOFileChange change = changes.get(c);
+            if (change.getKind() == NIOFileChange.Kind.CREATE && !change.isDirectory()
+                    && !isInside(c, movedFrom, movedTo)) {
+                createsByName.computeIfAbsent(entries.get(c).getName(), name -> new ArrayList<>()).add(c);
+            }
+        }
+        if (createsByName.isEmpty()) {
+            return;
+        }
+        for (int d = 0; d < changes.size(); d++) {
+            final NIOFileChange delete = changes.get(d);
+            if (delete.getKind() != NIOFileChange.Kind.DELETE || delete.isDirectory()
+                    || isInside(d, movedFrom, movedTo)) {
+                continue;
+            }
+            final List<Integer> creates = createsByName.get(entries.get(d).getName());
+            if (creates == null) {
+                continue;
+            }
+            for (final Iterator<Integer> iterator = creates.iterator(); iterator.hasNext(); ) {
+                final int c = iterator.next();
+                if (changes.get(c).getLength() == delete.getLength()) {
+                    iterator.remove();
+                    pair(d, c, moves, movedSources);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void pair(final int delete, final int create, final Map<Integer, Path> moves,
+                      final Set<Integer> movedSources) {
+        moves.put(create, changes.get(delete).getFile());
+        movedSources.add(delete);
+    }
+
+    private boolean isDirectory(final int index, final NIOFileChange.Kind kind) {
+        return changes.get(index).getKind() == kind && changes.get(index).isDirectory();
+    }
+
+    /**
+     * Return the contents of the top directories created or deleted, from the
+     * changes of the same kind held for their subtrees.
+     *
+     * @param kind The kind of change
+     * @return the length of each file, and null for each directory, by path
+     * relative to its top directory, for each top directory
+     */
+    private Map<NIOFileEntry, Map<String, Long>> contents(final NIOFileChange.Kind kind) {
+        final Set<NIOFileEntry> directories = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < changes.size(); i++) {
+            if (isDirectory(i, kind)) {
+                directories.add(entries.get(i));
+            }
+        }
+        final Map<NIOFileEntry, Map<String, Long>> contents = new IdentityHashMap<>();
+        for (final NIOFileEntry directory : directories) {
+            if (!isUnder(directory.getParent(), directories)) {
+                contents.put(directory, new HashMap<>());
+            }
+        }
+        if (contents.isEmpty()) {
+            return contents;
+        }
+        for (int i = 0; i < changes.size(); i++) {
+            final NIOFileChange change = changes.get(i);
+            if (change.getKind() != kind) {
+                continue;
+            }
+            for (NIOFileEntry parent = entries.get(i).getParent(); parent != null; parent = parent.getParent()) {
+                final Map<String, Long> top = contents.get(parent);
+                if (top != null) {
+                    top.put(parent.getFile().relativize(change.getFile()).toString(),
+                            change.isDirectory() ? null : change.getLength());
+                    break;
+                }
+            }
+        }
+        return contents;
+    }
+
+    private boolean isInside(final int index, final Set<NIOFileEntry> movedFrom, final Set<NIOFileEntry> movedTo) {
+        final Set<NIOFileEntry> moved = changes.get(index).getKind() == NIOFileChange.Kind.DELETE ? movedFrom : movedTo;
+        return isUnder(entries.get(index).getParent(), moved);
+    }
+
+    private static boolean hasFiles(final Map<String, Long> contents) {
+        for (final Long length : contents.values()) {
+            if (length != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isUnder(final NIOFileEntry entry, final Set<NIOFileEntry> directories) {
+        if (directories.isEmpty()) {
+            return false;
+        }
+        for (NIOFileEntry parent = entry; parent != null; parent = parent.getParent()) {
+            if (directories.contains(parent)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
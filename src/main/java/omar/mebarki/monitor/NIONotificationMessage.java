@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+/**
+ * A message received from a {@link NIONotificationQueue}, hidden from the
+ * other receivers until it is deleted or its visibility timeout expires.
+ */
+public final class NIONotificationMessage {
+
+    private final String body;
+    private final String receipt;
+
+    /**
+     * Construct a received message.
+     *
+     * @param body    The JSON notification message
+     * @param receipt The handle deleting this delivery of the message
+     */
+    public NIONotificationMessage(final String body, final String receipt) {
+        if (body == null) {
+            throw new IllegalArgumentException("Body is missing");
+        }
+        if (receipt == null) {
+            throw new IllegalArgumentException("Receipt is missing");
+        }
+        this.body = body;
+        this.receipt = receipt;
+    }
+
+    /**
+     * Return the message body.
+     *
+     * @return the JSON notification message
+     */
+    public String getBody() {
+        return body;
+    }
+
+    /**
+     * Return the receipt of this delivery of the message.
+     *
+     * @return the receipt handle
+     */
+    public String getReceipt() {
+        return receipt;
+    }
+
+    /**
+     * Provide a String representation of this message.
+     *
+     * @return a String representation of this message
+     */
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + receipt + "]";
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A queue of bucket notification messages, such as an SQS queue the bucket
+ * sends its event notifications to.
+ * <p>
+ * A message received is hidden from the other receivers, but stays in the
+ * queue until it is deleted once processed. A message not deleted within
+ * the visibility timeout of the queue is received again, so a receiver
+ * failing while processing a message does not lose it.
+ *
+ * @see NIOInMemoryNotificationQueue
+ * @see NIONotificationSource
+ */
+public interface NIONotificationQueue {
+
+    /**
+     * Add a message to the queue.
+     *
+     * @param message The JSON notification message
+     * @throws IOException if the message cannot be sent
+     */
+    void send(String message) throws IOException;
+
+    /**
+     * Receive messages, waiting for one if none is available. The messages
+     * are hidden from the other receivers until deleted or until the
+     * visibility timeout of the queue expires.
+     *
+     * @param maxMessages The maximum number of messages to receive
+     * @param timeout     The maximum time to wait for a message
+     * @param unit        The unit of the timeout
+     * @return the messages, empty if none arrived in time
+     * @throws IOException          if the queue cannot be read
+     * @throws InterruptedException if interrupted while waiting
+     */
+    List<NIONotificationMessage> receive(int maxMessages, long timeout, TimeUnit unit)
+            throws IOException, InterruptedException;
+
+    /**
+     * Delete a message once processed. A message received again since its
+     * visibility timeout expired is not deleted.
+     *
+     * @param message The message received
+     * @throws IOException if the message cannot be deleted
+     */
+    void delete(NIONotificationMessage message) throws IOException;
+}
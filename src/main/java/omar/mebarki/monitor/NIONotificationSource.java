@@ -0,0 +1,234 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Applies bucket notifications to observers as they arrive.
+ * <p>
+ * Each notified key is checked right away by the observers whose directory
+ * contains it, with {@link NIOFileAlterationObserver#triggerNow(Path)}, so
+ * the snapshot is patched and the listeners are notified without waiting for
+ * the next check. The keys of a batch of messages are checked at once by
+ * each observer. Since the current state of each key is read back,
+ * notifications delivered twice or out of order are harmless.
+ * <p>
+ * A batch of messages is deleted from the queue once applied; if applying
+ * it fails, its messages are received again after their visibility timeout.
+ * Messages that are not notifications are logged and deleted.
+ * <p>
+ * Notifications may still be lost, so the observers should keep being
+ * checked by a {@link NIOFileAlterationMonitor}, but only as an infrequent
+ * consistency sweep.
+ */
+public class NIONotificationSource implements Runnable, Closeable {
+
+    private final NIONotificationQueue queue;
+    private final Function<NIOBucketNotification, Path> resolver;
+    private final List<NIOFileAlterationObserver> observers = new CopyOnWriteArrayList<>();
+    private int batchSize = 10;
+    private volatile boolean running;
+    private Thread thread;
+
+    /**
+     * Construct a source for the buckets of a file system, the key
+     * "key" of the bucket "bucket" being the path "/bucket/key".
+     *
+     * @param queue      The queue of notification messages
+     * @param fileSystem The file system of the buckets
+     */
+    public NIONotificationSource(final NIONotificationQueue queue, final FileSystem fileSystem) {
+        this(queue, notification -> fileSystem.getPath("/" + notification.getBucket(), notification.getKey()));
+        if (fileSystem == null) {
+            throw new IllegalArgumentException("File system is missing");
+        }
+    }
+
+    /**
+     * Construct a source.
+     *
+     * @param queue    The queue of notification messages
+     * @param resolver The function returning the path of a notified key
+     */
+    public NIONotificationSource(final NIONotificationQueue queue,
+                                 final Function<NIOBucketNotification, Path> resolver) {
+        if (queue == null) {
+            throw new IllegalArgumentException("Queue is missing");
+        }
+        if (resolver == null) {
+            throw new IllegalArgumentException("Resolver is missing");
+        }
+        this.queue = queue;
+        this.resolver = resolver;
+    }
+
+    /**
+     * Add an observer to apply the notifications to.
+     *
+     * @param observer The observer
+     */
+    public void addObserver(final NIOFileAlterationObserver observer) {
+        if (observer != null) {
+            observers.add(observer);
+        }
+    }
+
+    /**
+     * Remove an observer.
+     *
+     * @param observer The observer
+     */
+    public void removeObserver(final NIOFileAlterationObserver observer) {
+        if (observer != null) {
+            while (observers.remove(observer)) {
+            }
+        }
+    }
+
+    /**
+     * Set the maximum number of messages taken off the queue at once.
+     *
+     * @param batchSize the number of messages, 10 by default
+     */
+    public void setBatchSize(final int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Start a thread applying the notifications of the queue.
+     */
+    public synchronized void start() {
+        if (running) {
+            throw new IllegalStateException("Source is already running");
+        }
+        running = true;
+        thread = new Thread(this, getClass().getSimpleName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop the thread, waiting for the batch being applied.
+     */
+    @Override
+    public synchronized void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Run.
+     */
+    @Override
+    public void run() {
+        while (running) {
+            final List<NIONotificationMessage> messages;
+            try {
+                messages = queue.receive(batchSize, 1, TimeUnit.SECONDS);
+            } catch (final InterruptedException e) {
+                continue;
+            } catch (final IOException e) {
+                e.printStackTrace();
+                continue;
+            }
+            final List<String> bodies = new ArrayList<>(messages.size());
+            for (final NIONotificationMessage message : messages) {
+                bodies.add(message.getBody());
+            }
+            try {
+                process(bodies);
+            } catch (final RuntimeException e) {
+                // left in the queue, received again once their visibility timeout expires
+                e.printStackTrace();
+                continue;
+            }
+            for (final NIONotificationMessage message : messages) {
+                try {
+                    queue.delete(message);
+                } catch (final IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Apply notification messages right away.
+     *
+     * @param messages The JSON notification messages
+     * @return the number of checks requested, one per record and observer containing its key
+     */
+    public int process(final List<String> messages) {
+        final List<NIOBucketNotification> notifications = new ArrayList<>();
+        for (final String message : messages) {
+            try {
+                notifications.addAll(NIOBucketNotification.parse(message));
+            } catch (final IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return apply(notifications);
+    }
+
+    /**
+     * Apply notification records right away.
+     *
+     * @param notifications The notification records
+     * @return the number of checks requested, one per record and observer containing its key
+     */
+    public int apply(final List<NIOBucketNotification> notifications) {
+        int applied = 0;
+        final List<Path> paths = new ArrayList<>(notifications.size());
+        for (final NIOBucketNotification notification : notifications) {
+            paths.add(resolver.apply(notification));
+        }
+        for (final NIOFileAlterationObserver observer : observers) {
+            long ticket = 0;
+            for (final Path path : paths) {
+                final Path observed = observer.toObservedPath(path);
+                if (observed != null) {
+                    ticket = observer.requestTrigger(observed);
+                    applied++;
+                }
+            }
+            if (ticket > 0) {
+                observer.runTriggers(ticket);
+            }
+        }
+        return applied;
+    }
+}
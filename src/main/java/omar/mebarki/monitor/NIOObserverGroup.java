@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Observers of nested directories sharing a single scan.
+ * <p>
+ * The group checks the outermost directory with one observer of its own,
+ * without any filter, holding the only snapshot. Each change is then
+ * dispatched to the listeners of every member observing it, those the
+ * member registered for a prefix included: the changed file must be under
+ * the member directory, and the member filter must accept it and each
+ * directory between. Every directory is thus listed once per check
+ * however many members observe it. The members are never checked or
+ * initialized themselves.
+ *
+ * @see NIOFileAlterationMonitor#addObserverGroup(NIOObserverSchedule, NIOFileAlterationObserver...)
+ */
+public class NIOObserverGroup extends NIOFileAlterationListenerAdaptor implements NIOFileChangeListener {
+
+    private final NIOFileAlterationObserver observer;
+    private final List<NIOFileAlterationObserver> members;
+
+    /**
+     * Construct a group.
+     *
+     * @param members The observers, whose directories must all be under the
+     *                directory of one of them
+     */
+    public NIOObserverGroup(final NIOFileAlterationObserver... members) {
+        if (members == null || members.length == 0) {
+            throw new IllegalArgumentException("Members are missing");
+        }
+        Path root = null;
+        for (final NIOFileAlterationObserver member : members) {
+            final Path directory = member.getDirectory();
+            if (root == null || directory.getNameCount() < root.getNameCount()) {
+                root = directory;
+            }
+        }
+        for (final NIOFileAlterationObserver member : members) {
+            if (!member.getDirectory().startsWith(root)) {
+                throw new IllegalArgumentException(member.getDirectory() + " is not under " + root);
+            }
+        }
+        this.members = Collections.unmodifiableList(new ArrayList<>(Arrays.asList(members)));
+        this.observer = new NIOFileAlterationObserver(root);
+        observer.addListener(this);
+    }
+
+    /**
+     * Return the observer checking the outermost directory for the group.
+     *
+     * @return the shared observer
+     */
+    public NIOFileAlterationObserver getObserver() {
+        return observer;
+    }
+
+    /**
+     * Return the members of the group.
+     *
+     * @return the member observers
+     */
+    public List<NIOFileAlterationObserver> getMembers() {
+        return members;
+    }
+
+    @Override
+    public void onStart(final NIOFileAlterationObserver shared) {
+        for (final NIOFileAlterationObserver member : members) {
+            member.deliverStart();
+        }
+    }
+
+    @Override
+    public void onChange(final NIOFileChange change) {
+        for (final NIOFileAlterationObserver member : members) {
+            if (observes(member, change.getFile())) {
+                member.deliver(change);
+            }
+        }
+    }
+
+    @Override
+    public void onStop(final NIOFileAlterationObserver shared) {
+        for (final NIOFileAlterationObserver member : members) {
+            member.deliverStop();
+        }
+    }
+
+    /**
+     * Whether a member observing alone would have reported a change of a file.
+     *
+     * @param member The member observer
+     * @param file   The changed file
+     * @return true if the file is under the member directory and accepted by
+     * its filter along with each directory between
+     */
+    private static boolean observes(final NIOFileAlterationObserver member, final Path file) {
+        final Path directory = member.getDirectory();
+        if (file.equals(directory) || !file.startsWith(directory)) {
+            return false;
+        }
+        final NIOFileFilter filter = member.getFileFilter();
+        if (filter == null) {
+            return true;
+        }
+        try {
+            for (Path path = file; !path.equals(directory); path = path.getParent()) {
+                if (!filter.accept(path)) {
+                    return false;
+                }
+            }
+        } catch (final IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How often a {@link NIOFileAlterationMonitor} checks one of its observers.
+ * <p>
+ * With a fixed delay, the next check starts one interval after the previous
+ * one finished. With a fixed rate, checks start every interval whatever
+ * their duration; a check due while the previous one is still running is an
+ * overrun, and is either skipped or coalesced into a single check run as
+ * soon as the previous one finishes.
+ * <p>
+ * An adaptive schedule is a fixed delay schedule whose delay follows the
+ * observed change rate: it doubles (or grows by the backoff factor) after
+ * each check finding no change, up to the maximum interval, and snaps back to
+ * the minimum interval as soon as a check finds changes. A random jitter is
+ * applied to each delay so that many monitors do not poll in lockstep.
+ *
+ * @see NIOFileAlterationMonitor#addObserver(NIOFileAlterationObserver, NIOObserverSchedule)
+ */
+public final class NIOObserverSchedule {
+
+    /**
+     * How checks are spaced.
+     */
+    public enum Mode {
+        FIXED_DELAY, FIXED_RATE, ADAPTIVE
+    }
+
+    /**
+     * What to do with a fixed rate check due while the previous one is still running.
+     */
+    public enum Overrun {
+        SKIP, COALESCE
+    }
+
+    private final Mode mode;
+    private final long interval;
+    private final long maxInterval;
+    private final double backoff;
+    private final double jitter;
+    private final Overrun overrun;
+
+    private NIOObserverSchedule(final Mode mode, final long interval, final long maxInterval,
+                                final double backoff, final double jitter, final Overrun overrun) {
+        if (interval < 0) {
+            throw new IllegalArgumentException("Interval must not be negative");
+        }
+        this.mode = mode;
+        this.interval = interval;
+        this.maxInterval = maxInterval;
+        this.backoff = backoff;
+        this.jitter = jitter;
+        this.overrun = overrun;
+    }
+
+    /**
+     * Create a fixed delay schedule.
+     *
+     * @param interval The time in milliseconds between the end of a check
+     *                 and the start of the next one
+     * @return a new schedule
+     */
+    public static NIOObserverSchedule fixedDelay(final long interval) {
+        return new NIOObserverSchedule(Mode.FIXED_DELAY, interval, interval, 1, 0, Overrun.SKIP);
+    }
+
+    /**
+     * Create a fixed rate schedule.
+     *
+     * @param interval The time in milliseconds between the starts of two checks
+     * @param overrun  What to do with a check due while the previous one is still running
+     * @return a new schedule
+     */
+    public static NIOObserverSchedule fixedRate(final long interval, final Overrun overrun) {
+        if (overrun == null) {
+            throw new IllegalArgumentException("Overrun policy is missing");
+        }
+        return new NIOObserverSchedule(Mode.FIXED_RATE, interval, interval, 1, 0, overrun);
+    }
+
+    /**
+     * Create an adaptive schedule doubling its delay while idle, with a 10% jitter.
+     *
+     * @param minInterval The delay in milliseconds after a check finding changes
+     * @param maxInterval The maximum delay in milliseconds
+     * @return a new schedule
+     */
+    public static NIOObserverSchedule adaptive(final long minInterval, final long maxInterval) {
+        return adaptive(minInterval, maxInterval, 2, 0.1);
+    }
+
+    /**
+     * Create an adaptive schedule.
+     *
+     * @param minInterval The delay in milliseconds after a check finding changes
+     * @param maxInterval The maximum delay in milliseconds
+     * @param backoff     The factor applied to the delay after a check finding no change
+     * @param jitter      The maximum random deviation of each delay, as a
+     *                    fraction of the delay between 0 and 1
+     * @return a new schedule
+     */
+    public static NIOObserverSchedule adaptive(final long minInterval, final long maxInterval,
+                                               final double backoff, final double jitter) {
+        if (maxInterval < minInterval) {
+            throw new IllegalArgumentException("Maximum interval must not be less than the minimum interval");
+        }
+        if (!(backoff >= 1)) {
+            throw new IllegalArgumentException("Backoff factor must be at least 1");
+        }
+        if (!(jitter >= 0 && jitter <= 1)) {
+            throw new IllegalArgumentException("Jitter must be between 0 and 1");
+        }
+        return new NIOObserverSchedule(Mode.ADAPTIVE, minInterval, maxInterval, backoff, jitter, Overrun.SKIP);
+    }
+
+    /**
+     * Return the mode.
+     *
+     * @return the mode
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Return the interval, the minimum interval of an adaptive schedule.
+     *
+     * @return the interval in milliseconds
+     */
+    public long getInterval() {
+        return interval;
+    }
+
+    /**
+     * Return the maximum interval of an adaptive schedule.
+     *
+     * @return the maximum interval in milliseconds, the interval for other schedules
+     */
+    public long getMaxInterval() {
+        return maxInterval;
+    }
+
+    /**
+     * Return the factor applied to the delay of an adaptive schedule after a
+     * check finding no change.
+     *
+     * @return the backoff factor, 1 for other schedules
+     */
+    public double getBackoff() {
+        return backoff;
+    }
+
+    /**
+     * Return the maximum random deviation of each delay of an adaptive schedule.
+     *
+     * @return the jitter as a fraction of the delay, 0 for other schedules
+     */
+    public double getJitter() {
+        return jitter;
+    }
+
+    /**
+     * Compute the interval following a check.
+     *
+     * @param current The interval preceding the check
+     * @param changes The number of changes found by the check
+     * @return the next interval in milliseconds, before jitter
+     */
+    long nextInterval(final long current, final int changes) {
+        if (mode != Mode.ADAPTIVE || changes > 0) {
+            return interval;
+        }
+        final double next = Math.max(current, 1) * backoff;
+        return next >= maxInterval ? maxInterval : Math.max(interval, (long) next);
+    }
+
+    /**
+     * Apply the jitter to an interval.
+     *
+     * @param interval The interval in milliseconds
+     * @return the interval randomly moved by up to the jitter
+     */
+    long jitter(final long interval) {
+        if (jitter == 0 || interval == 0) {
+            return interval;
+        }
+        final double deviation = (ThreadLocalRandom.current().nextDouble() * 2 - 1) * jitter;
+        return Math.max(0, Math.round(interval * (1 + deviation)));
+    }
+
+    /**
+     * Return the overrun policy, only used by fixed rate schedules.
+     *
+     * @return the overrun policy
+     */
+    public Overrun getOverrun() {
+        return overrun;
+    }
+
+    /**
+     * Provide a String representation of this schedule.
+     *
+     * @return a String representation of this schedule
+     */
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + mode + ", interval=" + interval
+                + (mode == Mode.FIXED_RATE ? ", overrun=" + overrun : "")
+                + (mode == Mode.ADAPTIVE ? ", maxInterval=" + maxInterval + ", backoff=" + backoff
+                + ", jitter=" + jitter : "") + "]";
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Notifies thread-safe listeners of the changes of a check in parallel,
+ * while keeping the changes of each file in order.
+ * <p>
+ * Registered with an observer, the dispatcher hashes the path of each change
+ * to one of its lanes, each run by a thread of its own, so the create,
+ * change and delete of a file reach the listeners in that order while
+ * different files are processed in parallel. The start event is delivered
+ * from the observer thread before any change of the check, and the stop
+ * event only once all the lanes have delivered the changes of the check,
+ * with the failures of the listeners collected in
+ * {@link #getLastFailures()}. Changes of different files, including a
+ * directory and its contents, may be delivered in any order.
+ * <p>
+ * Each lane queues a bounded number of changes; once a lane is full, the
+ * observer thread waits for it to make room, so a large check does not
+ * queue all its changes at once.
+ * <pre>
+ * NIOPartitionedDispatcher dispatcher = new NIOPartitionedDispatcher(8);
+ * dispatcher.addListener(listener);
+ * observer.addListener(dispatcher);
+ * </pre>
+ * One dispatcher serves one observer at a time.
+ */
+public class NIOPartitionedDispatcher extends NIOFileAlterationListenerAdaptor
+        implements NIOFileChangeListener, Closeable {
+
+    private static final int DEFAULT_LANE_CAPACITY = 1024;
+
+    private final ExecutorService[] lanes;
+    private final Future<?>[] lastTasks;
+    private final List<NIOFileAlterationListener> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicInteger eventCount = new AtomicInteger();
+    private final List<RuntimeException> failures = Collections.synchronizedList(new ArrayList<>());
+    private volatile List<RuntimeException> lastFailures = Collections.emptyList();
+    private volatile int lastEventCount;
+
+    /**
+     * Construct a dispatcher whose lanes each queue up to 1024 changes.
+     *
+     * @param laneCount The number of lanes, and threads
+     */
+    public NIOPartitionedDispatcher(final int laneCount) {
+        this(laneCount, DEFAULT_LANE_CAPACITY);
+    }
+
+    /**
+     * Construct a dispatcher.
+     *
+     * @param laneCount    The number of lanes, and threads
+     * @param laneCapacity The number of changes a lane queues before the
+     *                     observer thread waits for it
+     */
+    public NIOPartitionedDispatcher(final int laneCount, final int laneCapacity) {
+        if (laneCount < 1) {
+            throw new IllegalArgumentException("Lane count must be positive");
+        }
+        if (laneCapacity < 1) {
+            throw new IllegalArgumentException("Lane capacity must be positive");
+        }
+        this.lanes = new ExecutorService[laneCount];
+        this.lastTasks = new Future<?>[laneCount];
+        final AtomicInteger threads = new AtomicInteger();
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(laneCapacity), runnable -> {
+                final Thread thread = new Thread(runnable, getClass().getSimpleName() + "-" + threads.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }, NIOPartitionedDispatcher::waitForRoom);
+        }
+    }
+
+    /**
+     * Add a listener, notified from the lanes.
+     *
+     * @param listener The listener to add, which must be thread-safe
+     */
+    public void addListener(final NIOFileAlterationListener listener) {
+        if (listener != null) {
+            listeners.add(listener);
+        }
+    }
+
+    /**
+     * Remove a listener.
+     *
+     * @param listener The listener to remove
+     */
+    public void removeListener(final NIOFileAlterationListener listener) {
+        if (listener != null) {
+            listeners.remove(listener);
+        }
+    }
+
+    /**
+     * Return the number of lanes.
+     *
+     * @return the number of lanes
+     */
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    /**
+     * Return the lane of a file.
+     *
+     * @param file The path of the file
+     * @return the lane, between 0 and the lane count excluded
+     */
+    int laneOf(final Path file) {
+        final int hash = file.hashCode();
+        return Math.floorMod(hash ^ hash >>> 16, lanes.length);
+    }
+
+    /**
+     * Return the number of changes delivered during the last check.
+     *
+     * @return the number of changes
+     */
+    public int getLastEventCount() {
+        return lastEventCount;
+    }
+
+    /**
+     * Return the exceptions thrown by the listeners during the last check.
+     *
+     * @return the exceptions, in no particular order
+     */
+    public List<RuntimeException> getLastFailures() {
+        return lastFailures;
+    }
+
+    /**
+     * Notify the listeners that the observer started checking.
+     *
+     * @param observer The file system observer
+     */
+    @Override
+    public void onStart(final NIOFileAlterationObserver observer) {
+        eventCount.set(0);
+        failures.clear();
+        for (final NIOFileAlterationListener listener : listeners) {
+            try {
+                listener.onStart(observer);
+            } catch (final RuntimeException e) {
+                failures.add(e);
+            }
+        }
+    }
+
+    /**
+     * Hand a change over to the lane of its file.
+     *
+     * @param change The change
+     */
+    @Override
+    public void onChange(final NIOFileChange change) {
+        final int lane = laneOf(change.getFile());
+        lastTasks[lane] = lanes[lane].submit(() -> {
+            for (final NIOFileAlterationListener listener : listeners) {
+                try {
+                    change.deliverTo(listener);
+                } catch (final RuntimeException e) {
+                    failures.add(e);
+                }
+            }
+            eventCount.incrementAndGet();
+        });
+    }
+
+    /**
+     * Wait for all the lanes to deliver the changes of the check, then notify
+     * the listeners that the observer finished checking.
+     *
+     * @param observer The file system observer
+     */
+    @Override
+    public void onStop(final NIOFileAlterationObserver observer) {
+        awaitLanes();
+        for (final NIOFileAlterationListener listener : listeners) {
+            try {
+                listener.onStop(observer);
+            } catch (final RuntimeException e) {
+                failures.add(e);
+            }
+        }
+        synchronized (failures) {
+            lastFailures = Collections.unmodifiableList(new ArrayList<>(failures));
+        }
+        lastEventCount = eventCount.get();
+    }
+
+    /**
+     * Stop the lanes once they have delivered the changes handed over.
+     */
+    @Override
+    public void close() {
+        for (final ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+        try {
+            for (final ExecutorService lane : lanes) {
+                lane.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Queue a change once its full lane makes room; the lane queue keeps the
+     * order of the changes since only the observer thread submits them.
+     */
+    private static void waitForRoom(final Runnable task, final ThreadPoolExecutor lane) {
+        if (lane.isShutdown()) {
+            throw new RejectedExecutionException("Dispatcher closed");
+        }
+        try {
+            lane.getQueue().put(task);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for the lane", e);
+        }
+    }
+
+    private void awaitLanes() {
+        // each lane runs its tasks in order, so its last task is the last to complete
+        for (int i = 0; i < lastTasks.length; i++) {
+            final Future<?> task = lastTasks[i];
+            if (task == null) {
+                continue;
+            }
+            lastTasks[i] = null;
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    task.get();
+                    break;
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                } catch (final ExecutionException e) {
+                    break;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,504 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Delivers the events of observers to listeners from a thread of its own,
+ * so slow listeners do not hold up the checks.
+ * <p>
+ * Registered with observers, the dispatcher copies each event into the next
+ * slot of a ring buffer allocated once, and its thread notifies the
+ * listeners added to it in the same order. How the thread waits for events,
+ * and an observer for free slots, is set by a {@link WaitStrategy}. When all
+ * the slots are pending, the {@link Overflow} policy decides between
+ * blocking the observer, dropping the oldest pending change, or merging the
+ * change into the one pending for the same file in the same check; the
+ * start and stop events of the checks are never dropped nor merged.
+ * <pre>
+ * NIORingBufferDispatcher dispatcher = new NIORingBufferDispatcher(1024,
+ *         NIORingBufferDispatcher.WaitStrategy.BLOCKING, NIORingBufferDispatcher.Overflow.COALESCE);
+ * dispatcher.addListener(listener);
+ * observer.addListener(dispatcher);
+ * dispatcher.start();
+ * </pre>
+ */
+public class NIORingBufferDispatcher extends NIOFileAlterationListenerAdaptor
+        implements NIOFileChangeListener, Runnable, Closeable {
+
+    /**
+     * How the dispatcher thread waits for events, and observers for free slots.
+     */
+    public enum WaitStrategy {
+        /**
+         * Wait on a condition, signalled by the other side; uses no CPU while idle.
+         */
+        BLOCKING,
+        /**
+         * Sleep briefly between two tries.
+         */
+        SLEEPING,
+        /**
+         * Yield the processor between two tries.
+         */
+        YIELDING,
+        /**
+         * Try again right away; lowest latency, holds a processor while idle.
+         */
+        BUSY_SPIN
+    }
+
+    /**
+     * What happens to a change published when all the slots are pending.
+     */
+    public enum Overflow {
+        /**
+         * Wait for a free slot, holding up the observer.
+         */
+        BLOCK,
+        /**
+         * Drop the oldest pending change.
+         */
+        DROP_OLDEST,
+        /**
+         * Merge the change into the one pending for the same file and
+         * published by the same check, or wait for a free slot if there is none.
+         */
+        COALESCE
+    }
+
+    private static final int CHANGE = 0;
+    private static final int START = 1;
+    private static final int STOP = 2;
+    private static final long SLEEP_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final Slot[] ring;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+    private final Overflow overflow;
+    private final List<NIOFileAlterationListener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<Path, Slot> pendingByFile = new HashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition drained = lock.newCondition();
+    private long head;
+    private long tail;
+    private boolean busy;
+    private long dropped;
+    private long coalesced;
+    private volatile boolean running;
+    private Thread thread;
+
+    /**
+     * Construct a dispatcher.
+     *
+     * @param capacity     The number of slots, rounded up to a power of two
+     * @param waitStrategy How to wait for events and free slots
+     * @param overflow     What to do with a change when all the slots are pending
+     */
+    public NIORingBufferDispatcher(final int capacity, final WaitStrategy waitStrategy, final Overflow overflow) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30");
+        }
+        if (waitStrategy == null) {
+            throw new IllegalArgumentException("Wait strategy is missing");
+        }
+        if (overflow == null) {
+            throw new IllegalArgumentException("Overflow policy is missing");
+        }
+        final int size = Integer.highestOneBit((capacity - 1) << 1 | 1);
+        this.ring = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            ring[i] = new Slot();
+        }
+        this.mask = size - 1;
+        this.waitStrategy = waitStrategy;
+        this.overflow = overflow;
+    }
+
+    /**
+     * Add a listener notified from the dispatcher thread.
+     *
+     * @param listener The listener to add
+     */
+    public void addListener(final NIOFileAlterationListener listener) {
+        if (listener != null) {
+            listeners.add(listener);
+        }
+    }
+
+    /**
+     * Remove a listener.
+     *
+     * @param listener The listener to remove
+     */
+    public void removeListener(final NIOFileAlterationListener listener) {
+        if (listener != null) {
+            listeners.remove(listener);
+        }
+    }
+
+    /**
+     * Return the number of slots.
+     *
+     * @return the number of slots
+     */
+    public int getCapacity() {
+        return ring.length;
+    }
+
+    /**
+     * Return the number of events published and not taken by the dispatcher thread yet.
+     *
+     * @return the number of pending events
+     */
+    public int getPendingCount() {
+        lock.lock();
+        try {
+            return (int) (tail - head);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Return the number of changes dropped by the {@link Overflow#DROP_OLDEST} policy.
+     *
+     * @return the number of changes dropped
+     */
+    public long getDroppedCount() {
+        lock.lock();
+        try {
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Return the number of changes merged by the {@link Overflow#COALESCE} policy.
+     *
+     * @return the number of changes merged
+     */
+    public long getCoalescedCount() {
+        lock.lock();
+        try {
+            return coalesced;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Start the dispatcher thread.
+     */
+    public synchronized void start() {
+        if (running) {
+            throw new IllegalStateException("Dispatcher is already running");
+        }
+        running = true;
+        thread = new Thread(this, getClass().getSimpleName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Deliver the pending events, then stop the dispatcher thread.
+     */
+    @Override
+    public synchronized void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        lock.lock();
+        try {
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            thread.join();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Wait until the events published so far are delivered.
+     *
+     * @param timeout The maximum time to wait
+     * @param unit    The unit of the timeout
+     * @return true if the events are delivered, false if the time elapsed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitDrained(final long timeout, final TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (head != tail || busy) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = drained.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * File system observer started checking event.
+     *
+     * @param observer The file system observer
+     */
+    @Override
+    public void onStart(final NIOFileAlterationObserver observer) {
+        publish(START, observer, null);
+    }
+
+    /**
+     * File or directory created, changed or deleted Event.
+     *
+     * @param change The change
+     */
+    @Override
+    public void onChange(final NIOFileChange change) {
+        publish(CHANGE, null, change);
+    }
+
+    /**
+     * File system observer finished checking event.
+     *
+     * @param observer The file system observer
+     */
+    @Override
+    public void onStop(final NIOFileAlterationObserver observer) {
+        publish(STOP, observer, null);
+    }
+
+    /**
+     * Deliver the events until closed.
+     */
+    @Override
+    public void run() {
+        final Slot taken = new Slot();
+        int idle = 0;
+        while (true) {
+            lock.lock();
+            try {
+                if (head == tail) {
+                    if (!running) {
+                        return;
+                    }
+                    if (waitStrategy == WaitStrategy.BLOCKING) {
+                        notEmpty.awaitUninterruptibly();
+                        continue;
+                    }
+                } else {
+                    final Slot slot = ring[(int) head & mask];
+                    taken.copy(slot);
+                    if (slot.type == CHANGE && pendingByFile.get(slot.change.getFile()) == slot) {
+                        pendingByFile.remove(slot.change.getFile());
+                    }
+                    slot.clear();
+                    head++;
+                    busy = true;
+                    notFull.signal();
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (!busy) {
+                idle(idle++);
+                continue;
+            }
+            idle = 0;
+            if (!taken.cancelled) {
+                deliver(taken);
+            }
+            taken.clear();
+            lock.lock();
+            try {
+                busy = false;
+                if (head == tail) {
+                    drained.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void publish(final int type, final NIOFileAlterationObserver observer, final NIOFileChange change) {
+        lock.lock();
+        try {
+            int idle = 0;
+            while (tail - head == ring.length) {
+                if (type == CHANGE && overflow == Overflow.COALESCE) {
+                    final Slot pending = pendingByFile.get(change.getFile());
+                    if (pending != null) {
+                        merge(pending, change);
+                        coalesced++;
+                        return;
+                    }
+                } else if (overflow == Overflow.DROP_OLDEST && dropOldest()) {
+                    break;
+                }
+                if (waitStrategy == WaitStrategy.BLOCKING) {
+                    notFull.awaitUninterruptibly();
+                } else {
+                    lock.unlock();
+                    try {
+                        idle(idle++);
+                    } finally {
+                        lock.lock();
+                    }
+                }
+            }
+            final Slot slot = ring[(int) tail & mask];
+            slot.type = type;
+            slot.observer = observer;
+            slot.change = change;
+            if (type != CHANGE) {
+                // changes are only merged with those of the same check
+                pendingByFile.clear();
+            } else if (overflow == Overflow.COALESCE) {
+                pendingByFile.put(change.getFile(), slot);
+            }
+            tail++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drop the oldest pending change, moving the start and stop events before it up one slot.
+     *
+     * @return true if a change was dropped, false if only start and stop events are pending
+     */
+    private boolean dropOldest() {
+        long sequence = head;
+        while (sequence < tail && ring[(int) sequence & mask].type != CHANGE) {
+            sequence++;
+        }
+        if (sequence == tail) {
+            return false;
+        }
+        final Slot oldest = ring[(int) sequence & mask];
+        for (; sequence > head; sequence--) {
+            ring[(int) sequence & mask] = ring[(int) (sequence - 1) & mask];
+        }
+        ring[(int) head & mask] = oldest;
+        if (pendingByFile.get(oldest.change.getFile()) == oldest) {
+            pendingByFile.remove(oldest.change.getFile());
+        }
+        oldest.clear();
+        head++;
+        dropped++;
+        return true;
+    }
+
+    /**
+     * Merge a change into the one pending for the same file.
+     *
+     * @param pending The pending change
+     * @param change  The later change
+     */
+    private void merge(final Slot pending, final NIOFileChange change) {
+        final NIOFileChange merged = NIOFileChange.coalesce(pending.change, change);
+        if (merged == null) {
+            // created and deleted before anyone saw it
+            pending.cancelled = true;
+            pendingByFile.remove(change.getFile());
+        } else {
+            pending.change = merged;
+        }
+    }
+
+    private void deliver(final Slot slot) {
+        for (final NIOFileAlterationListener listener : listeners) {
+            try {
+                if (slot.type == START) {
+                    listener.onStart(slot.observer);
+                } else if (slot.type == STOP) {
+                    listener.onStop(slot.observer);
+                } else {
+                    slot.change.deliverTo(listener);
+                }
+            } catch (final RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void idle(final int count) {
+        switch (waitStrategy) {
+            case SLEEPING:
+                if (count < 100) {
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(SLEEP_NANOS);
+                }
+                break;
+            case YIELDING:
+                Thread.yield();
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * A reusable event slot, holding the change published by the observer
+     * rather than a copy of it.
+     */
+    private static final class Slot {
+
+        private int type;
+        private NIOFileAlterationObserver observer;
+        private NIOFileChange change;
+        private boolean cancelled;
+
+        private void copy(final Slot slot) {
+            type = slot.type;
+            observer = slot.observer;
+            change = slot.change;
+            cancelled = slot.cancelled;
+        }
+
+        private void clear() {
+            type = CHANGE;
+            observer = null;
+            change = null;
+            cancelled = false;
+        }
+    }
+}
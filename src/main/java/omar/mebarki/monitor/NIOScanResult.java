@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The immutable result of a check run by
+ * {@link NIOFileAlterationObserver#checkAndNotifyAsync(java.util.concurrent.Executor)}.
+ */
+public final class NIOScanResult {
+
+    private final NIOFileChangeSet changes;
+    private final int requestCount;
+    private final long durationNanos;
+    private final List<Path> failedSubtrees;
+    private final boolean skipped;
+
+    /**
+     * Construct a result.
+     *
+     * @param changes        The changes found
+     * @param requestCount   The number of directory listings made
+     * @param durationNanos  The time the check took, in nanoseconds
+     * @param failedSubtrees The directories that could not be listed
+     */
+    public NIOScanResult(final NIOFileChangeSet changes, final int requestCount, final long durationNanos,
+                         final List<Path> failedSubtrees) {
+        this(changes, requestCount, durationNanos, failedSubtrees, false);
+    }
+
+    private NIOScanResult(final NIOFileChangeSet changes, final int requestCount, final long durationNanos,
+                          final List<Path> failedSubtrees, final boolean skipped) {
+        if (changes == null) {
+            throw new IllegalArgumentException("Change set is missing");
+        }
+        this.changes = changes;
+        this.requestCount = requestCount;
+        this.durationNanos = durationNanos;
+        this.failedSubtrees = failedSubtrees == null ? Collections.emptyList()
+                : Collections.unmodifiableList(new ArrayList<>(failedSubtrees));
+        this.skipped = skipped;
+    }
+
+    /**
+     * Return the result of a check skipped since the observed directory was
+     * still being listed.
+     *
+     * @param durationNanos The time the check took, in nanoseconds
+     * @return a result without changes nor listings, marked skipped
+     */
+    public static NIOScanResult skipped(final long durationNanos) {
+        return new NIOScanResult(NIOFileChangeSet.of(Collections.emptyList()), 0, durationNanos,
+                Collections.emptyList(), true);
+    }
+
+    /**
+     * Return the changes found, also notified to the listeners.
+     *
+     * @return the changes
+     */
+    public NIOFileChangeSet getChanges() {
+        return changes;
+    }
+
+    /**
+     * Return the number of directory listings made.
+     *
+     * @return the number of listing requests
+     */
+    public int getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     * Return the time the check took, including the time spent by the listeners.
+     *
+     * @param unit The unit of the duration
+     * @return the duration
+     */
+    public long getDuration(final TimeUnit unit) {
+        return unit.convert(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Return the directories that could not be listed; their contents are
+     * checked again by the next check.
+     *
+     * @return the directories
+     */
+    public List<Path> getFailedSubtrees() {
+        return failedSubtrees;
+    }
+
+    /**
+     * Return whether the check was skipped, the observed directory still
+     * being listed; its changes are reported by a later check.
+     *
+     * @return true if the check did not run
+     */
+    public boolean isSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Return whether the check ran and all the directories could be listed.
+     *
+     * @return true if the check was not skipped and no subtree failed
+     */
+    public boolean isComplete() {
+        return !skipped && failedSubtrees.isEmpty();
+    }
+
+    /**
+     * Provide a String representation of this result.
+     *
+     * @return a String representation of this result
+     */
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[changes=" + changes + ", requests=" + requestCount +
+                ", duration=" + getDuration(TimeUnit.MILLISECONDS) + "ms, failedSubtrees=" + failedSubtrees + "]";
+    }
+}
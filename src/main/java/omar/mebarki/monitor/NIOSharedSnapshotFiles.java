@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import java.nio.file.Path;
+
+/**
+ * Layout of the files shared between a {@link NIOSharedSnapshotPublisher}
+ * and its {@link NIOSharedSnapshotReader}s.
+ * <p>
+ * For a base file <code>name</code>, two files are used:
+ * <ul>
+ * <li><code>name.events</code>, a fixed size, memory-mapped ring of change
+ * records. Its header holds the total number of bytes ever written, the
+ * number of bytes reserved by the record being written and the generation
+ * of the latest published snapshot;</li>
+ * <li><code>name.snapshot</code>, the latest snapshot, replaced atomically on
+ * each publication. It holds an offset table followed by the entry records,
+ * sorted by key with '/' ordered before any other character so that keys
+ * sort component by component.</li>
+ * </ul>
+ */
+final class NIOSharedSnapshotFiles {
+
+    static final int EVENTS_MAGIC = 0x4E494F45;
+    static final int SNAPSHOT_MAGIC = 0x4E494F53;
+    static final int VERSION = 2;
+
+    /* events header: magic, version, capacity, (pad), write position, snapshot generation, write limit */
+    static final int EVENTS_CAPACITY_OFFSET = 8;
+    static final int EVENTS_POSITION_OFFSET = 16;
+    static final int EVENTS_GENERATION_OFFSET = 24;
+    static final int EVENTS_LIMIT_OFFSET = 32;
+    static final int EVENTS_HEADER_SIZE = 64;
+
+    /* event record: record length, kind, directory, length, last modified, key length, key */
+    static final int EVENT_RECORD_HEADER_SIZE = 4 + 1 + 1 + 8 + 8 + 2;
+    static final int EVENT_PADDING = -1;
+
+    /* snapshot header: magic, version, generation, count */
+    static final int SNAPSHOT_HEADER_SIZE = 4 + 4 + 8 + 4;
+
+    /* snapshot record: key length, key, directory, length, last modified */
+    static final int SNAPSHOT_RECORD_FIXED_SIZE = 2 + 1 + 8 + 8;
+
+    private static volatile int barrier;
+
+    private NIOSharedSnapshotFiles() {
+    }
+
+    /**
+     * Order the accesses to the shared mappings made before this call with
+     * those made after it.
+     * <p>
+     * Java 8 has no VarHandle fences; a volatile store followed by a volatile
+     * load of the same field is a full barrier under the Java memory model,
+     * which HotSpot implements with the matching hardware barrier on x86 and
+     * ARM64. Plain stores to a mapping are otherwise free to become visible
+     * to another process in any order on ARM64.
+     *
+     * @return a meaningless value
+     */
+    static int fence() {
+        barrier = 0;
+        return barrier;
+    }
+
+    static Path eventsFile(final Path baseFile) {
+        return baseFile.resolveSibling(baseFile.getFileName() + ".events");
+    }
+
+    static Path snapshotFile(final Path baseFile) {
+        return baseFile.resolveSibling(baseFile.getFileName() + ".snapshot");
+    }
+
+    /**
+     * Compare two keys component by component.
+     *
+     * @param key1 The first key
+     * @param key2 The second key
+     * @return a negative, zero or positive value as for {@link Comparable}
+     */
+    static int compareKeys(final String key1, final String key2) {
+        final int length = Math.min(key1.length(), key2.length());
+        for (int i = 0; i < length; i++) {
+            final char c1 = key1.charAt(i);
+            final char c2 = key2.charAt(i);
+            if (c1 != c2) {
+                if (c1 == '/') {
+                    return -1;
+                }
+                if (c2 == '/') {
+                    return 1;
+                }
+                return c1 - c2;
+            }
+        }
+        return key1.length() - key2.length();
+    }
+
+    /**
+     * Return the key of a path relative to a directory, using '/' as separator.
+     *
+     * @param directory The directory
+     * @param file      The path, at or below the directory
+     * @return the relative key
+     */
+    static String relativeKey(final Path directory, final Path file) {
+        final Path relative = directory.relativize(file);
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < relative.getNameCount(); i++) {
+            final String name = relative.getName(i).toString();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (builder.length() > 0) {
+                builder.append('/');
+            }
+            builder.append(name);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import static omar.mebarki.monitor.NIOSharedSnapshotFiles.*;
+
+/**
+ * Listener publishing an observer's snapshot and changes into memory-mapped
+ * files, so that other processes on the same host can share a single
+ * observer through {@link NIOSharedSnapshotReader}s.
+ * <p>
+ * Each change is appended to the events ring as soon as it is fired. At the
+ * end of each check that found changes, the whole snapshot is written to a
+ * new file which then atomically replaces the previous one; readers that are
+ * still mapping the previous file keep a consistent view until they switch.
+ * <p>
+ * Register a single publisher with a single observer:
+ * <pre>
+ * observer.addListener(new NIOSharedSnapshotPublisher(Paths.get("/dev/shm/bucket"), 16 * 1024 * 1024));
+ * </pre>
+ * Records are written seqlock style: the end of the record about to be
+ * written is stored in the header first, then the record, then the write
+ * position, with a fence between each step. A reader that finds the write
+ * limit more than a ring's capacity past a record it has just read knows
+ * that the record may have been overwritten while it was reading.
+ *
+ * @see NIOSharedSnapshotReader
+ */
+public class NIOSharedSnapshotPublisher extends NIOFileAlterationListenerAdaptor
+        implements NIOFileChangeListener, Closeable {
+
+    private static final Comparator<NIOFileEntry> BY_NAME = (e1, e2) -> e1.getName().compareTo(e2.getName());
+
+    private final Path baseFile;
+    private final int capacity;
+    private final FileChannel eventsChannel;
+    private final MappedByteBuffer events;
+    private long position;
+    private long generation;
+    private boolean dirty = true;
+    private NIOFileAlterationObserver observer;
+
+    /**
+     * Construct a publisher, creating or resetting its shared files.
+     *
+     * @param baseFile The base name of the shared files
+     * @param capacity The size in bytes of the events ring
+     * @throws IOException if the events file cannot be mapped
+     */
+    public NIOSharedSnapshotPublisher(final Path baseFile, final int capacity) throws IOException {
+        if (baseFile == null) {
+            throw new IllegalArgumentException("Base file is missing");
+        }
+        if (capacity < 1024) {
+            throw new IllegalArgumentException("Capacity must be at least 1024 bytes");
+        }
+        this.baseFile = baseFile;
+        this.capacity = capacity;
+        this.eventsChannel = FileChannel.open(eventsFile(baseFile), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.events = eventsChannel.map(FileChannel.MapMode.READ_WRITE, 0, EVENTS_HEADER_SIZE + (long) capacity);
+        events.putInt(0, EVENTS_MAGIC);
+        events.putInt(4, VERSION);
+        events.putInt(EVENTS_CAPACITY_OFFSET, capacity);
+        events.putLong(EVENTS_POSITION_OFFSET, 0L);
+        events.putLong(EVENTS_GENERATION_OFFSET, 0L);
+        events.putLong(EVENTS_LIMIT_OFFSET, 0L);
+    }
+
+    /**
+     * File system observer started checking event.
+     *
+     * @param observer The file system observer
+     */
+    @Override
+    public void onStart(final NIOFileAlterationObserver observer) {
+        this.observer = observer;
+    }
+
+    /**
+     * Append a change to the events ring.
+     *
+     * @param change The change
+     */
+    @Override
+    public synchronized void onChange(final NIOFileChange change) {
+        if (observer == null) {
+            return;
+        }
+        final byte[] key = relativeKey(observer.getDirectory(), change.getFile()).getBytes(StandardCharsets.UTF_8);
+        final int recordLength = EVENT_RECORD_HEADER_SIZE + key.length;
+        int offset = (int) (position % capacity);
+        final int padding = capacity - offset < recordLength ? capacity - offset : 0;
+        events.putLong(EVENTS_LIMIT_OFFSET, position + padding + recordLength);
+        fence();
+        if (padding > 0) {
+            if (padding >= 4) {
+                events.putInt(EVENTS_HEADER_SIZE + offset, EVENT_PADDING);
+            }
+            position += padding;
+            offset = 0;
+        }
+        final int base = EVENTS_HEADER_SIZE + offset;
+        events.putInt(base, recordLength);
+        events.put(base + 4, (byte) change.getKind().ordinal());
+        events.put(base + 5, change.isDirectory() ? (byte) 1 : (byte) 0);
+        events.putLong(base + 6, change.getLength());
+        events.putLong(base + 14, change.getLastModified());
+        events.putShort(base + 22, (short) key.length);
+        for (int i = 0; i < key.length; i++) {
+            events.put(base + EVENT_RECORD_HEADER_SIZE + i, key[i]);
+        }
+        position += recordLength;
+        fence();
+        events.putLong(EVENTS_POSITION_OFFSET, position);
+        dirty = true;
+    }
+
+    /**
+     * Publish the snapshot if the check found changes.
+     *
+     * @param observer The file system observer
+     */
+    @Override
+    public void onStop(final NIOFileAlterationObserver observer) {
+        if (dirty) {
+            try {
+                publish(observer);
+            } catch (final IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Write the observer's snapshot and make it the current one.
+     *
+     * @param observer The observer to publish
+     * @throws IOException if the snapshot cannot be written
+     */
+    public synchronized void publish(final NIOFileAlterationObserver observer) throws IOException {
+        final NIOFileEntry root = observer.getRootEntry();
+        final long[] sizes = new long[2];
+        measure(root, 0, sizes);
+        final int count = (int) sizes[0];
+        final long size = SNAPSHOT_HEADER_SIZE + 4L * count + sizes[1];
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Snapshot of " + count + " entries is too large to be mapped: " + size + " bytes");
+        }
+        final long nextGeneration = generation + 1;
+        final Path target = snapshotFile(baseFile);
+        final Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(SNAPSHOT_MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putLong(nextGeneration);
+            buffer.putInt(count);
+            final int[] cursor = {SNAPSHOT_HEADER_SIZE + 4 * count, 0};
+            write(buffer, root, new byte[0], cursor);
+            buffer.force();
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (final AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        generation = nextGeneration;
+        events.putLong(EVENTS_GENERATION_OFFSET, generation);
+        dirty = false;
+    }
+
+    /**
+     * Return the generation of the last published snapshot.
+     *
+     * @return the generation, zero if none was published yet
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Close the events file.
+     *
+     * @throws IOException if an error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        eventsChannel.close();
+    }
+
+    /**
+     * Count the entries below a directory and the bytes their records need.
+     */
+    private static void measure(final NIOFileEntry entry, final int keyLength, final long[] sizes) {
+        for (final NIOFileEntry child : entry.getChildren()) {
+            final int childKeyLength = (keyLength == 0 ? 0 : keyLength + 1)
+                    + child.getName().getBytes(StandardCharsets.UTF_8).length;
+            sizes[0]++;
+            sizes[1] += SNAPSHOT_RECORD_FIXED_SIZE + childKeyLength;
+            measure(child, childKeyLength, sizes);
+        }
+    }
+
+    /**
+     * Write the records below a directory, in key order.
+     */
+    private static void write(final MappedByteBuffer buffer, final NIOFileEntry entry, final byte[] key,
+                              final int[] cursor) {
+        final NIOFileEntry[] children = entry.getChildren().clone();
+        Arrays.sort(children, BY_NAME);
+        for (final NIOFileEntry child : children) {
+            final byte[] name = child.getName().getBytes(StandardCharsets.UTF_8);
+            final byte[] childKey;
+            if (key.length == 0) {
+                childKey = name;
+            } else {
+                childKey = Arrays.copyOf(key, key.length + 1 + name.length);
+                childKey[key.length] = '/';
+                System.arraycopy(name, 0, childKey, key.length + 1, name.length);
+            }
+            final int record = cursor[0];
+            buffer.putInt(SNAPSHOT_HEADER_SIZE + 4 * cursor[1], record);
+            buffer.position(record);
+            buffer.putShort((short) childKey.length);
+            buffer.put(childKey);
+            buffer.put(child.isDirectory() ? (byte) 1 : (byte) 0);
+            buffer.putLong(child.getLength());
+            buffer.putLong(child.getLastModified());
+            cursor[0] = buffer.position();
+            cursor[1]++;
+            write(buffer, child, childKey, cursor);
+        }
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static omar.mebarki.monitor.NIOSharedSnapshotFiles.*;
+
+/**
+ * Read-only view of a snapshot and change sequence published by a
+ * {@link NIOSharedSnapshotPublisher} in another process on the same host.
+ * <p>
+ * Lookups binary search the mapped snapshot file, and {@link #poll(NIOFileAlterationListener)}
+ * delivers the changes appended since the previous poll. Neither scans the
+ * observed file system nor copies the snapshot into the heap.
+ * <p>
+ * A reader that polls too rarely may be overtaken by the publisher; the
+ * changes that were overwritten are then skipped and counted by
+ * {@link #getOverruns()}. Each record is checked against the publisher's
+ * write limit after it was read, so that a record overwritten while being
+ * read is never delivered; a record with invalid fields is skipped the same
+ * way. Lookups remain correct since the snapshot is
+ * republished after each check.
+ * <p>
+ * Instances are not thread-safe.
+ *
+ * @see NIOSharedSnapshotPublisher
+ */
+public class NIOSharedSnapshotReader implements Closeable {
+
+    private static final NIOFileChange.Kind[] KINDS = NIOFileChange.Kind.values();
+
+    private final Path baseFile;
+    private final Path directory;
+    private final FileChannel eventsChannel;
+    private final MappedByteBuffer events;
+    private final int capacity;
+    private long position;
+    private long overruns;
+    private long snapshotGeneration = -1;
+    private MappedByteBuffer snapshot;
+    private int snapshotCount;
+
+    /**
+     * Attach to the files of a publisher. Only changes published after
+     * this point are delivered by {@link #poll(NIOFileAlterationListener)}.
+     *
+     * @param baseFile  The base name of the shared files
+     * @param directory The observed directory, which keys are resolved against
+     * @throws IOException if the events file cannot be mapped or is not valid
+     */
+    public NIOSharedSnapshotReader(final Path baseFile, final Path directory) throws IOException {
+        if (baseFile == null) {
+            throw new IllegalArgumentException("Base file is missing");
+        }
+        if (directory == null) {
+            throw new IllegalArgumentException("Directory is missing");
+        }
+        this.baseFile = baseFile;
+        this.directory = directory;
+        this.eventsChannel = FileChannel.open(eventsFile(baseFile), StandardOpenOption.READ);
+        this.events = eventsChannel.map(FileChannel.MapMode.READ_ONLY, 0, eventsChannel.size());
+        if (events.capacity() < EVENTS_HEADER_SIZE || events.getInt(0) != EVENTS_MAGIC) {
+            throw new IOException("Not a shared snapshot events file: " + eventsFile(baseFile));
+        }
+        if (events.getInt(4) != VERSION) {
+            throw new IOException("Unsupported shared snapshot version " + events.getInt(4));
+        }
+        this.capacity = events.getInt(EVENTS_CAPACITY_OFFSET);
+        this.position = events.getLong(EVENTS_POSITION_OFFSET);
+    }
+
+    /**
+     * Find a key in the latest published snapshot.
+     *
+     * @param key The key, relative to the observed directory
+     * @return a detached entry holding the published attributes, or null
+     * if the snapshot holds no such key
+     * @throws IOException if the snapshot file cannot be mapped
+     */
+    public NIOFileEntry lookup(final String key) throws IOException {
+        remapSnapshot();
+        if (snapshot == null) {
+            return null;
+        }
+        int low = 0;
+        int high = snapshotCount - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int record = snapshot.getInt(SNAPSHOT_HEADER_SIZE + 4 * mid);
+            final int cmp = compareKeys(readKey(snapshot, record + 2, snapshot.getShort(record)), key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                final int attributes = record + 2 + snapshot.getShort(record);
+                final NIOFileEntry entry = new NIOFileEntry(directory.resolve(key));
+                entry.setExists(true);
+                entry.setDirectory(snapshot.get(attributes) != 0);
+                entry.setLength(snapshot.getLong(attributes + 1));
+                entry.setLastModified(snapshot.getLong(attributes + 9));
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Deliver the changes published since the previous poll.
+     * <p>
+     * A {@link NIOFileChangeListener} receives {@link NIOFileChangeListener#onChange(NIOFileChange)},
+     * other listeners receive the per-event methods. <code>onStart</code> and
+     * <code>onStop</code> are not called since there is no local observer.
+     *
+     * @param listener The listener to notify
+     * @return the number of changes delivered
+     */
+    public int poll(final NIOFileAlterationListener listener) {
+        int delivered = 0;
+        final long end = events.getLong(EVENTS_POSITION_OFFSET);
+        fence();
+        if (end < position || end - position > capacity) {
+            return overrun(delivered);
+        }
+        while (position < end) {
+            final int offset = (int) (position % capacity);
+            final int base = EVENTS_HEADER_SIZE + offset;
+            final int recordLength = capacity - offset < 4 ? EVENT_PADDING : events.getInt(base);
+            if (recordLength == EVENT_PADDING) {
+                if (overwritten()) {
+                    return overrun(delivered);
+                }
+                position += capacity - offset;
+                continue;
+            }
+            final NIOFileChange change = readChange(base, recordLength, capacity - offset);
+            if (overwritten() || change == null) {
+                // overwritten while being read, or corrupt
+                return overrun(delivered);
+            }
+            position += recordLength;
+            change.deliverTo(listener);
+            delivered++;
+        }
+        return delivered;
+    }
+
+    /**
+     * Return the number of times this reader was overtaken by the publisher
+     * and skipped changes.
+     *
+     * @return the number of overruns
+     */
+    public long getOverruns() {
+        return overruns;
+    }
+
+    /**
+     * Return the generation of the latest published snapshot.
+     *
+     * @return the generation, zero if none was published yet
+     */
+    public long getGeneration() {
+        return events.getLong(EVENTS_GENERATION_OFFSET);
+    }
+
+    /**
+     * Close the events file.
+     *
+     * @throws IOException if an error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        eventsChannel.close();
+    }
+
+    /**
+     * Decode the record at an offset of the events ring, checking its fields
+     * since it may be torn or overwritten.
+     *
+     * @return the change, or null if the record is not valid
+     */
+    private NIOFileChange readChange(final int base, final int recordLength, final int available) {
+        if (recordLength < EVENT_RECORD_HEADER_SIZE || recordLength > available) {
+            return null;
+        }
+        final int kind = events.get(base + 4);
+        final int keyLength = events.getShort(base + 22) & 0xFFFF;
+        if (kind < 0 || kind >= KINDS.length || EVENT_RECORD_HEADER_SIZE + keyLength != recordLength) {
+            return null;
+        }
+        final Path file;
+        try {
+            file = directory.resolve(readKey(events, base + EVENT_RECORD_HEADER_SIZE, keyLength));
+        } catch (final InvalidPathException e) {
+            return null;
+        }
+        return new NIOFileChange(KINDS[kind], file,
+                events.get(base + 5) != 0, events.getLong(base + 6), events.getLong(base + 14));
+    }
+
+    /**
+     * Tell whether the publisher may have written over the record at the
+     * current position since it was read: it only writes below its write
+     * limit, and the record's bytes are reused once that limit passes the
+     * record's position by more than the ring's capacity.
+     */
+    private boolean overwritten() {
+        fence();
+        return events.getLong(EVENTS_LIMIT_OFFSET) - position > capacity;
+    }
+
+    private int overrun(final int delivered) {
+        overruns++;
+        position = events.getLong(EVENTS_POSITION_OFFSET);
+        fence();
+        return delivered;
+    }
+
+    private void remapSnapshot() throws IOException {
+        final long generation = getGeneration();
+        if (generation == snapshotGeneration) {
+            return;
+        }
+        if (generation == 0) {
+            snapshot = null;
+            snapshotGeneration = generation;
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(snapshotFile(baseFile), StandardOpenOption.READ)) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a shared snapshot file: " + snapshotFile(baseFile));
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new IOException("Unsupported shared snapshot version " + buffer.getInt(4));
+            }
+            snapshot = buffer;
+            snapshotGeneration = buffer.getLong(8);
+            snapshotCount = buffer.getInt(16);
+        } catch (final NoSuchFileException e) {
+            snapshot = null;
+        }
+    }
+
+    private static String readKey(final MappedByteBuffer buffer, final int offset, final int length) {
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Compact, versioned binary checkpoint of a snapshot tree.
+ * <p>
+ * {@link NIOFileEntry} is only nominally serializable since the paths of most
+ * file system providers, s3fs included, are not. A checkpoint instead stores
+ * the tree in pre-order with each entry's name relative to its parent, and
+ * rebuilds the paths by resolving those names against the observed directory
+ * when loaded. Loading a checkpoint does not access the observed file system.
+ * <p>
+ * Layout: magic, version, observed directory, creation time, then for each
+ * entry its name (omitted for the root), flags, last modified time, length,
+ * number of children and children.
+ *
+ * @see NIOFileAlterationObserver#setCheckpointFile(Path)
+ */
+public final class NIOSnapshotCheckpoint {
+
+    static final int MAGIC = 0x4E494F43;
+    static final int VERSION = 1;
+
+    private static final int FLAG_EXISTS = 1;
+    private static final int FLAG_DIRECTORY = 2;
+
+    private NIOSnapshotCheckpoint() {
+    }
+
+    /**
+     * Write a snapshot tree to a file, atomically replacing any previous checkpoint.
+     *
+     * @param root The root entry of the snapshot
+     * @param file The checkpoint file
+     * @throws IOException if the checkpoint cannot be written
+     */
+    public static void save(final NIOFileEntry root, final Path file) throws IOException {
+        final Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            write(root, out);
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (final AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Load a snapshot tree from a file into a root entry.
+     *
+     * @param root The root entry to populate
+     * @param file The checkpoint file
+     * @return the time the checkpoint was written
+     * @throws IOException if the checkpoint cannot be read, is of an unsupported
+     *                     version or was written for another directory
+     */
+    public static long load(final NIOFileEntry root, final Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return read(root, in);
+        }
+    }
+
+    /**
+     * Write a snapshot tree to a stream.
+     *
+     * @param root The root entry of the snapshot
+     * @param out  The stream to write to, not closed
+     * @throws IOException if an error occurs
+     */
+    public static void write(final NIOFileEntry root, final OutputStream out) throws IOException {
+        final DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeUTF(root.getFile().toString());
+        data.writeLong(System.currentTimeMillis());
+        writeEntry(root, data);
+        data.flush();
+    }
+
+    /**
+     * Read a snapshot tree from a stream into a root entry.
+     *
+     * @param root The root entry to populate
+     * @param in   The stream to read from, not closed
+     * @return the time the checkpoint was written
+     * @throws IOException if the stream cannot be read, is of an unsupported
+     *                     version or was written for another directory
+     */
+    public static long read(final NIOFileEntry root, final InputStream in) throws IOException {
+        final DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a snapshot checkpoint");
+        }
+        final int version = data.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot checkpoint version " + version);
+        }
+        final String directory = data.readUTF();
+        if (!directory.equals(root.getFile().toString())) {
+            throw new IOException("Snapshot checkpoint of " + directory + " cannot be loaded into " + root.getFile());
+        }
+        final long created = data.readLong();
+        readEntry(root, data);
+        return created;
+    }
+
+    private static void writeEntry(final NIOFileEntry entry, final DataOutputStream data) throws IOException {
+        data.writeByte((entry.isExists() ? FLAG_EXISTS : 0) | (entry.isDirectory() ? FLAG_DIRECTORY : 0));
+        data.writeLong(entry.getLastModified());
+        data.writeLong(entry.getLength());
+        final NIOFileEntry[] children = entry.getChildren();
+        data.writeInt(children.length);
+        for (final NIOFileEntry child : children) {
+            data.writeUTF(child.getName());
+            writeEntry(child, data);
+        }
+    }
+
+    private static void readEntry(final NIOFileEntry entry, final DataInputStream data) throws IOException {
+        final int flags = data.readByte();
+        entry.setExists((flags & FLAG_EXISTS) != 0);
+        entry.setDirectory((flags & FLAG_DIRECTORY) != 0);
+        entry.setLastModified(data.readLong());
+        entry.setLength(data.readLong());
+        final int count = data.readInt();
+        final NIOFileEntry[] children = count > 0 ? new NIOFileEntry[count] : NIOFileEntry.EMPTY_ENTRIES;
+        for (int i = 0; i < count; i++) {
+            final NIOFileEntry child = entry.newChildInstance(entry.getFile().resolve(data.readUTF()));
+            readEntry(child, data);
+            children[i] = child;
+        }
+        entry.setChildren(children);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Compares two snapshot trees using the Merkle hashes of their entries.
+ * <p>
+ * The comparison starts at the roots and only descends into directories
+ * whose hashes differ, so comparing two large, mostly identical trees costs
+ * in proportion to the number of differences times the tree depth rather
+ * than to the number of entries.
+ * <p>
+ * Files are compared by length and last modified time only, as their
+ * content is not read: files differing in content alone are reported as
+ * identical, and a replica copied without keeping the dates differs from
+ * its source.
+ *
+ * @see NIOFileEntry#getHash()
+ */
+public final class NIOSnapshotDiff {
+
+    private static final Comparator<NIOFileEntry> BY_NAME = (e1, e2) -> e1.getName().compareTo(e2.getName());
+
+    private NIOSnapshotDiff() {
+    }
+
+    /**
+     * Compare two snapshot trees.
+     *
+     * @param left     The left root entry
+     * @param right    The right root entry
+     * @param listener The listener notified of each difference
+     * @return {@code true} if the trees are identical, otherwise {@code false}
+     */
+    public static boolean compare(final NIOFileEntry left, final NIOFileEntry right,
+                                  final NIOSnapshotDiffListener listener) {
+        if (left == null || right == null) {
+            throw new IllegalArgumentException("Root entry is missing");
+        }
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener is missing");
+        }
+        if (Arrays.equals(left.getHash(), right.getHash())) {
+            return true;
+        }
+        compareEntries(left, right, listener);
+        return false;
+    }
+
+    private static void compareEntries(final NIOFileEntry left, final NIOFileEntry right,
+                                       final NIOSnapshotDiffListener listener) {
+        if (!left.isDirectory() || !right.isDirectory()) {
+            listener.onDifferent(left, right);
+            return;
+        }
+        final NIOFileEntry[] leftChildren = sortedChildren(left);
+        final NIOFileEntry[] rightChildren = sortedChildren(right);
+        int l = 0;
+        int r = 0;
+        while (l < leftChildren.length && r < rightChildren.length) {
+            final int cmp = BY_NAME.compare(leftChildren[l], rightChildren[r]);
+            if (cmp < 0) {
+                listener.onLeftOnly(leftChildren[l++]);
+            } else if (cmp > 0) {
+                listener.onRightOnly(rightChildren[r++]);
+            } else {
+                final NIOFileEntry leftChild = leftChildren[l++];
+                final NIOFileEntry rightChild = rightChildren[r++];
+                if (leftChild.isDirectory() != rightChild.isDirectory()) {
+                    listener.onDifferent(leftChild, rightChild);
+                } else if (!Arrays.equals(leftChild.getHash(), rightChild.getHash())) {
+                    compareEntries(leftChild, rightChild, listener);
+                }
+            }
+        }
+        for (; l < leftChildren.length; l++) {
+            listener.onLeftOnly(leftChildren[l]);
+        }
+        for (; r < rightChildren.length; r++) {
+            listener.onRightOnly(rightChildren[r]);
+        }
+    }
+
+    private static NIOFileEntry[] sortedChildren(final NIOFileEntry entry) {
+        final NIOFileEntry[] children = entry.getChildren().clone();
+        Arrays.sort(children, BY_NAME);
+        return children;
+    }
+}
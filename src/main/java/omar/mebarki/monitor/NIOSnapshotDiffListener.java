@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+/**
+ * A listener that receives the differences found when comparing two
+ * observer snapshots.
+ * <p>
+ * When a whole subtree exists on one side only, only its top entry is
+ * reported.
+ *
+ * @see NIOSnapshotDiff
+ */
+public interface NIOSnapshotDiffListener {
+
+    /**
+     * Entry present in the left snapshot only.
+     *
+     * @param left The left entry
+     */
+    void onLeftOnly(final NIOFileEntry left);
+
+    /**
+     * Entry present in the right snapshot only.
+     *
+     * @param right The right entry
+     */
+    void onRightOnly(final NIOFileEntry right);
+
+    /**
+     * Entry present in both snapshots with different attributes,
+     * or a file on one side and a directory on the other.
+     *
+     * @param left  The left entry
+     * @param right The right entry
+     */
+    void onDifferent(final NIOFileEntry left, final NIOFileEntry right);
+}
@@ -0,0 +1,292 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Query API over the snapshot held by a {@link NIOFileAlterationObserver}.
+ * <p>
+ * All queries are answered from memory and never access the file system:
+ * <ul>
+ * <li>point lookups walk the snapshot tree, one binary search per level;</li>
+ * <li>per-prefix file counts and byte totals use the totals cached on each
+ * directory entry, which are only recomputed along the path of a change;</li>
+ * <li>"modified since" and top-K newest/largest queries use two ordered
+ * secondary indexes kept up to date by the observer as it fires events.</li>
+ * </ul>
+ * Keys are relative to the observed directory and use '/' as separator.
+ * <p>
+ * The index reflects the snapshot as of the last check. It is safe to query
+ * while the observer is checking, but results may then mix the state before
+ * and after that check.
+ *
+ * @see NIOFileAlterationObserver#getIndex()
+ */
+public final class NIOSnapshotIndex {
+
+    private static final Comparator<IndexKey> BY_LAST_MODIFIED = (k1, k2) -> {
+        final int cmp = Long.compare(k1.lastModified, k2.lastModified);
+        return cmp != 0 ? cmp : Long.compare(k1.sequence, k2.sequence);
+    };
+
+    private static final Comparator<IndexKey> BY_LENGTH = (k1, k2) -> {
+        final int cmp = Long.compare(k1.length, k2.length);
+        return cmp != 0 ? cmp : Long.compare(k1.sequence, k2.sequence);
+    };
+
+    private final NIOFileEntry rootEntry;
+    private final Comparator<Path> comparator;
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<NIOFileEntry, IndexKey> keys = new ConcurrentHashMap<>();
+    private final NavigableSet<IndexKey> byLastModified = new ConcurrentSkipListSet<>(BY_LAST_MODIFIED);
+    private final NavigableSet<IndexKey> byLength = new ConcurrentSkipListSet<>(BY_LENGTH);
+
+    /**
+     * Construct an index over a snapshot tree.
+     *
+     * @param rootEntry  The root entry of the snapshot
+     * @param comparator The comparator the snapshot's children are sorted with
+     */
+    NIOSnapshotIndex(final NIOFileEntry rootEntry, final Comparator<Path> comparator) {
+        this.rootEntry = rootEntry;
+        this.comparator = comparator;
+        rebuild();
+    }
+
+    /**
+     * Find the entry for a key.
+     *
+     * @param key The key, relative to the observed directory
+     * @return The entry, or null if the snapshot holds no such key
+     */
+    public NIOFileEntry lookup(final String key) {
+        NIOFileEntry entry = rootEntry;
+        if (key == null) {
+            return entry;
+        }
+        for (final String segment : key.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            entry = findChild(entry, segment);
+            if (entry == null) {
+                return null;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Find the entry for a path.
+     *
+     * @param file The path, which must be the observed directory or below it
+     * @return The entry, or null if the snapshot holds no such path
+     */
+    public NIOFileEntry lookup(final Path file) {
+        final Path root = rootEntry.getFile();
+        if (file == null || !file.startsWith(root)) {
+            return null;
+        }
+        NIOFileEntry entry = rootEntry;
+        final Path relative = root.relativize(file);
+        for (int i = 0; i < relative.getNameCount() && entry != null; i++) {
+            final String segment = relative.getName(i).toString();
+            if (!segment.isEmpty()) {
+                entry = findChild(entry, segment);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Return the number of files below a prefix.
+     *
+     * @param prefix The directory key, relative to the observed directory
+     * @return The number of files, zero if the prefix is unknown
+     */
+    public long getCount(final String prefix) {
+        final NIOFileEntry entry = lookup(prefix);
+        return entry == null ? 0 : entry.getTotalCount();
+    }
+
+    /**
+     * Return the total length of the files below a prefix.
+     *
+     * @param prefix The directory key, relative to the observed directory
+     * @return The total length in bytes, zero if the prefix is unknown
+     */
+    public long getLength(final String prefix) {
+        final NIOFileEntry entry = lookup(prefix);
+        return entry == null ? 0 : entry.getTotalLength();
+    }
+
+    /**
+     * Return the files modified at or after a time, oldest first.
+     *
+     * @param time The time in milliseconds
+     * @return The matching file entries
+     */
+    public List<NIOFileEntry> getModifiedSince(final long time) {
+        final IndexKey from = new IndexKey(null, time, 0, Long.MIN_VALUE);
+        final List<NIOFileEntry> result = new ArrayList<>();
+        for (final IndexKey key : byLastModified.tailSet(from, true)) {
+            result.add(key.entry);
+        }
+        return result;
+    }
+
+    /**
+     * Return the most recently modified files, newest first.
+     *
+     * @param count The maximum number of files to return
+     * @return The matching file entries
+     */
+    public List<NIOFileEntry> getNewest(final int count) {
+        return first(byLastModified.descendingIterator(), count);
+    }
+
+    /**
+     * Return the largest files, largest first.
+     *
+     * @param count The maximum number of files to return
+     * @return The matching file entries
+     */
+    public List<NIOFileEntry> getLargest(final int count) {
+        return first(byLength.descendingIterator(), count);
+    }
+
+    /**
+     * Return the number of files held by the ordered indexes.
+     *
+     * @return the number of indexed files
+     */
+    public int size() {
+        return keys.size();
+    }
+
+    /**
+     * Index a file entry that was created or changed.
+     *
+     * @param entry The file entry
+     */
+    void update(final NIOFileEntry entry) {
+        if (entry.isDirectory() || !entry.isExists()) {
+            remove(entry);
+            return;
+        }
+        final IndexKey key = new IndexKey(entry, entry.getLastModified(), entry.getLength(), sequence.incrementAndGet());
+        final IndexKey previous = keys.put(entry, key);
+        if (previous != null) {
+            byLastModified.remove(previous);
+            byLength.remove(previous);
+        }
+        byLastModified.add(key);
+        byLength.add(key);
+    }
+
+    /**
+     * Remove a file entry that was deleted.
+     *
+     * @param entry The file entry
+     */
+    void remove(final NIOFileEntry entry) {
+        final IndexKey previous = keys.remove(entry);
+        if (previous != null) {
+            byLastModified.remove(previous);
+            byLength.remove(previous);
+        }
+    }
+
+    /**
+     * Rebuild the ordered indexes from the snapshot tree.
+     */
+    void rebuild() {
+        keys.clear();
+        byLastModified.clear();
+        byLength.clear();
+        add(rootEntry);
+    }
+
+    /**
+     * Index the files below a directory entry.
+     *
+     * @param entry The directory entry
+     */
+    void add(final NIOFileEntry entry) {
+        for (final NIOFileEntry child : entry.getChildren()) {
+            if (child.isDirectory()) {
+                add(child);
+            } else {
+                update(child);
+            }
+        }
+    }
+
+    private NIOFileEntry findChild(final NIOFileEntry parent, final String name) {
+        final NIOFileEntry[] children = parent.getChildren();
+        if (children.length == 0) {
+            return null;
+        }
+        final Path file = parent.getFile().resolve(name);
+        int low = 0;
+        int high = children.length - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int cmp = comparator.compare(children[mid].getFile(), file);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return children[mid];
+            }
+        }
+        return null;
+    }
+
+    private static List<NIOFileEntry> first(final Iterator<IndexKey> keys, final int count) {
+        final List<NIOFileEntry> result = new ArrayList<>(Math.max(0, Math.min(count, 64)));
+        while (result.size() < count && keys.hasNext()) {
+            result.add(keys.next().entry);
+        }
+        return result;
+    }
+
+    private static final class IndexKey {
+        private final NIOFileEntry entry;
+        private final long lastModified;
+        private final long length;
+        private final long sequence;
+
+        private IndexKey(final NIOFileEntry entry, final long lastModified, final long length, final long sequence) {
+            this.entry = entry;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Comparator;
+
+/**
+ * Source of a baseline snapshot that an observer can load instead of
+ * walking the observed directory.
+ * <p>
+ * A baseline is accurate as of a point in time. During the first check
+ * after it is loaded, the observer reconciles it with the observed directory
+ * and only fires events for entries modified after that time, or deleted.
+ *
+ * @see NIOFileAlterationObserver#setSnapshotLoader(NIOSnapshotLoader)
+ */
+@FunctionalInterface
+public interface NIOSnapshotLoader {
+
+    /**
+     * Populate the children of the root entry.
+     * <p>
+     * The children of each directory must be sorted with the given comparator.
+     *
+     * @param root       The root entry to populate
+     * @param comparator The comparator the snapshot's children are sorted with
+     * @return the time in milliseconds as of which the baseline is accurate
+     * @throws IOException if the baseline cannot be loaded
+     */
+    long load(NIOFileEntry root, Comparator<Path> comparator) throws IOException;
+}
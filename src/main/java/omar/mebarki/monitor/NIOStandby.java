@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a standby observer up to date from the changes found by a primary
+ * observer of the same directory, so it can take over without walking the
+ * directory again.
+ * <p>
+ * The standby is a {@link NIOFileChangeListener} applying each change to the
+ * snapshot of its observer with {@link NIOFileAlterationObserver#applyChange(NIOFileChange)},
+ * without firing any event. It may be registered with the primary observer
+ * itself, fed by any transport, or follow a {@link NIOSharedSnapshotReader}
+ * attached to the files of a {@link NIOSharedSnapshotPublisher} of the
+ * primary:
+ * <pre>
+ * NIOStandby standby = new NIOStandby(new NIOFileAlterationObserver(directory));
+ * standby.follow(new NIOSharedSnapshotReader(baseFile, directory), 100);
+ * ...
+ * monitor.addObserver(standby.promote());
+ * monitor.start();
+ * </pre>
+ * Once promoted, the observer initializes from the snapshot it holds, so its
+ * first check only reports the changes made since the last one applied.
+ */
+public class NIOStandby extends NIOFileAlterationListenerAdaptor implements NIOFileChangeListener, Closeable {
+
+    private final NIOFileAlterationObserver observer;
+    private final AtomicLong applied = new AtomicLong();
+    private NIOSharedSnapshotReader reader;
+    private Thread thread;
+    private volatile boolean following;
+
+    /**
+     * Construct a standby.
+     *
+     * @param observer The standby observer, neither initialized nor checked
+     *                 until promoted
+     */
+    public NIOStandby(final NIOFileAlterationObserver observer) {
+        if (observer == null) {
+            throw new IllegalArgumentException("Observer is missing");
+        }
+        this.observer = observer;
+    }
+
+    /**
+     * Return the standby observer.
+     *
+     * @return the observer
+     */
+    public NIOFileAlterationObserver getObserver() {
+        return observer;
+    }
+
+    /**
+     * Return the number of changes applied.
+     *
+     * @return the number of changes
+     */
+    public long getAppliedCount() {
+        return applied.get();
+    }
+
+    /**
+     * Apply a change of the primary observer.
+     *
+     * @param change The change
+     */
+    @Override
+    public void onChange(final NIOFileChange change) {
+        observer.applyChange(change);
+        applied.incrementAndGet();
+    }
+
+    /**
+     * Load the baseline of the standby observer, then apply the changes
+     * published to a reader in a background thread.
+     * <p>
+     * The reader must be attached before this method is called: changes
+     * published while the baseline loads are applied again afterwards, which
+     * is harmless. The baseline is loaded as by
+     * {@link NIOFileAlterationObserver#initialize()}, from the checkpoint of
+     * the primary when set as the checkpoint file of the standby observer.
+     *
+     * @param reader       The reader attached to the files of the primary
+     * @param pollInterval The time in milliseconds between two polls
+     * @throws Exception if the baseline cannot be loaded
+     */
+    public synchronized void follow(final NIOSharedSnapshotReader reader, final long pollInterval) throws Exception {
+        if (reader == null) {
+            throw new IllegalArgumentException("Reader is missing");
+        }
+        if (following) {
+            throw new IllegalStateException("Standby is already following");
+        }
+        observer.initialize();
+        this.reader = reader;
+        following = true;
+        thread = new Thread(() -> {
+            while (following) {
+                reader.poll(this);
+                try {
+                    Thread.sleep(pollInterval);
+                } catch (final InterruptedException e) {
+                    return;
+                }
+            }
+        }, getClass().getSimpleName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop following, apply the changes published so far, and make the
+     * observer use its snapshot as its baseline.
+     *
+     * @return the observer, ready to be added to a monitor
+     */
+    public synchronized NIOFileAlterationObserver promote() {
+        close();
+        if (reader != null) {
+            reader.poll(this);
+        }
+        observer.adoptSnapshot();
+        return observer;
+    }
+
+    /**
+     * Stop following; the reader is left open.
+     */
+    @Override
+    public synchronized void close() {
+        if (!following) {
+            return;
+        }
+        following = false;
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
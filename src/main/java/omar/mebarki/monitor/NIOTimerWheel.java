@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashed timer wheel.
+ * <p>
+ * Timeouts are hashed into a fixed number of buckets by their deadline tick,
+ * so scheduling and cancelling are constant time and each tick only looks at
+ * one bucket, however many timeouts are pending. Deadlines are rounded up to
+ * the tick duration.
+ * <p>
+ * {@link #schedule(Runnable, long, TimeUnit)} may be called from any thread;
+ * {@link #advance(long)} must always be called from the same thread, which
+ * also runs the expired tasks.
+ */
+final class NIOTimerWheel {
+
+    private final long tickNanos;
+    private final long startTime;
+    private final List<List<Timeout>> buckets;
+    private final int mask;
+    private final Queue<Timeout> added = new ConcurrentLinkedQueue<>();
+    private long tick;
+
+    /**
+     * Construct a timer wheel.
+     *
+     * @param tickDuration The duration of a tick
+     * @param unit         The unit of the tick duration
+     * @param wheelSize    The number of buckets, rounded up to a power of two
+     */
+    NIOTimerWheel(final long tickDuration, final TimeUnit unit, final int wheelSize) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("Tick duration must be positive");
+        }
+        if (wheelSize < 1 || wheelSize > 1 << 20) {
+            throw new IllegalArgumentException("Wheel size must be between 1 and 2^20");
+        }
+        this.tickNanos = unit.toNanos(tickDuration);
+        int size = 1;
+        while (size < wheelSize) {
+            size <<= 1;
+        }
+        this.buckets = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            buckets.add(new ArrayList<>());
+        }
+        this.mask = size - 1;
+        this.startTime = System.nanoTime();
+    }
+
+    /**
+     * Schedule a task.
+     *
+     * @param task  The task to run once the delay expired
+     * @param delay The delay
+     * @param unit  The unit of the delay
+     * @return a handle to cancel the task
+     */
+    Timeout schedule(final Runnable task, final long delay, final TimeUnit unit) {
+        final Timeout timeout = new Timeout(task, System.nanoTime() - startTime + unit.toNanos(Math.max(0, delay)));
+        added.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Return the time at which the current tick ends.
+     *
+     * @return the deadline of the current tick, in {@link System#nanoTime()} terms
+     */
+    long nextTickTime() {
+        return startTime + (tick + 1) * tickNanos;
+    }
+
+    /**
+     * Process all the ticks that ended by a time, running the expired tasks.
+     *
+     * @param now The current time, in {@link System#nanoTime()} terms
+     */
+    void advance(final long now) {
+        while (nextTickTime() - now <= 0) {
+            transferAdded();
+            expire(buckets.get((int) (tick & mask)));
+            tick++;
+        }
+    }
+
+    private void transferAdded() {
+        Timeout timeout;
+        while ((timeout = added.poll()) != null) {
+            if (timeout.cancelled) {
+                continue;
+            }
+            final long deadlineTick = Math.max(tick, (timeout.deadline + tickNanos - 1) / tickNanos - 1);
+            timeout.rounds = (deadlineTick - tick) / buckets.size();
+            buckets.get((int) (deadlineTick & mask)).add(timeout);
+        }
+    }
+
+    private static void expire(final List<Timeout> bucket) {
+        List<Timeout> expired = null;
+        for (final Iterator<Timeout> it = bucket.iterator(); it.hasNext(); ) {
+            final Timeout timeout = it.next();
+            if (timeout.cancelled) {
+                it.remove();
+            } else if (timeout.rounds <= 0) {
+                it.remove();
+                if (expired == null) {
+                    expired = new ArrayList<>();
+                }
+                expired.add(timeout);
+            } else {
+                timeout.rounds--;
+            }
+        }
+        if (expired != null) {
+            for (final Timeout timeout : expired) {
+                try {
+                    timeout.task.run();
+                } catch (final RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * A scheduled task.
+     */
+    static final class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private long rounds;
+        private volatile boolean cancelled;
+
+        private Timeout(final Runnable task, final long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancel the task if it did not run yet.
+         */
+        void cancel() {
+            cancelled = true;
+        }
+    }
+}
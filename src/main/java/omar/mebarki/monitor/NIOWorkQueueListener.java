@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Delivers each created or changed file to exactly one of the consumers
+ * observing the same directory, instead of to all of them.
+ * <p>
+ * Each consumer registers its own instance with its observer. Files created
+ * or changed are queued, and at the end of every check each consumer claims
+ * the queued files through a shared {@link NIOClaimStore}: the one claiming a
+ * file notifies its delegate listener, then completes the claim. The others
+ * keep the file queued until it is completed, so if the delegate throws, or
+ * the consumer fails, the file is claimed again by any consumer once the
+ * claim is given up or its visibility timeout expires. Delivery is thus at
+ * least once: a delegate running longer than the visibility timeout may see
+ * the file delivered to another consumer too.
+ * <p>
+ * The work is keyed by the path relative to the observed directory, the
+ * last modified time and the length, so a file changed again is delivered
+ * again. Deletes and directories are not delivered; a file deleted is
+ * dropped from the queue.
+ */
+public class NIOWorkQueueListener extends NIOFileAlterationListenerAdaptor implements NIOFileChangeListener {
+
+    private final NIOClaimStore store;
+    private final String consumer;
+    private final NIOFileAlterationListener delegate;
+    private final long visibilityTimeout;
+    private final Map<Path, NIOFileChange> queued = new LinkedHashMap<>();
+    private Path directory;
+
+    /**
+     * Construct a work queue listener.
+     *
+     * @param store             The claim store shared by the consumers
+     * @param consumer          The id of this consumer, unique among the consumers
+     * @param delegate          The listener processing the files claimed
+     * @param visibilityTimeout The time in milliseconds a claim lasts before
+     *                          the file is delivered again
+     */
+    public NIOWorkQueueListener(final NIOClaimStore store, final String consumer,
+                                final NIOFileAlterationListener delegate, final long visibilityTimeout) {
+        if (store == null) {
+            throw new IllegalArgumentException("Claim store is missing");
+        }
+        if (consumer == null) {
+            throw new IllegalArgumentException("Consumer id is missing");
+        }
+        if (delegate == null) {
+            throw new IllegalArgumentException("Delegate listener is missing");
+        }
+        if (visibilityTimeout <= 0) {
+            throw new IllegalArgumentException("Visibility timeout must be positive");
+        }
+        this.store = store;
+        this.consumer = consumer;
+        this.delegate = delegate;
+        this.visibilityTimeout = visibilityTimeout;
+    }
+
+    /**
+     * Return the files queued, not known to be completed yet.
+     *
+     * @return the files queued
+     */
+    public synchronized List<Path> getQueuedFiles() {
+        return new ArrayList<>(queued.keySet());
+    }
+
+    /**
+     * File system observer started checking event.
+     *
+     * @param observer The file system observer
+     */
+    @Override
+    public synchronized void onStart(final NIOFileAlterationObserver observer) {
+        directory = observer.getDirectory();
+    }
+
+    /**
+     * Queue a file created or changed.
+     *
+     * @param change The change
+     */
+    @Override
+    public synchronized void onChange(final NIOFileChange change) {
+        if (change.isDirectory()) {
+            return;
+        }
+        if (change.getKind() == NIOFileChange.Kind.DELETE) {
+            queued.remove(change.getFile());
+        } else {
+            // a newer version supersedes the one queued
+            queued.remove(change.getFile());
+            queued.put(change.getFile(), change);
+        }
+    }
+
+    /**
+     * Deliver the files queued at the end of the check.
+     *
+     * @param observer The file system observer
+     */
+    @Override
+    public void onStop(final NIOFileAlterationObserver observer) {
+        deliver();
+    }
+
+    /**
+     * Claim the files queued and notify the delegate of those claimed.
+     *
+     * @return the number of files delivered to the delegate
+     */
+    public synchronized int deliver() {
+        int delivered = 0;
+        final Iterator<NIOFileChange> iterator = queued.values().iterator();
+        while (iterator.hasNext()) {
+            final NIOFileChange change = iterator.next();
+            final String key = keyOf(change);
+            try {
+                if (!store.tryClaim(key, consumer, visibilityTimeout)) {
+                    if (store.isCompleted(key)) {
+                        iterator.remove();
+                    }
+                    continue;
+                }
+                try {
+                    change.dispatchTo(delegate);
+                } catch (final RuntimeException e) {
+                    e.printStackTrace();
+                    store.abandon(key, consumer);
+                    continue;
+                }
+                delivered++;
+                store.complete(key, consumer);
+                iterator.remove();
+            } catch (final IOException e) {
+                // left queued, claimed again at the end of the next check
+                e.printStackTrace();
+            }
+        }
+        return delivered;
+    }
+
+    /**
+     * Return the key of the work of a change.
+     *
+     * @param change The change
+     * @return the key shared by all the consumers
+     */
+    String keyOf(final NIOFileChange change) {
+        final Path file = change.getFile();
+        final String path = directory != null && file.startsWith(directory)
+                ? directory.relativize(file).toString() : file.toString();
+        return path + "@" + change.getLastModified() + "/" + change.getLength();
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.CopyOption;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileAttribute;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The mutating operations of {@link Files}, reporting each change straight
+ * to the observers of the modified paths.
+ * <p>
+ * Once an operation succeeds, every registered observer whose directory
+ * contains one of the modified paths is told of the change with
+ * {@link NIOFileAlterationObserver#notifyChanges(List)}: its snapshot is
+ * patched and events are fired without waiting for the next check, which
+ * then only reconciles changes made by other writers. Only the attributes
+ * of the written paths are read back; nothing is listed. The source and
+ * target of a move are reported together, so that observers detecting
+ * moves pair them. A directory moved is checked with a trigger of both
+ * paths instead, since its new contents are not known, and only then does
+ * the calling thread wait for a check of the observer already running;
+ * other changes are queued and reported before the stop event of that check.
+ */
+public class NIOWriteThroughFiles {
+
+    private final List<NIOFileAlterationObserver> observers = new CopyOnWriteArrayList<>();
+
+    /**
+     * Construct for a set of observers.
+     *
+     * @param observers The observers to report the changes to
+     */
+    public NIOWriteThroughFiles(final NIOFileAlterationObserver... observers) {
+        if (observers != null) {
+            for (final NIOFileAlterationObserver observer : observers) {
+                addObserver(observer);
+            }
+        }
+    }
+
+    /**
+     * Add an observer to report the changes to.
+     *
+     * @param observer The observer
+     */
+    public void addObserver(final NIOFileAlterationObserver observer) {
+        if (observer != null) {
+            observers.add(observer);
+        }
+    }
+
+    /**
+     * Remove an observer.
+     *
+     * @param observer The observer
+     */
+    public void removeObserver(final NIOFileAlterationObserver observer) {
+        if (observer != null) {
+            while (observers.remove(observer)) {
+            }
+        }
+    }
+
+    /**
+     * Copy a file, see {@link Files#copy(Path, Path, CopyOption...)}.
+     *
+     * @param source  The file to copy
+     * @param target  The copy
+     * @param options The copy options
+     * @return the target
+     * @throws IOException if the file cannot be copied
+     */
+    public Path copy(final Path source, final Path target, final CopyOption... options) throws IOException {
+        Files.copy(source, target, options);
+        notify(written(target));
+        return target;
+    }
+
+    /**
+     * Copy a stream to a file, see {@link Files#copy(InputStream, Path, CopyOption...)}.
+     *
+     * @param in      The stream to copy
+     * @param target  The file to write
+     * @param options The copy options
+     * @return the number of bytes copied
+     * @throws IOException if the stream cannot be copied
+     */
+    public long copy(final InputStream in, final Path target, final CopyOption... options) throws IOException {
+        final long count = Files.copy(in, target, options);
+        notify(written(target));
+        return count;
+    }
+
+    /**
+     * Move a file or directory, see {@link Files#move(Path, Path, CopyOption...)}.
+     *
+     * @param source  The file or directory to move
+     * @param target  The new location
+     * @param options The copy options
+     * @return the target
+     * @throws IOException if the file cannot be moved
+     */
+    public Path move(final Path source, final Path target, final CopyOption... options) throws IOException {
+        Files.move(source, target, options);
+        final NIOFileChange moved = written(target);
+        if (moved.isDirectory()) {
+            trigger(source, target);
+        } else {
+            notify(deleted(source), moved);
+        }
+        return target;
+    }
+
+    /**
+     * Delete a file or empty directory, see {@link Files#delete(Path)}.
+     *
+     * @param path The file or directory to delete
+     * @throws IOException if the file cannot be deleted
+     */
+    public void delete(final Path path) throws IOException {
+        Files.delete(path);
+        notify(deleted(path));
+    }
+
+    /**
+     * Delete a file or empty directory if it exists, see {@link Files#deleteIfExists(Path)}.
+     *
+     * @param path The file or directory to delete
+     * @return true if the file was deleted
+     * @throws IOException if the file cannot be deleted
+     */
+    public boolean deleteIfExists(final Path path) throws IOException {
+        final boolean deleted = Files.deleteIfExists(path);
+        if (deleted) {
+            notify(deleted(path));
+        }
+        return deleted;
+    }
+
+    /**
+     * Write bytes to a file, see {@link Files#write(Path, byte[], OpenOption...)}.
+     *
+     * @param path    The file to write
+     * @param bytes   The bytes to write
+     * @param options The open options
+     * @return the path
+     * @throws IOException if the file cannot be written
+     */
+    public Path write(final Path path, final byte[] bytes, final OpenOption... options) throws IOException {
+        Files.write(path, bytes, options);
+        notify(written(path));
+        return path;
+    }
+
+    /**
+     * Create a directory, see {@link Files#createDirectory(Path, FileAttribute[])}.
+     *
+     * @param dir   The directory to create
+     * @param attrs The file attributes
+     * @return the directory
+     * @throws IOException if the directory cannot be created
+     */
+    public Path createDirectory(final Path dir, final FileAttribute<?>... attrs) throws IOException {
+        Files.createDirectory(dir, attrs);
+        notify(written(dir));
+        return dir;
+    }
+
+    /**
+     * Create a directory and its missing parents, see
+     * {@link Files#createDirectories(Path, FileAttribute[])}.
+     *
+     * @param dir   The directory to create
+     * @param attrs The file attributes
+     * @return the directory
+     * @throws IOException if the directory cannot be created
+     */
+    public Path createDirectories(final Path dir, final FileAttribute<?>... attrs) throws IOException {
+        Files.createDirectories(dir, attrs);
+        notify(written(dir));
+        return dir;
+    }
+
+    /**
+     * Report a path modified by another means; since the change is not
+     * known, the observers check the path with a trigger.
+     *
+     * @param path The created, modified or deleted file or directory
+     */
+    public void changed(final Path path) {
+        trigger(path);
+    }
+
+    private static NIOFileChange written(final Path path) throws IOException {
+        final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        return new NIOFileChange(NIOFileChange.Kind.CHANGE, path, attributes.isDirectory(),
+                attributes.isDirectory() ? 0 : attributes.size(), attributes.lastModifiedTime().toMillis());
+    }
+
+    private static NIOFileChange deleted(final Path path) {
+        return new NIOFileChange(NIOFileChange.Kind.DELETE, path, false, 0, 0);
+    }
+
+    private void notify(final NIOFileChange... changes) {
+        final List<NIOFileChange> list = Arrays.asList(changes);
+        for (final NIOFileAlterationObserver observer : observers) {
+            for (final NIOFileChange change : changes) {
+                if (observer.toObservedPath(change.getFile()) != null) {
+                    observer.notifyChanges(list);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Check paths with a single trigger per observer.
+     */
+    private void trigger(final Path... paths) {
+        for (final NIOFileAlterationObserver observer : observers) {
+            long ticket = 0;
+            for (final Path path : paths) {
+                final Path observed = observer.toObservedPath(path);
+                if (observed != null) {
+                    ticket = observer.requestTrigger(observed);
+                }
+            }
+            if (ticket > 0) {
+                observer.runTriggers(ticket);
+            }
+        }
+    }
+}
@@ -158,6 +158,21 @@ public abstract class AbstractMonitorTestCase {
         return file;
     }
 
+    /**
+     * Writes a file of a given length and last modified date/time, creating
+     * its parent directories if needed.
+     *
+     * @param file         The file to write
+     * @param length       The number of bytes to write
+     * @param lastModified The last modified time in milliseconds
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(final Path file, final int length, final long lastModified) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, new byte[length]);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(lastModified));
+    }
+
     public long getLastModifiedTime(Path file) {
         long lastModified = 0;
         try {
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link NIOFileAlterationObserver#checkAndNotifyAsync(java.util.concurrent.Executor)} Test Case.
+ */
+public class AsyncCheckTestCase {
+
+    @TempDir
+    protected Path tempDir;
+
+    private volatile boolean failing;
+
+    /**
+     * Test the result of a check, with a subtree failing to list.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testScanResult() throws Exception {
+        final Path broken = Files.createDirectory(tempDir.resolve("broken"));
+        Files.write(broken.resolve("x.txt"), new byte[1]);
+        final NIOFileAlterationObserver observer = new NIOFileAlterationObserver(tempDir, path -> {
+            if (failing && path.getParent().equals(broken)) {
+                throw new IOException("Listing failed");
+            }
+            return true;
+        });
+        final CollectionFileListener listener = new CollectionFileListener(true);
+        observer.addListener(listener);
+        observer.initialize();
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Path created = Files.write(tempDir.resolve("new.txt"), new byte[2]);
+            failing = true;
+            final NIOScanResult result = observer.checkAndNotifyAsync(executor).get(5, TimeUnit.SECONDS);
+            assertEquals(1, result.getChanges().size(), "Changes");
+            assertEquals(created, result.getChanges().getCreates().get(0).getFile(), "Created");
+            assertEquals(Collections.singletonList(created), listener.getCreatedFiles(), "Listeners notified");
+            assertEquals(Collections.singletonList(broken), result.getFailedSubtrees(), "Failed subtree");
+            assertFalse(result.isComplete(), "Incomplete");
+            assertTrue(listener.getDeletedFiles().isEmpty(), "Failed subtree not deleted");
+            assertEquals(2, result.getRequestCount(), "Requests");
+            assertTrue(result.getDuration(TimeUnit.NANOSECONDS) > 0, "Duration");
+
+            failing = false;
+            final Path y = Files.write(broken.resolve("y.txt"), new byte[3]);
+            final NIOScanResult next = observer.checkAndNotifyAsync(executor).get(5, TimeUnit.SECONDS);
+            assertEquals(Collections.singletonList(y), listener.getCreatedFiles(), "Subtree checked again");
+            assertTrue(next.isComplete(), "Complete");
+            assertEquals(observer.getLastRequestCount(), next.getRequestCount(), "Same count as the observer");
+
+            observer.addListener(new NIOFileAlterationListenerAdaptor() {
+                @Override
+                public void onFileDelete(final Path file) {
+                    throw new IllegalStateException("Listener failed");
+                }
+            });
+            Files.delete(y);
+            final ExecutionException e = assertThrows(ExecutionException.class,
+                    () -> observer.checkAndNotifyAsync(executor).get(5, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof IllegalStateException, "Listener exception");
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Test a check run while the observed directory is still being listed is marked skipped.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSkipped() throws Exception {
+        Files.write(tempDir.resolve("x.txt"), new byte[1]);
+        final NIOFileAlterationObserver observer = new NIOFileAlterationObserver(tempDir);
+        final List<Runnable> listings = new ArrayList<>();
+        observer.initializeAsync(listings::add);
+        final NIOScanResult skipped = observer.checkAndNotifyAsync(Runnable::run).get(5, TimeUnit.SECONDS);
+        assertTrue(skipped.isSkipped(), "Skipped");
+        assertFalse(skipped.isComplete(), "Not complete");
+        assertEquals(0, skipped.getChanges().size(), "No changes");
+
+        while (!listings.isEmpty()) {
+            listings.remove(0).run();
+        }
+        final NIOScanResult result = observer.checkAndNotifyAsync(Runnable::run).get(5, TimeUnit.SECONDS);
+        assertFalse(result.isSkipped(), "Ran");
+        assertTrue(result.isComplete(), "Complete");
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link NIOFileAlterationObserver#initializeAsync(Executor)} Test Case.
+ */
+public class AsyncInitializationTestCase {
+
+    @TempDir
+    protected Path testDir;
+
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+    private final Executor executor = tasks::add;
+
+    /**
+     * Test loaded subtrees fire events while the others are still loading.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testProgressiveInitialization() throws Exception {
+        final Path dirA = Files.createDirectory(testDir.resolve("a"));
+        final Path dirB = Files.createDirectory(testDir.resolve("b"));
+        write(dirA.resolve("one.txt"));
+        write(dirB.resolve("two.txt"));
+
+        final CollectionFileListener listener = new CollectionFileListener(true);
+        final NIOFileAlterationObserver observer = new NIOFileAlterationObserver(testDir);
+        observer.addListener(listener);
+        observer.initializeAsync(executor);
+        assertFalse(observer.getReadyFuture().isDone(), "Not ready");
+
+        observer.checkAndNotify();
+        assertTrue(listener.getCreatedFiles().isEmpty(), "Nothing before the root is listed");
+
+        tasks.poll().run();
+        assertEquals(2, tasks.size(), "One task per subtree");
+        assertEquals(0.0, observer.getInitializationProgress(), "No subtree loaded");
+
+        tasks.poll().run();
+        assertEquals(0.5, observer.getInitializationProgress(), "One subtree loaded");
+
+        final Path newA = write(dirA.resolve("new.txt"));
+        write(dirB.resolve("new.txt"));
+        observer.checkAndNotify();
+        assertEquals(Collections.singletonList(newA), listener.getCreatedFiles(), "Loaded subtree fires events");
+
+        tasks.poll().run();
+        assertTrue(observer.getReadyFuture().isDone(), "Ready");
+        assertEquals(1.0, observer.getInitializationProgress(), "All loaded");
+        assertEquals(4, observer.getIndex().getCount(""), "Whole baseline");
+
+        observer.checkAndNotify();
+        assertTrue(listener.getCreatedFiles().isEmpty(), "Late subtree loaded as baseline");
+    }
+
+    /**
+     * Test the listings made by the loading tasks are counted apart from the checks.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testLoadCounters() throws Exception {
+        Files.createDirectory(testDir.resolve("a"));
+        final Path dirB = Files.createDirectory(testDir.resolve("b"));
+        write(dirB.resolve("two.txt"));
+        final NIOFileAlterationObserver observer = new NIOFileAlterationObserver(testDir, path -> {
+            if (path.getParent().equals(dirB)) {
+                throw new IOException("Listing failed");
+            }
+            return true;
+        });
+        observer.initializeAsync(executor);
+        tasks.poll().run();
+        observer.checkAndNotify();
+        assertEquals(1, observer.getLastRequestCount(), "Only the root listed by the check");
+
+        tasks.poll().run();
+        tasks.poll().run();
+        assertEquals(3, observer.getInitializationRequestCount(), "Listings of the load");
+        assertEquals(Collections.singletonList(dirB), observer.getInitializationFailedSubtrees(), "Failed load");
+        assertEquals(1, observer.getLastRequestCount(), "Check results unchanged");
+        assertTrue(observer.getLastFailedSubtrees().isEmpty(), "Check results unchanged");
+    }
+
+    /**
+     * Test a subtree deleted while loading is reported once.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSubtreeDeletedWhileLoading() throws Exception {
+        final Path dirA = Files.createDirectory(testDir.resolve("a"));
+        write(dirA.resolve("one.txt"));
+
+        final CollectionFileListener listener = new CollectionFileListener(true);
+        final NIOFileAlterationObserver observer = new NIOFileAlterationObserver(testDir);
+        observer.addListener(listener);
+        observer.initializeAsync(executor);
+        tasks.poll().run();
+
+        Files.delete(dirA.resolve("one.txt"));
+        Files.delete(dirA);
+        observer.checkAndNotify();
+        assertEquals(Arrays.asList(dirA), listener.getDeletedDirectories(), "Deleted");
+        assertTrue(observer.getReadyFuture().isDone(), "Ready once nothing is pending");
+
+        tasks.poll().run();
+        assertEquals(0, observer.getIndex().getCount(""), "Late result discarded");
+    }
+
+    private static Path write(final Path file) throws IOException {
+        return Files.write(file, new byte[1]);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link NIOBatchingListener} Test Case.
+ */
+public class BatchListenerTestCase {
+
+    @TempDir
+    protected Path tempDir;
+
+    /**
+     * Test the changes of a check are delivered in change sets.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testChangeSets() throws Exception {
+        final List<NIOFileChangeSet> sets = new ArrayList<>();
+        final NIOFileAlterationObserver observer = new NIOFileAlterationObserver(tempDir);
+        observer.addListener(new NIOBatchingListener((source, changes) -> {
+            assertSame(observer, source, "Observer");
+            sets.add(changes);
+        }, 2));
+        observer.initialize();
+
+        observer.checkAndNotify();
+        assertEquals(1, sets.size(), "One change set per check");
+        assertTrue(sets.get(0).isEmpty() && sets.get(0).isLast(), "Nothing changed");
+
+        sets.clear();
+        for (int i = 0; i < 5; i++) {
+            Files.write(tempDir.resolve("file" + i + ".txt"), new byte[i]);
+        }
+        observer.checkAndNotify();
+        assertEquals(3, sets.size(), "Batches");
+        assertEquals(Arrays.asList(2, 2, 1), Arrays.asList(sets.get(0).size(), sets.get(1).size(), sets.get(2).size()), "Batch sizes");
+        assertEquals(Arrays.asList(false, false, true), Arrays.asList(sets.get(0).isLast(), sets.get(1).isLast(), sets.get(2).isLast()), "Last");
+        assertEquals(4, sets.get(2).getCreates().get(0).getLength(), "Attributes");
+
+        final List<NIOFileChangeSet> unbounded = new ArrayList<>();
+        observer.addListener(new NIOBatchingListener((source, changes) -> unbounded.add(changes)));
+        Files.write(tempDir.resolve("file1.txt"), new byte[10]);
+        Files.delete(tempDir.resolve("file2.txt"));
+        Files.write(tempDir.resolve("file5.txt"), new byte[5]);
+        observer.checkAndNotify();
+        assertEquals(1, unbounded.size(), "Single change set");
+        final NIOFileChangeSet set = unbounded.get(0);
+        assertEquals(tempDir.resolve("file5.txt"), set.getCreates().get(0).getFile(), "Creates");
+        assertEquals(tempDir.resolve("file1.txt"), set.getChanges().get(0).getFile(), "Changes");
+        assertEquals(tempDir.resolve("file2.txt"), set.getDeletes().get(0).getFile(), "Deletes");
+        assertEquals(3, set.size(), "Size");
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link NIOChangePublisher} Test Case.
+ */
+public class ChangePublisherTestCase {
+
+    @TempDir
+    protected Path tempDir;
+
+    /**
+     * Test a subscriber requesting less pauses the check.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testBackpressure() throws Exception {
+        final NIOFileAlterationObserver observer = new NIOFileAlterationObserver(tempDir);
+        final NIOChangePublisher publisher = new NIOChangePublisher(3);
+        observer.addListener(publisher);
+        observer.initialize();
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(2);
+
+        for (int i = 0; i < 10; i++) {
+            Files.write(tempDir.resolve("file" + i + ".txt"), new byte[i]);
+        }
+        final CompletableFuture<Void> check = CompletableFuture.runAsync(observer::checkAndNotify);
+        assertThrows(TimeoutException.class, () -> check.get(300, TimeUnit.MILLISECONDS), "Check paused");
+        assertEquals(2, subscriber.changes.size(), "Requested changes");
+
+        subscriber.subscription.request(4);
+        assertThrows(TimeoutException.class, () -> check.get(300, TimeUnit.MILLISECONDS), "Check paused");
+        assertEquals(6, subscriber.changes.size(), "Requested changes");
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        check.get(5, TimeUnit.SECONDS);
+        assertEquals(10, subscriber.changes.size(), "All changes");
+        for (int i = 0; i < 10; i++) {
+            assertEquals(tempDir.resolve("file" + i + ".txt"), subscriber.changes.get(i).getFile(), "In order");
+            assertEquals(NIOFileChange.Kind.CREATE, subscriber.changes.get(i).getKind(), "Typed");
+        }
+
+        publisher.close();
+        assertTrue(subscriber.completed, "Completed");
+        assertEquals(0, publisher.getSubscriberCount(), "No subscriber left");
+    }
+
+    /**
+     * Test cancelled and invalid subscriptions no longer hold up the checks.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testCancel() throws Exception {
+        final NIOFileAlterationObserver observer = new NIOFileAlterationObserver(tempDir);
+        final NIOChangePublisher publisher = new NIOChangePublisher(1);
+        observer.addListener(publisher);
+        observer.initialize();
+        final RecordingSubscriber cancelled = new RecordingSubscriber();
+        final RecordingSubscriber invalid = new RecordingSubscriber();
+        publisher.subscribe(cancelled);
+        publisher.subscribe(invalid);
+        cancelled.subscription.request(1);
+        invalid.subscription.request(0);
+        assertTrue(invalid.error instanceof IllegalArgumentException, "Non-positive request");
+
+        Files.write(tempDir.resolve("one.txt"), new byte[1]);
+        Files.write(tempDir.resolve("two.txt"), new byte[2]);
+        Files.write(tempDir.resolve("three.txt"), new byte[3]);
+        final CompletableFuture<Void> check = CompletableFuture.runAsync(observer::checkAndNotify);
+        assertThrows(TimeoutException.class, () -> check.get(300, TimeUnit.MILLISECONDS), "Check paused");
+        cancelled.subscription.cancel();
+        check.get(5, TimeUnit.SECONDS);
+        assertEquals(1, cancelled.changes.size(), "Requested change");
+        assertTrue(invalid.changes.isEmpty(), "Nothing after error");
+        assertEquals(0, publisher.getSubscriberCount(), "No subscriber left");
+    }
+
+    /**
+     * Test closing the publisher or waiting too long releases a paused check.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testCloseAndMaxWait() throws Exception {
+        final NIOFileAlterationObserver observer = new NIOFileAlterationObserver(tempDir);
+        final NIOChangePublisher publisher = new NIOChangePublisher(1);
+        observer.addListener(publisher);
+        observer.initialize();
+        final RecordingSubscriber slow = new RecordingSubscriber();
+        publisher.subscribe(slow);
+
+        Files.write(tempDir.resolve("one.txt"), new byte[1]);
+        Files.write(tempDir.resolve("two.txt"), new byte[2]);
+        final CompletableFuture<Void> check = CompletableFuture.runAsync(observer::checkAndNotify);
+        assertThrows(TimeoutException.class, () -> check.get(300, TimeUnit.MILLISECONDS), "Check paused");
+        publisher.close();
+        check.get(5, TimeUnit.SECONDS);
+        slow.subscription.request(Long.MAX_VALUE);
+        assertEquals(1, slow.changes.size(), "Buffered change");
+        assertTrue(slow.completed, "Completed");
+
+        final NIOChangePublisher bounded = new NIOChangePublisher(1, 200, TimeUnit.MILLISECONDS);
+        observer.addListener(bounded);
+        final RecordingSubscriber stalled = new RecordingSubscriber();
+        bounded.subscribe(stalled);
+        Files.write(tempDir.resolve("three.txt"), new byte[3]);
+        Files.write(tempDir.resolve("four.txt"), new byte[4]);
+        CompletableFuture.runAsync(observer::checkAndNotify).get(5, TimeUnit.SECONDS);
+        assertTrue(stalled.error instanceof IllegalStateException, "Failed once the wait is over");
+        assertEquals(0, bounded.getSubscriberCount(), "No subscriber left");
+    }
+
+    /**
+     * Test a subscriber failed while it is being signalled a change gets the
+     * error only once it returns.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testFailSerialized() throws Exception {
+        final NIOFileAlterationObserver observer = new NIOFileAlterationObserver(tempDir);
+        final NIOChangePublisher publisher = new NIOChangePublisher(1, 500, TimeUnit.MILLISECONDS);
+        observer.addListener(publisher);
+        observer.initialize();
+        final CountDownLatch signalled = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicBoolean overlapped = new AtomicBoolean();
+        final RecordingSubscriber slow = new RecordingSubscriber() {
+            private volatile boolean inNext;
+
+            @Override
+            public void onNext(final NIOFileChange change) {
+                inNext = true;
+                signalled.countDown();
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.onNext(change);
+                inNext = false;
+            }
+
+            @Override
+            public void onError(final Throwable error) {
+                overlapped.compareAndSet(false, inNext);
+                super.onError(error);
+            }
+        };
+        publisher.subscribe(slow);
+        for (int i = 0; i < 3; i++) {
+            Files.write(tempDir.resolve("file" + i + ".txt"), new byte[i]);
+        }
+
+        final Thread check = new Thread(observer::checkAndNotify);
+        check.start();
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (check.getState() != Thread.State.TIMED_WAITING && System.currentTimeMillis() < deadline) {
+            Thread.yield();
+        }
+        final Thread requester = new Thread(() -> slow.subscription.request(1));
+        requester.start();
+        assertTrue(signalled.await(5, TimeUnit.SECONDS), "Signalled from the requesting thread");
+        check.join(5000);
+        assertFalse(check.isAlive(), "Check not held");
+        assertNull(slow.error, "Not failed while signalled a change");
+        release.countDown();
+        requester.join(5000);
+        assertTrue(slow.error instanceof IllegalStateException, "Failed once the change returned");
+        assertFalse(overlapped.get(), "Signals serialized");
+    }
+
+    /**
+     * Records what it receives.
+     */
+    private static class RecordingSubscriber implements Subscriber<NIOFileChange> {
+
+        private final List<NIOFileChange> changes = new CopyOnWriteArrayList<>();
+        private volatile Subscription subscription;
+        private volatile Throwable error;
+        private volatile boolean completed;
+
+        @Override
+        public void onSubscribe(final Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(final NIOFileChange change) {
+            changes.add(change);
+        }
+
+        @Override
+        public void onError(final Throwable error) {
+            this.error = error;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link NIOClusterCoordinator} Test Case.
+ */
+public class ClusterTestCase {
+
+    private static final int SHARDS = 8;
+
+    @TempDir
+    protected Path tempDir;
+
+    /**
+     * Test in-memory leases are exclusive until they expire.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testLeases() throws Exception {
+        final NIOLeaseStore store = new NIOInMemoryLeaseStore();
+        assertTrue(store.tryAcquire("shard/0", "a", 50));
+        assertFalse(store.tryAcquire("shard/0", "b", 50), "Held by another owner");
+        assertTrue(store.tryAcquire("shard/0", "a", 50), "Renewed");
+        assertEquals(Collections.singletonMap("shard/0", "a"), store.getOwners("shard/"));
+        Thread.sleep(100);
+        assertTrue(store.getOwners("shard/").isEmpty(), "Expired");
+        assertTrue(store.tryAcquire("shard/0", "b", 50), "Acquired once expired");
+        store.release("shard/0", "a");
+        assertFalse(store.tryAcquire("shard/0", "a", 50), "Only released by its owner");
+    }
+
+    /**
+     * Test a corrupted lease file counts as an expired lease.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testCorruptedLease() throws Exception {
+        final NIOFileLeaseStore store = new NIOFileLeaseStore(tempDir.resolve("leases"));
+        assertTrue(store.tryAcquire("shard/0", "a", 60000));
+        try (DirectoryStream<Path> leases = Files.newDirectoryStream(tempDir.resolve("leases"), "*.lease")) {
+            for (final Path lease : leases) {
+                Files.write(lease, "a\n12ab".getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        assertTrue(store.getOwners("shard/").isEmpty(), "Expired");
+        assertTrue(store.tryAcquire("shard/0", "b", 60000), "Acquired by another owner");
+        assertEquals(Collections.singletonMap("shard/0", "b"), store.getOwners("shard/"));
+    }
+
+    /**
+     * Test nodes split the shards, each observing only its own, and take
+     * over the shards of a node that leaves.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSharding() throws Exception {
+        final Path bucket = Files.createDirectory(tempDir.resolve("bucket"));
+        for (int i = 0; i < 16; i++) {
+            Files.createDirectory(bucket.resolve("prefix" + i));
+        }
+        final NIOLeaseStore store = new NIOFileLeaseStore(tempDir.resolve("leases"));
+        final NIOClusterCoordinator nodeA = new NIOClusterCoordinator(store, "a", SHARDS, 60000);
+        final NIOClusterCoordinator nodeB = new NIOClusterCoordinator(store, "b", SHARDS, 60000);
+        final CollectionFileListener listenerA = new CollectionFileListener(true);
+        final CollectionFileListener listenerB = new CollectionFileListener(true);
+        final NIOFileAlterationObserver observerA = observer(bucket, listenerA);
+        final NIOFileAlterationObserver observerB = observer(bucket, listenerB);
+        nodeA.addObserver(observerA);
+        nodeB.addObserver(observerB);
+
+        nodeA.rebalance();
+        assertEquals(SHARDS, nodeA.getOwnedShards().cardinality(), "Single node owns all shards");
+        nodeB.rebalance();
+        assertTrue(nodeB.getOwnedShards().isEmpty(), "No free shard yet");
+        nodeA.rebalance();
+        nodeB.rebalance();
+        assertEquals(SHARDS / 2, nodeA.getOwnedShards().cardinality(), "Balanced");
+        assertEquals(SHARDS / 2, nodeB.getOwnedShards().cardinality(), "Balanced");
+        assertFalse(nodeA.getOwnedShards().intersects(nodeB.getOwnedShards()), "Disjoint");
+
+        observerA.initialize();
+        observerB.initialize();
+        final Set<Path> files = new HashSet<>();
+        for (int i = 0; i < 16; i++) {
+            final Path file = Files.write(bucket.resolve("prefix" + i).resolve("file.txt"), new byte[1]);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 3600000L));
+            files.add(file);
+        }
+        observerA.checkAndNotify();
+        observerB.checkAndNotify();
+        assertTrue(Collections.disjoint(listenerA.getCreatedFiles(), listenerB.getCreatedFiles()), "No double work");
+        final Set<Path> created = new HashSet<>(listenerA.getCreatedFiles());
+        created.addAll(listenerB.getCreatedFiles());
+        assertEquals(files, created, "Every prefix observed");
+        for (final Path file : listenerA.getCreatedFiles()) {
+            assertTrue(owns(nodeA, file), "Owned shard");
+        }
+
+        final Path handedOver = listenerB.getCreatedFiles().iterator().next().getParent();
+        nodeB.close();
+        final Path missed = Files.write(handedOver.resolve("missed.txt"), new byte[1]);
+        nodeA.rebalance();
+        assertEquals(SHARDS, nodeA.getOwnedShards().cardinality(), "Shards taken over");
+        observerA.checkAndNotify();
+        assertEquals(Collections.singletonList(missed), listenerA.getCreatedFiles(),
+                "Taken over shards loaded, reporting the changes made during the handover");
+        final Path late = Files.write(bucket.resolve("prefix0").resolve("late.txt"), new byte[1]);
+        observerA.checkAndNotify();
+        assertEquals(Collections.singletonList(late), listenerA.getCreatedFiles(), "Taken over shards observed");
+        nodeA.close();
+    }
+
+    private static boolean owns(final NIOClusterCoordinator node, final Path file) {
+        final BitSet owned = node.getOwnedShards();
+        final String prefix = file.getParent().getFileName().toString();
+        return owned.get(NIOFileAlterationObserver.shardOf(prefix, SHARDS));
+    }
+
+    private static NIOFileAlterationObserver observer(final Path directory, final NIOFileAlterationListener listener) {
+        final NIOFileAlterationObserver observer = new NIOFileAlterationObserver(directory);
+        observer.addListener(listener);
+        return observer;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link NIODebouncingListener} Test Case.
+ */
+public class DebounceTestCase {
+
+    @TempDir
+    protected Path tempDir;
+
+    /**
+     * Test a burst of changes is delivered once settled.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDebounce() throws Exception {
+        final List<NIOFileChange> delivered = new CopyOnWriteArrayList<>();
+        final CollectionFileListener listener = new CollectionFileListener(true);
+        final NIODebouncingListener debouncer = new NIODebouncingListener(300);
+        debouncer.addListener(listener);
+        debouncer.addListener(new NIOFileChangeListener() {
+            @Override
+            public void onChange(final NIOFileChange change) {
+                delivered.add(change);
+            }
+
+            @Override
+            public void onStart(final NIOFileAlterationObserver observer) {
+            }
+
+            @Override
+            public void onDirectoryCreate(final Path directory) {
+            }
+
+            @Override
+            public void onDirectoryChange(final Path directory) {
+            }
+
+            @Override
+            public void onDirectoryDelete(final Path directory) {
+            }
+
+            @Override
+            public void onFileCreate(final Path file) {
+            }
+
+            @Override
+            public void onFileChange(final Path file) {
+            }
+
+            @Override
+            public void onFileDelete(final Path file) {
+            }
+
+            @Override
+            public void onStop(final NIOFileAlterationObserver observer) {
+            }
+        });
+        final NIOFileAlterationObserver observer = new NIOFileAlterationObserver(tempDir);
+        observer.addListener(debouncer);
+        observer.initialize();
+
+        final Path one = Files.write(tempDir.resolve("one.txt"), new byte[1]);
+        observer.checkAndNotify();
+        final Path two = Files.write(tempDir.resolve("two.txt"), new byte[2]);
+        observer.checkAndNotify();
+        Files.write(one, new byte[10]);
+        Files.delete(two);
+        observer.checkAndNotify();
+        assertTrue(delivered.isEmpty(), "Held back");
+        assertEquals(1, debouncer.getPendingCount(), "Created then deleted cancels out");
+
+        // released by the timer, without waiting for another check
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (delivered.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, delivered.size(), "Single change per burst");
+        assertEquals(NIOFileChange.Kind.CREATE, delivered.get(0).getKind(), "Create then change is a create");
+        assertEquals(10, delivered.get(0).getLength(), "Settled attributes");
+        assertEquals(Collections.singletonList(one), listener.getCreatedFiles(), "Per-event listener");
+        assertEquals(0, debouncer.getPendingCount(), "Nothing pending");
+
+        final Path three = Files.write(tempDir.resolve("three.txt"), new byte[3]);
+        observer.checkAndNotify();
+        assertEquals(1, debouncer.getPendingCount(), "Held back");
+        debouncer.close();
+        assertEquals(2, delivered.size(), "Flushed on close");
+        assertEquals(three, delivered.get(1).getFile(), "Pending change delivered");
+        Files.delete(three);
+        observer.checkAndNotify();
+        assertEquals(3, delivered.size(), "Delivered right away once closed");
+    }
+
+    /**
+     * Test how successive changes collapse.
+     */
+    @Test
+    public void testCoalesce() {
+        final Path file = Paths.get("file");
+        final NIOFileChange create = new NIOFileChange(NIOFileChange.Kind.CREATE, file, false, 1, 1);
+        final NIOFileChange change = new NIOFileChange(NIOFileChange.Kind.CHANGE, file, false, 2, 2);
+        final NIOFileChange delete = new NIOFileChange(NIOFileChange.Kind.DELETE, file, false, 2, 2);
+        final NIOFileChange createDirectory = new NIOFileChange(NIOFileChange.Kind.CREATE, file, true, 0, 3);
+
+        assertEquals(NIOFileChange.Kind.CREATE, NIOFileChange.coalesce(create, change).getKind(), "Create, change");
+        assertEquals(2, NIOFileChange.coalesce(create, change).getLength(), "Later attributes");
+        assertNull(NIOFileChange.coalesce(create, delete), "Create, delete");
+        assertSame(delete, NIOFileChange.coalesce(change, delete), "Change, delete");
+        assertEquals(NIOFileChange.Kind.CHANGE, NIOFileChange.coalesce(delete, create).getKind(), "Delete, create");
+        assertSame(createDirectory, NIOFileChange.coalesce(delete, createDirectory), "Type changed");
+    }
+}
@@ -27,6 +27,7 @@ import java.util.Collection;
 import java.util.Iterator;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -167,6 +168,35 @@ public class FileAlterationMonitorTestCase extends AbstractMonitorTestCase {
         monitor.stop();
     }
 
+    /**
+     * Test starting without waiting for the observers to initialize.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testStartAsync() throws Exception {
+        final long interval = 100;
+        listener.clear();
+        final NIOFileAlterationObserver asyncObserver = new NIOFileAlterationObserver(testDir);
+        asyncObserver.addListener(listener);
+        final NIOFileAlterationMonitor monitor = new NIOFileAlterationMonitor(interval, asyncObserver);
+        monitor.setInitializationThreads(2);
+        monitor.startAsync().get(5, TimeUnit.SECONDS);
+        assertTrue(asyncObserver.getReadyFuture().isDone(), "Ready");
+
+        try {
+            monitor.startAsync(); // try and start again
+            fail("Expected IllegalStateException");
+        } catch (final IllegalStateException e) {
+            // expected result, monitor already running
+        }
+
+        final Path file3 = touch(testDir.resolve("file3.java"));
+        checkFile("Create", file3, listener.getCreatedFiles());
+
+        monitor.stop();
+    }
+
     /**
      * Check all the File Collections have the expected sizes.
      */
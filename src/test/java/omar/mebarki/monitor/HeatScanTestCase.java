@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link NIOFileAlterationObserver#setHeatScan(int, int)} Test Case.
+ */
+public class HeatScanTestCase {
+
+    @TempDir
+    protected Path testDir;
+
+    /**
+     * Test hot directories are listed more often than cold ones, and cold
+     * ones at least every maximum staleness checks.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testHeatScan() throws Exception {
+        final Path hot = Files.createDirectory(testDir.resolve("hot"));
+        final Path cold = Files.createDirectory(testDir.resolve("cold"));
+        final CollectionFileListener listener = new CollectionFileListener(true);
+        final NIOFileAlterationObserver observer = new NIOFileAlterationObserver(testDir);
+        observer.setHeatScan(4, 8);
+        observer.addListener(listener);
+        observer.initialize();
+
+        final Path x = write(cold.resolve("x.txt"));
+        final Path[] hotFiles = {write(hot.resolve("h1.txt")), write(hot.resolve("h2.txt")),
+                write(hot.resolve("h3.txt")), write(hot.resolve("h4.txt"))};
+        for (int i = 1; i < 8; i++) {
+            observer.checkAndNotify();
+            assertTrue(listener.getCreatedFiles().isEmpty(), "No change yet listed at check " + i);
+        }
+        observer.checkAndNotify();
+        final HashSet<Path> expected = new HashSet<>(Arrays.asList(hotFiles));
+        expected.add(x);
+        assertEquals(expected, new HashSet<>(listener.getCreatedFiles()), "Listed once stale");
+
+        final Path h5 = write(hot.resolve("h5.txt"));
+        final Path y = write(cold.resolve("y.txt"));
+        observer.checkAndNotify();
+        assertEquals(Collections.singletonList(h5), listener.getCreatedFiles(), "Hot directory listed");
+        observer.checkAndNotify();
+        assertEquals(Collections.singletonList(y), listener.getCreatedFiles(), "Cooler directory listed later");
+
+        final Path z = write(cold.resolve("z.txt"));
+        int checks = 0;
+        do {
+            observer.checkAndNotify();
+            checks++;
+        } while (listener.getCreatedFiles().isEmpty() && checks < 100);
+        assertEquals(Collections.singletonList(z), listener.getCreatedFiles(), "Cold directory listed");
+        assertTrue(checks <= 8, "Maximum staleness: " + checks);
+    }
+
+    /**
+     * Test every directory is listed by every check by default.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDisabled() throws Exception {
+        final Path dir = Files.createDirectory(testDir.resolve("dir"));
+        final CollectionFileListener listener = new CollectionFileListener(true);
+        final NIOFileAlterationObserver observer = new NIOFileAlterationObserver(testDir);
+        observer.addListener(listener);
+        observer.initialize();
+        final Path file = write(dir.resolve("file.txt"));
+        observer.checkAndNotify();
+        assertEquals(Collections.singletonList(file), listener.getCreatedFiles(), "Listed");
+    }
+
+    private static Path write(final Path file) throws IOException {
+        return Files.write(file, new byte[1]);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+import static omar.mebarki.monitor.AbstractMonitorTestCase.write;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link NIOInventoryLoader} Test Case.
+ */
+public class InventoryLoaderTestCase {
+
+    private static final long INVENTORY_DATE = 3000L;
+
+    @TempDir
+    protected Path tempDir;
+
+    private Path testDir;
+
+    private Path inventoryDir;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        testDir = Files.createDirectory(tempDir.resolve("bucket"));
+        inventoryDir = Files.createDirectory(tempDir.resolve("inventory"));
+    }
+
+    /**
+     * Test the baseline is loaded from the inventory and only newer changes are reported.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testInventoryBaseline() throws Exception {
+        write(testDir.resolve("a").resolve("one.txt"), 10, 1000L);
+        write(testDir.resolve("a").resolve("two words.txt"), 20, 1000L);
+        write(testDir.resolve("b").resolve("three.txt"), 35, 5000L);
+        write(testDir.resolve("b").resolve("unlisted.txt"), 5, 1000L);
+        write(testDir.resolve("c").resolve("new.txt"), 40, 5000L);
+
+        writeDataFile("data/part-0.csv.gz",
+                "\"bucket\",\"a/one.txt\",\"10\",\"1970-01-01T00:00:01.000Z\",\"etag1\"",
+                "\"bucket\",\"a/two+words.txt\",\"20\",\"1970-01-01T00:00:01.000Z\",\"etag2\"");
+        writeDataFile("data/part-1.csv.gz",
+                "\"bucket\",\"b/three.txt\",\"30\",\"1970-01-01T00:00:01.000Z\",\"etag3\"",
+                "\"bucket\",\"d/gone.txt\",\"50\",\"1970-01-01T00:00:01.000Z\",\"etag4\"");
+        final Path manifest = writeManifest("CSV", "data/part-0.csv.gz", "data/part-1.csv.gz");
+
+        final CollectionFileListener listener = new CollectionFileListener(true);
+        final NIOFileAlterationObserver observer = new NIOFileAlterationObserver(testDir);
+        observer.setSnapshotLoader(new NIOInventoryLoader(manifest, inventoryDir));
+        observer.addListener(listener);
+        observer.initialize();
+
+        final NIOSnapshotIndex index = observer.getIndex();
+        assertEquals(4, index.getCount(""), "Inventory count");
+        assertEquals(30, index.lookup("b/three.txt").getLength(), "Inventory length");
+        assertEquals(1000L, index.lookup("a/two words.txt").getLastModified(), "Decoded key");
+
+        observer.checkAndNotify();
+        assertEquals(Arrays.asList(testDir.resolve("b").resolve("three.txt")), listener.getChangedFiles(), "Changed");
+        assertEquals(Arrays.asList(testDir.resolve("c").resolve("new.txt")), listener.getCreatedFiles(), "Created");
+        assertEquals(Arrays.asList(testDir.resolve("d").resolve("gone.txt")), listener.getDeletedFiles(), "Deleted");
+        assertEquals(Arrays.asList(testDir.resolve("d")), listener.getDeletedDirectories(), "Deleted directory");
+        assertTrue(listener.getChangedDirectories().isEmpty(), "Directories reconciled silently");
+        assertEquals(5, index.getCount(""), "Reconciled count");
+
+        write(testDir.resolve("a").resolve("one.txt"), 15, 1500L);
+        observer.checkAndNotify();
+        assertEquals(Arrays.asList(testDir.resolve("a").resolve("one.txt")), listener.getChangedFiles(), "Reconciliation over");
+    }
+
+    /**
+     * Test an unsupported inventory format falls back to walking the directory.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testUnsupportedFormat() throws Exception {
+        write(testDir.resolve("a").resolve("one.txt"), 10, 1000L);
+        final Path manifest = writeManifest("ORC", "data/part-0.orc");
+
+        final NIOFileAlterationObserver observer = new NIOFileAlterationObserver(testDir);
+        observer.setSnapshotLoader(new NIOInventoryLoader(manifest, inventoryDir));
+        observer.initialize();
+        assertEquals(1, observer.getIndex().getCount(""), "Walked");
+    }
+
+    private Path writeManifest(final String format, final String... dataFiles) throws IOException {
+        final StringBuilder files = new StringBuilder();
+        for (final String dataFile : dataFiles) {
+            if (files.length() > 0) {
+                files.append(',');
+            }
+            files.append("{\"key\":\"").append(dataFile).append("\",\"size\":1,\"MD5checksum\":\"x\"}");
+        }
+        final Path manifest = inventoryDir.resolve("manifest.json");
+        Files.write(manifest, ("{\"sourceBucket\":\"bucket\",\"version\":\"2016-11-30\","
+                + "\"creationTimestamp\":\"" + INVENTORY_DATE + "\",\"fileFormat\":\"" + format + "\","
+                + "\"fileSchema\":\"Bucket, Key, Size, LastModifiedDate, ETag\","
+                + "\"files\":[" + files + "]}").getBytes(StandardCharsets.UTF_8));
+        return manifest;
+    }
+
+    private void writeDataFile(final String key, final String... rows) throws IOException {
+        final Path file = inventoryDir.resolve(key);
+        Files.createDirectories(file.getParent());
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file));
+             Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+            for (final String row : rows) {
+                writer.write(row);
+                writer.write('\n');
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link NIOFileAlterationObserver#setMoveDetection(boolean)} Test Case.
+ */
+public class MoveDetectionTestCase {
+
+    @TempDir
+    protected Path tempDir;
+
+    /**
+     * Test files moved to another directory are reported as moves.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testFileMove() throws Exception {
+        final Path in = Files.createDirectory(tempDir.resolve("in"));
+        final Path target = Files.createDirectory(tempDir.resolve("target"));
+        final Path a = Files.write(in.resolve("a.txt"), new byte[3]);
+        final Path b = Files.write(in.resolve("b.txt"), new byte[3]);
+        final Path c = Files.write(in.resolve("c.txt"), new byte[5]);
+        final NIOFileAlterationObserver observer = new NIOFileAlterationObserver(tempDir);
+        final MoveRecorder moves = new MoveRecorder();
+        final CollectionFileListener plain = new CollectionFileListener(true);
+        observer.addListener(moves);
+        observer.addListener(plain);
+        observer.setMoveDetection(true);
+        observer.initialize();
+
+        Files.move(a, target.resolve("a.txt"));
+        Files.move(b, target.resolve("b.txt"));
+        Files.move(c, in.resolve("renamed.txt"));
+        final Path d = Files.write(in.resolve("d.txt"), new byte[3]);
+        observer.checkAndNotify();
+        assertEquals(Arrays.asList(a + " -> " + target.resolve("a.txt"), b + " -> " + target.resolve("b.txt")),
+                sorted(moves.moves), "Moves");
+        assertEquals(Arrays.asList(d, in.resolve("renamed.txt")), sorted(moves.getCreatedFiles()),
+                "Same length, other name is not a move");
+        assertEquals(Collections.singletonList(c), moves.getDeletedFiles(), "Deleted");
+        assertEquals(4, plain.getCreatedFiles().size(), "Plain listener creates");
+        assertEquals(3, plain.getDeletedFiles().size(), "Plain listener deletes");
+    }
+
+    /**
+     * Test a directory renamed is reported as a single move.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDirectoryMove() throws Exception {
+        final Path batch = Files.createDirectory(tempDir.resolve("batch1"));
+        Files.write(batch.resolve("x.txt"), new byte[1]);
+        Files.write(Files.createDirectory(batch.resolve("sub")).resolve("y.txt"), new byte[2]);
+        Files.createDirectory(tempDir.resolve("empty"));
+        final NIOFileAlterationObserver observer = new NIOFileAlterationObserver(tempDir);
+        final MoveRecorder moves = new MoveRecorder();
+        observer.addListener(moves);
+        observer.setMoveDetection(true);
+        observer.initialize();
+
+        Files.move(batch, tempDir.resolve("batch2"));
+        Files.move(tempDir.resolve("empty"), tempDir.resolve("other"));
+        observer.checkAndNotify();
+        assertEquals(Collections.singletonList(batch + " -> " + tempDir.resolve("batch2")), moves.moves, "Directory move");
+        assertTrue(moves.getCreatedFiles().isEmpty(), "Contents not created");
+        assertEquals(Collections.singletonList(tempDir.resolve("other")), moves.getCreatedDirectories(), "Empty directory not paired");
+        assertEquals(Collections.singletonList(tempDir.resolve("empty")), moves.getDeletedDirectories(), "Empty directory deleted");
+    }
+
+    private static <T extends Comparable<? super T>> List<T> sorted(final Collection<T> list) {
+        final List<T> sorted = new ArrayList<>(list);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Records the moves.
+     */
+    private static final class MoveRecorder extends CollectionFileListener implements NIOFileMoveListener {
+
+        private static final long serialVersionUID = -5512394027651339468L;
+
+        private final List<String> moves = new ArrayList<>();
+
+        private MoveRecorder() {
+            super(true);
+        }
+
+        @Override
+        public void onStart(final NIOFileAlterationObserver observer) {
+            super.onStart(observer);
+            moves.clear();
+        }
+
+        @Override
+        public void onFileMove(final Path from, final Path to) {
+            moves.add(from + " -> " + to);
+        }
+
+        @Override
+        public void onDirectoryMove(final Path from, final Path to) {
+            moves.add(from + " -> " + to);
+        }
+    }
+}
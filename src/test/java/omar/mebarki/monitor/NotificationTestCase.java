@@ -0,0 +1,236 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link NIONotificationSource} Test Case.
+ */
+public class NotificationTestCase {
+
+    @TempDir
+    protected Path testDir;
+
+    /**
+     * Test parsing notification messages.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testParse() throws Exception {
+        final List<NIOBucketNotification> records = NIOBucketNotification.parse(message("ObjectCreated:Put", "a/my+file%21.txt"));
+        assertEquals(1, records.size());
+        final NIOBucketNotification record = records.get(0);
+        assertEquals("bucket", record.getBucket());
+        assertEquals("a/my file!.txt", record.getKey(), "Decoded key");
+        assertEquals(5, record.getSize());
+        assertEquals(1546300800000L, record.getEventTime());
+        assertFalse(record.isRemoval());
+
+        final String sns = "{\"Type\":\"Notification\",\"Message\":\""
+                + message("ObjectRemoved:Delete", "b.txt").replace("\"", "\\\"") + "\"}";
+        assertTrue(NIOBucketNotification.parse(sns).get(0).isRemoval(), "Delivered through SNS");
+        assertTrue(NIOBucketNotification.parse("{\"Event\":\"s3:TestEvent\"}").isEmpty(), "Test event");
+    }
+
+    /**
+     * Test notifications received by the webhook are applied to the observer.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testWebhook() throws Exception {
+        final Path dir = Files.createDirectory(testDir.resolve("a"));
+        final CollectionFileListener listener = new CollectionFileListener(false);
+        final NIOFileAlterationObserver observer = new NIOFileAlterationObserver(testDir);
+        observer.addListener(listener);
+        observer.initialize();
+
+        final NIOInMemoryNotificationQueue queue = new NIOInMemoryNotificationQueue();
+        final NIONotificationSource source = new NIONotificationSource(queue,
+                notification -> testDir.resolve(notification.getKey()));
+        source.addObserver(observer);
+        final Path file = Files.write(dir.resolve("new.txt"), new byte[5]);
+        try (NIONotificationWebhook webhook = new NIONotificationWebhook(queue, new InetSocketAddress("localhost", 0))) {
+            webhook.start();
+            source.start();
+            final HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + webhook.getPort() + "/")
+                    .openConnection();
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(message("ObjectCreated:Put", "a/new.txt").getBytes(StandardCharsets.UTF_8));
+            }
+            assertEquals(204, connection.getResponseCode());
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (listener.getCreatedFiles().isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        } finally {
+            source.close();
+        }
+        assertEquals(Collections.singletonList(file), listener.getCreatedFiles(), "Applied right away");
+
+        Files.delete(file);
+        assertEquals(1, source.process(Collections.singletonList(message("ObjectRemoved:Delete", "a/new.txt"))));
+        assertEquals(Collections.singletonList(file), listener.getDeletedFiles(), "Removal applied");
+        assertEquals(0, source.process(Collections.singletonList(message("ObjectCreated:Put", "../elsewhere.txt"))),
+                "Key outside the observer");
+    }
+
+    /**
+     * Test the webhook refuses unauthorized and oversized requests and never
+     * queues SNS control messages.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testWebhookRequests() throws Exception {
+        final NIOInMemoryNotificationQueue queue = new NIOInMemoryNotificationQueue();
+        try (NIONotificationWebhook webhook = new NIONotificationWebhook(queue, new InetSocketAddress("localhost", 0))) {
+            webhook.setToken("secret");
+            webhook.setMaxMessageSize(1024);
+            webhook.start();
+            final String message = message("ObjectCreated:Put", "a/new.txt");
+            assertEquals(401, post(webhook, null, null, message), "No token");
+            assertEquals(401, post(webhook, "Bearer other", null, message), "Wrong token");
+            assertEquals(204, post(webhook, "Bearer secret", null, message), "Bearer token");
+            final String basic = "Basic " + Base64.getEncoder().encodeToString("sns:secret".getBytes(StandardCharsets.UTF_8));
+            assertEquals(204, post(webhook, basic, null, message), "Basic password");
+            assertEquals(413, post(webhook, basic, null, message + new String(new char[1024]).replace('\0', ' ')),
+                    "Too large");
+            assertEquals(400, post(webhook, basic, null, "not json"), "Not a message");
+
+            final String confirmation = "{\"Type\":\"SubscriptionConfirmation\","
+                    + "\"SubscribeURL\":\"https://sns.us-east-1.amazonaws.com/?Action=ConfirmSubscription\"}";
+            assertEquals(403, post(webhook, basic, "SubscriptionConfirmation", confirmation), "Subscription refused");
+            webhook.setConfirmSubscriptions(true);
+            assertEquals(403, post(webhook, basic, null, confirmation.replace("sns.us-east-1.amazonaws.com", "localhost")),
+                    "Not an SNS endpoint");
+            assertEquals(200, post(webhook, basic, "UnsubscribeConfirmation", "{\"Type\":\"UnsubscribeConfirmation\"}"),
+                    "Unsubscription acknowledged");
+        }
+        assertEquals(2, queue.size(), "Only the notifications queued");
+    }
+
+    /**
+     * Test a message received and not deleted is received again once its
+     * visibility timeout expires.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testVisibilityTimeout() throws Exception {
+        final NIOInMemoryNotificationQueue queue = new NIOInMemoryNotificationQueue(10, 100);
+        queue.send("one");
+        queue.send("two");
+        final List<NIONotificationMessage> received = queue.receive(10, 0, TimeUnit.MILLISECONDS);
+        assertEquals(2, received.size(), "Received");
+        assertEquals(2, queue.getInFlightCount(), "Hidden");
+        assertTrue(queue.receive(10, 0, TimeUnit.MILLISECONDS).isEmpty(), "Hidden from other receivers");
+        queue.delete(received.get(0));
+        assertEquals(1, queue.getInFlightCount(), "Deleted once processed");
+
+        final List<NIONotificationMessage> again = queue.receive(10, 5, TimeUnit.SECONDS);
+        assertEquals(1, again.size(), "Received again after the visibility timeout");
+        assertEquals("two", again.get(0).getBody());
+        queue.delete(received.get(1));
+        assertEquals(1, queue.getInFlightCount(), "Stale receipt ignored");
+        queue.delete(again.get(0));
+        assertEquals(0, queue.getInFlightCount(), "Deleted");
+        assertTrue(queue.receive(10, 200, TimeUnit.MILLISECONDS).isEmpty(), "Not received again");
+    }
+
+    /**
+     * Test the source deletes the messages it applied, and leaves those it
+     * failed to apply to be received again.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRedelivery() throws Exception {
+        final NIOInMemoryNotificationQueue queue = new NIOInMemoryNotificationQueue(10, 100);
+        final AtomicInteger attempts = new AtomicInteger();
+        final NIONotificationSource source = new NIONotificationSource(queue, notification -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("Resolver failed");
+            }
+            return testDir.resolve(notification.getKey());
+        });
+        queue.send(message("ObjectCreated:Put", "a/new.txt"));
+        source.start();
+        try {
+            final long deadline = System.currentTimeMillis() + 5000;
+            while ((attempts.get() < 2 || queue.getInFlightCount() > 0) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        } finally {
+            source.close();
+        }
+        assertEquals(2, attempts.get(), "Received again after the failure");
+        assertEquals(0, queue.getInFlightCount(), "Deleted once applied");
+        assertEquals(0, queue.size(), "Nothing waiting");
+    }
+
+    private static int post(final NIONotificationWebhook webhook, final String authorization, final String snsType,
+                            final String body) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + webhook.getPort() + "/")
+                .openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        if (authorization != null) {
+            connection.setRequestProperty("Authorization", authorization);
+        }
+        if (snsType != null) {
+            connection.setRequestProperty("x-amz-sns-message-type", snsType);
+        }
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body.getBytes(StandardCharsets.UTF_8));
+        } catch (final IOException e) {
+            // the body may be refused before being fully sent
+        }
+        try {
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static String message(final String eventName, final String key) {
+        return "{\"Records\":[{\"eventVersion\":\"2.1\",\"eventSource\":\"aws:s3\",\"eventTime\":\"2019-01-01T00:00:00.000Z\","
+                + "\"eventName\":\"" + eventName + "\",\"s3\":{\"bucket\":{\"name\":\"bucket\"},"
+                + "\"object\":{\"key\":\"" + key + "\",\"size\":5}}}]}";
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link NIOObserverGroup} Test Case.
+ */
+public class ObserverGroupTestCase {
+
+    @TempDir
+    protected Path testDir;
+
+    /**
+     * Test nested observers share one scan and each receives its own changes.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testGroup() throws Exception {
+        final Path root = Files.createDirectory(testDir.resolve("bucket"));
+        final Path raw = Files.createDirectory(root.resolve("raw"));
+        final Path eu = Files.createDirectory(raw.resolve("eu"));
+        final Path other = Files.createDirectory(testDir.resolve("other"));
+        final NIOFileFilter csv = path -> Files.isDirectory(path) || path.toString().endsWith(".csv");
+
+        final CollectionFileListener all = new CollectionFileListener(true);
+        final CollectionFileListener rawCsv = new CollectionFileListener(true);
+        final CollectionFileListener euAll = new CollectionFileListener(true);
+        final NIOFileAlterationObserver bucket = observer(root, null, all);
+        final NIOFileAlterationObserver rawObserver = observer(raw, csv, rawCsv);
+        final NIOFileAlterationObserver euObserver = observer(eu, null, euAll);
+        final NIOFileAlterationObserver separate = observer(other, null, new CollectionFileListener(true));
+        final CollectionFileListener rawEu = new CollectionFileListener(true);
+        rawObserver.addListener(raw.relativize(eu), rawEu);
+
+        final NIOFileAlterationMonitor monitor = new NIOFileAlterationMonitor(60000);
+        final List<NIOObserverGroup> groups = monitor.addObserverGroup(euObserver, separate, rawObserver, bucket);
+        assertEquals(1, groups.size(), "Nested observers grouped");
+        final NIOObserverGroup group = groups.get(0);
+        assertEquals(root, group.getObserver().getDirectory(), "Outermost directory");
+        assertEquals(new HashSet<>(Arrays.asList(group.getObserver(), separate)),
+                new HashSet<>(toList(monitor.getObservers())), "Shared observer added");
+
+        final NIOFileAlterationObserver shared = group.getObserver();
+        shared.initialize();
+        final Path euCsv = Files.write(eu.resolve("a.csv"), new byte[1]);
+        final Path rawTxt = Files.write(raw.resolve("b.txt"), new byte[1]);
+        final Path topCsv = Files.write(root.resolve("c.csv"), new byte[1]);
+        shared.checkAndNotify();
+        assertEquals(3, shared.getLastRequestCount(), "Each directory listed once");
+        assertEquals(new HashSet<>(Arrays.asList(euCsv, rawTxt, topCsv)), new HashSet<>(all.getCreatedFiles()), "Root");
+        assertEquals(Collections.singletonList(euCsv), rawCsv.getCreatedFiles(), "Filtered member");
+        assertEquals(Collections.singletonList(euCsv), euAll.getCreatedFiles(), "Innermost member");
+        assertTrue(euAll.getChangedDirectories().isEmpty(), "Own directory not reported");
+        assertEquals(Collections.singletonList(euCsv), rawEu.getCreatedFiles(), "Member prefix listener");
+    }
+
+    private static NIOFileAlterationObserver observer(final Path directory, final NIOFileFilter filter,
+                                                      final NIOFileAlterationListener listener) {
+        final NIOFileAlterationObserver observer = new NIOFileAlterationObserver(directory, filter);
+        observer.addListener(listener);
+        return observer;
+    }
+
+    private static <T> List<T> toList(final Iterable<T> iterable) {
+        final List<T> list = new ArrayList<>();
+        iterable.forEach(list::add);
+        return list;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link NIOFileAlterationObserver#setPartitionScan(int, int)} Test Case.
+ */
+public class PartitionScanTestCase {
+
+    @TempDir
+    protected Path testDir;
+
+    private final CollectionFileListener listener = new CollectionFileListener(true);
+
+    private NIOFileAlterationObserver observer;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        for (final String name : new String[]{"a", "b", "c", "d"}) {
+            Files.createDirectory(testDir.resolve(name));
+        }
+        observer = new NIOFileAlterationObserver(testDir);
+        observer.addListener(listener);
+    }
+
+    /**
+     * Test each check lists one partition, rotating over all of them.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRotation() throws Exception {
+        // "b" and "d" hash to partition 0, "a" and "c" to partition 1
+        observer.setPartitionScan(2, 0);
+        observer.initialize();
+        writeAll();
+
+        observer.checkAndNotify();
+        assertEquals(created("b", "d"), new HashSet<>(listener.getCreatedFiles()), "Partition 0");
+        assertEquals(1, observer.getPartitionCursor(), "Cursor");
+        assertEquals(3, observer.getLastRequestCount(), "Root and two directories listed");
+        assertTrue(observer.getCoverageAge(0) <= observer.getCoverageAge(1), "Coverage age");
+
+        observer.checkAndNotify();
+        assertEquals(created("a", "c"), new HashSet<>(listener.getCreatedFiles()), "Partition 1");
+        assertEquals(0, observer.getPartitionCursor(), "Cursor wraps");
+
+        observer.checkAndNotify();
+        assertTrue(listener.getCreatedFiles().isEmpty(), "Whole tree covered");
+    }
+
+    /**
+     * Test a check goes on with the next partitions while under the request cap.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRequestCap() throws Exception {
+        // "d" hashes to partition 0, "a" to 1, "b" to 2 and "c" to 3
+        observer.setPartitionScan(4, 3);
+        observer.initialize();
+        writeAll();
+
+        observer.checkAndNotify();
+        assertEquals(created("a", "d"), new HashSet<>(listener.getCreatedFiles()), "Partitions 0 and 1");
+        assertEquals(3, observer.getLastRequestCount(), "Capped");
+        assertEquals(2, observer.getPartitionCursor(), "Cursor");
+
+        observer.checkAndNotify();
+        assertEquals(created("b", "c"), new HashSet<>(listener.getCreatedFiles()), "Partitions 2 and 3");
+        assertEquals(0, observer.getPartitionCursor(), "Cursor wraps");
+    }
+
+    private void writeAll() throws IOException {
+        for (final String name : new String[]{"a", "b", "c", "d"}) {
+            Files.write(testDir.resolve(name).resolve("file.txt"), new byte[1]);
+        }
+    }
+
+    private Set<Path> created(final String... directories) {
+        final Set<Path> files = new HashSet<>();
+        for (final String directory : Arrays.asList(directories)) {
+            files.add(testDir.resolve(directory).resolve("file.txt"));
+        }
+        return files;
+    }
+}
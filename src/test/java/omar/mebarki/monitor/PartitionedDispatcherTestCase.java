@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link NIOPartitionedDispatcher} Test Case.
+ */
+public class PartitionedDispatcherTestCase {
+
+    /**
+     * Test changes are delivered in parallel, in order per file, and all
+     * before the stop event.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testLanes() throws Exception {
+        final Map<Path, List<NIOFileChange.Kind>> seen = new ConcurrentHashMap<>();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final AtomicInteger seenAtStop = new AtomicInteger();
+        final Path failing = Paths.get("file7");
+        try (NIOPartitionedDispatcher dispatcher = new NIOPartitionedDispatcher(4)) {
+            dispatcher.addListener(new NIOFileAlterationListenerAdaptor() {
+                @Override
+                public void onFileCreate(final Path file) {
+                    record(file, NIOFileChange.Kind.CREATE);
+                }
+
+                @Override
+                public void onFileChange(final Path file) {
+                    record(file, NIOFileChange.Kind.CHANGE);
+                }
+
+                @Override
+                public void onFileDelete(final Path file) {
+                    record(file, NIOFileChange.Kind.DELETE);
+                    if (file.equals(failing)) {
+                        throw new IllegalStateException("Processing failed");
+                    }
+                }
+
+                @Override
+                public void onStop(final NIOFileAlterationObserver observer) {
+                    int count = 0;
+                    for (final List<NIOFileChange.Kind> kinds : seen.values()) {
+                        count += kinds.size();
+                    }
+                    seenAtStop.set(count);
+                }
+
+                private void record(final Path file, final NIOFileChange.Kind kind) {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(1);
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    seen.computeIfAbsent(file, key -> Collections.synchronizedList(new ArrayList<>())).add(kind);
+                    running.decrementAndGet();
+                }
+            });
+
+            dispatcher.onStart(null);
+            for (final NIOFileChange.Kind kind : NIOFileChange.Kind.values()) {
+                for (int i = 0; i < 20; i++) {
+                    dispatcher.onChange(new NIOFileChange(kind, Paths.get("file" + i), false, 0, 0));
+                }
+            }
+            dispatcher.onStop(null);
+
+            assertEquals(60, seenAtStop.get(), "Lanes drained before stop");
+            assertEquals(60, dispatcher.getLastEventCount(), "Event count");
+            assertEquals(1, dispatcher.getLastFailures().size(), "Failure reported");
+            assertTrue(maxRunning.get() > 1, "Parallel");
+            for (final List<NIOFileChange.Kind> kinds : seen.values()) {
+                assertEquals(Arrays.asList(NIOFileChange.Kind.values()), kinds, "In order per file");
+            }
+
+            dispatcher.onStart(null);
+            dispatcher.onStop(null);
+            assertEquals(0, dispatcher.getLastEventCount(), "Next check");
+            assertTrue(dispatcher.getLastFailures().isEmpty(), "No failure");
+        }
+    }
+
+    /**
+     * Test the observer thread waits for a full lane, and the changes it
+     * queued then are delivered in order.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testBoundedLanes() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Path> delivered = Collections.synchronizedList(new ArrayList<>());
+        try (NIOPartitionedDispatcher dispatcher = new NIOPartitionedDispatcher(1, 1)) {
+            dispatcher.addListener(new NIOFileAlterationListenerAdaptor() {
+                @Override
+                public void onFileCreate(final Path file) {
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    delivered.add(file);
+                }
+            });
+            dispatcher.onStart(null);
+            final Thread observer = new Thread(() -> {
+                for (int i = 0; i < 4; i++) {
+                    dispatcher.onChange(new NIOFileChange(NIOFileChange.Kind.CREATE, Paths.get("file" + i), false, 0, 0));
+                }
+            });
+            observer.start();
+            observer.join(200);
+            assertTrue(observer.isAlive(), "Waiting for the full lane");
+            release.countDown();
+            observer.join(5000);
+            assertFalse(observer.isAlive(), "Queued once the lane made room");
+            dispatcher.onStop(null);
+            assertEquals(Arrays.asList(Paths.get("file0"), Paths.get("file1"), Paths.get("file2"), Paths.get("file3")),
+                    delivered, "In order");
+            assertEquals(4, dispatcher.getLastEventCount(), "Event count");
+        }
+    }
+}
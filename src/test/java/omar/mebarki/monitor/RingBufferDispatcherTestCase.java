@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link NIORingBufferDispatcher} Test Case.
+ */
+public class RingBufferDispatcherTestCase {
+
+    @TempDir
+    protected Path tempDir;
+
+    /**
+     * Test a blocked listener does not hold up the checks.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDecoupled() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CollectionFileListener listener = new CollectionFileListener(false);
+        final NIOFileAlterationObserver observer = new NIOFileAlterationObserver(tempDir);
+        try (NIORingBufferDispatcher dispatcher = new NIORingBufferDispatcher(64,
+                NIORingBufferDispatcher.WaitStrategy.BLOCKING, NIORingBufferDispatcher.Overflow.BLOCK)) {
+            dispatcher.addListener(new NIOFileAlterationListenerAdaptor() {
+                @Override
+                public void onFileCreate(final Path file) {
+                    try {
+                        release.await();
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            dispatcher.addListener(listener);
+            observer.addListener(dispatcher);
+            observer.initialize();
+            dispatcher.start();
+
+            final Path one = Files.write(tempDir.resolve("one.txt"), new byte[1]);
+            final Path two = Files.write(tempDir.resolve("two.txt"), new byte[2]);
+            observer.checkAndNotify();
+            observer.checkAndNotify();
+            assertTrue(listener.getCreatedFiles().isEmpty(), "Listeners not called yet");
+
+            release.countDown();
+            assertTrue(dispatcher.awaitDrained(5, TimeUnit.SECONDS), "Drained");
+            assertEquals(Arrays.asList(one, two), listener.getCreatedFiles(), "Delivered in order");
+        }
+    }
+
+    /**
+     * Test the overflow policies.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testOverflow() throws Exception {
+        final Path a = Paths.get("a");
+        final Path b = Paths.get("b");
+        final Path c = Paths.get("c");
+        final Path d = Paths.get("d");
+
+        final NIORingBufferDispatcher dropping = new NIORingBufferDispatcher(3,
+                NIORingBufferDispatcher.WaitStrategy.YIELDING, NIORingBufferDispatcher.Overflow.DROP_OLDEST);
+        assertEquals(4, dropping.getCapacity(), "Power of two");
+        final List<String> events = record(dropping);
+        dropping.onStart(null);
+        for (final Path file : Arrays.asList(a, b, c, a, b)) {
+            dropping.onChange(new NIOFileChange(NIOFileChange.Kind.CHANGE, file, false, 0, 0));
+        }
+        dropping.onStop(null);
+        assertEquals(3, dropping.getDroppedCount(), "Dropped");
+        dropping.start();
+        dropping.close();
+        assertEquals(Arrays.asList("start", "CHANGE a", "CHANGE b", "stop"), events, "Newest kept");
+
+        final NIORingBufferDispatcher coalescing = new NIORingBufferDispatcher(3,
+                NIORingBufferDispatcher.WaitStrategy.BUSY_SPIN, NIORingBufferDispatcher.Overflow.COALESCE);
+        final List<String> merged = record(coalescing);
+        coalescing.onChange(new NIOFileChange(NIOFileChange.Kind.CREATE, a, false, 1, 1));
+        coalescing.onChange(new NIOFileChange(NIOFileChange.Kind.CREATE, b, false, 1, 1));
+        coalescing.onChange(new NIOFileChange(NIOFileChange.Kind.CHANGE, c, false, 1, 1));
+        coalescing.onChange(new NIOFileChange(NIOFileChange.Kind.CHANGE, d, false, 1, 1));
+        coalescing.onChange(new NIOFileChange(NIOFileChange.Kind.DELETE, a, false, 0, 0));
+        coalescing.onChange(new NIOFileChange(NIOFileChange.Kind.CHANGE, b, false, 2, 2));
+        coalescing.onChange(new NIOFileChange(NIOFileChange.Kind.DELETE, c, false, 0, 0));
+        assertEquals(3, coalescing.getCoalescedCount(), "Coalesced");
+        assertEquals(4, coalescing.getPendingCount(), "Pending");
+        coalescing.start();
+        assertTrue(coalescing.awaitDrained(5, TimeUnit.SECONDS), "Drained");
+        coalescing.close();
+        assertEquals(Arrays.asList("CREATE b", "DELETE c", "CHANGE d"), merged, "Merged per file");
+
+        // a change pending from an earlier check is not merged across its stop event
+        final NIORingBufferDispatcher checks = new NIORingBufferDispatcher(4,
+                NIORingBufferDispatcher.WaitStrategy.YIELDING, NIORingBufferDispatcher.Overflow.COALESCE);
+        final List<String> bounded = record(checks);
+        checks.onChange(new NIOFileChange(NIOFileChange.Kind.CREATE, a, false, 1, 1));
+        checks.onStop(null);
+        checks.onStart(null);
+        checks.onChange(new NIOFileChange(NIOFileChange.Kind.CHANGE, b, false, 1, 1));
+        final Thread publisher = new Thread(
+                () -> checks.onChange(new NIOFileChange(NIOFileChange.Kind.DELETE, a, false, 0, 0)));
+        publisher.start();
+        publisher.join(200);
+        assertTrue(publisher.isAlive(), "Waits for a free slot");
+        assertEquals(0, checks.getCoalescedCount(), "Not merged");
+        checks.start();
+        publisher.join(5000);
+        assertTrue(checks.awaitDrained(5, TimeUnit.SECONDS), "Drained");
+        checks.close();
+        assertEquals(Arrays.asList("CREATE a", "stop", "start", "CHANGE b", "DELETE a"), bounded, "Check boundaries kept");
+
+        final NIORingBufferDispatcher blocking = new NIORingBufferDispatcher(2,
+                NIORingBufferDispatcher.WaitStrategy.SLEEPING, NIORingBufferDispatcher.Overflow.BLOCK);
+        final List<String> all = record(blocking);
+        blocking.start();
+        final List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            blocking.onChange(new NIOFileChange(NIOFileChange.Kind.CREATE, Paths.get("f" + i), false, 0, 0));
+            expected.add("CREATE f" + i);
+        }
+        blocking.close();
+        assertEquals(expected, all, "Nothing lost");
+        assertEquals(0, blocking.getDroppedCount(), "No drop");
+    }
+
+    private static List<String> record(final NIORingBufferDispatcher dispatcher) {
+        final List<String> events = Collections.synchronizedList(new ArrayList<>());
+        dispatcher.addListener(new NIOFileChangeListener() {
+            @Override
+            public void onStart(final NIOFileAlterationObserver observer) {
+                events.add("start");
+            }
+
+            @Override
+            public void onChange(final NIOFileChange change) {
+                events.add(change.getKind() + " " + change.getFile());
+            }
+
+            @Override
+            public void onStop(final NIOFileAlterationObserver observer) {
+                events.add("stop");
+            }
+
+            @Override
+            public void onDirectoryCreate(final Path directory) {
+            }
+
+            @Override
+            public void onDirectoryChange(final Path directory) {
+            }
+
+            @Override
+            public void onDirectoryDelete(final Path directory) {
+            }
+
+            @Override
+            public void onFileCreate(final Path file) {
+            }
+
+            @Override
+            public void onFileChange(final Path file) {
+            }
+
+            @Override
+            public void onFileDelete(final Path file) {
+            }
+        });
+        return events;
+    }
+}
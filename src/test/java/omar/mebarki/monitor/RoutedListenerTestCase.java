@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link NIOFileAlterationObserver#addListener(Path, NIOFileAlterationListener)} Test Case.
+ */
+public class RoutedListenerTestCase {
+
+    @TempDir
+    protected Path tempDir;
+
+    /**
+     * Test prefixed listeners only see the changes of their prefix.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRouting() throws Exception {
+        final Path tenant1 = Files.createDirectory(tempDir.resolve("tenant-1"));
+        final Path tenant10 = Files.createDirectory(tempDir.resolve("tenant-10"));
+        final Path sub = Files.createDirectory(tenant1.resolve("sub"));
+        final NIOFileAlterationObserver observer = new NIOFileAlterationObserver(tempDir);
+        final CountingListener one = new CountingListener();
+        final CountingListener ten = new CountingListener();
+        final CountingListener nested = new CountingListener();
+        final CountingListener all = new CountingListener();
+        observer.addListener(Paths.get("tenant-1"), one);
+        observer.addListener(tenant10, ten);
+        observer.addListener(Paths.get("tenant-1", "sub"), nested);
+        observer.addListener(Paths.get("tenant-1", "sub"), one);
+        observer.addListener(all);
+        observer.initialize();
+
+        final Path a = Files.write(tenant1.resolve("a.txt"), new byte[1]);
+        final Path b = Files.write(sub.resolve("b.txt"), new byte[2]);
+        final Path c = Files.write(tenant10.resolve("c.txt"), new byte[3]);
+        final Path d = Files.write(tempDir.resolve("d.txt"), new byte[4]);
+        observer.checkAndNotify();
+        assertEquals(Arrays.asList(a, b, b), one.getCreatedFiles(), "Prefix and nested prefix");
+        assertEquals(Collections.singletonList(c), ten.getCreatedFiles(), "Not a name prefix");
+        assertEquals(Collections.singletonList(b), nested.getCreatedFiles(), "Nested prefix");
+        assertEquals(4, all.getCreatedFiles().size(), "Observer listener");
+        assertEquals(1, one.starts, "Started once");
+        assertEquals(1, one.stops, "Stopped once");
+
+        observer.removeListener(one);
+        Files.delete(a);
+        observer.checkAndNotify();
+        assertTrue(one.getDeletedFiles().isEmpty(), "Removed");
+        assertEquals(1, one.starts, "Removed from start");
+        assertEquals(Collections.singletonList(a), all.getDeletedFiles(), "Observer listener");
+
+        assertThrows(IllegalArgumentException.class, () -> observer.addListener(tempDir.resolveSibling("other"), ten));
+        assertThrows(IllegalArgumentException.class, () -> observer.addListener(Paths.get(".."), ten));
+    }
+
+    /**
+     * Counts the start and stop events.
+     */
+    private static final class CountingListener extends CollectionFileListener {
+
+        private static final long serialVersionUID = 3318905217734029581L;
+
+        private int starts;
+        private int stops;
+
+        private CountingListener() {
+            super(true);
+        }
+
+        @Override
+        public void onStart(final NIOFileAlterationObserver observer) {
+            super.onStart(observer);
+            starts++;
+        }
+
+        @Override
+        public void onStop(final NIOFileAlterationObserver observer) {
+            super.onStop(observer);
+            stops++;
+        }
+    }
+}
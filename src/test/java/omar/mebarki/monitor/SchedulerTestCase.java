@@ -0,0 +1,280 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link NIOFileAlterationMonitor} scheduler Test Case.
+ */
+public class SchedulerTestCase {
+
+    @TempDir
+    protected Path testDir;
+
+    /**
+     * Test the timer wheel runs tasks once their deadline passed, including
+     * deadlines more than one wheel round away.
+     */
+    @Test
+    public void testTimerWheel() {
+        final NIOTimerWheel wheel = new NIOTimerWheel(1, TimeUnit.MILLISECONDS, 4);
+        final List<String> ran = new ArrayList<>();
+        // deadlines are taken when scheduling, so bound them on both sides
+        final long before = System.nanoTime();
+        wheel.schedule(() -> ran.add("late"), 1000, TimeUnit.MILLISECONDS);
+        wheel.schedule(() -> ran.add("soon"), 2, TimeUnit.MILLISECONDS);
+        wheel.schedule(() -> ran.add("cancelled"), 2, TimeUnit.MILLISECONDS).cancel();
+        final long after = System.nanoTime();
+
+        wheel.advance(before);
+        assertTrue(ran.isEmpty(), "Nothing due");
+        wheel.advance(after + TimeUnit.MILLISECONDS.toNanos(5));
+        assertEquals(1, ran.size(), "First task due");
+        assertEquals("soon", ran.get(0));
+        wheel.advance(after + TimeUnit.MILLISECONDS.toNanos(2000));
+        assertEquals(2, ran.size(), "Second task due");
+        assertEquals("late", ran.get(1));
+    }
+
+    /**
+     * Test each observer is checked at its own interval and a slow observer
+     * does not delay the others.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testPerObserverInterval() throws Exception {
+        final CountingListener fast = new CountingListener(0);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger slowStarts = new AtomicInteger();
+        final NIOFileAlterationMonitor monitor = new NIOFileAlterationMonitor();
+        monitor.setWorkerThreads(2);
+        monitor.addObserver(observer(fast), NIOObserverSchedule.fixedDelay(20));
+        monitor.addObserver(observer(new NIOFileAlterationListenerAdaptor() {
+            @Override
+            public void onStart(final NIOFileAlterationObserver observer) {
+                slowStarts.incrementAndGet();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }), NIOObserverSchedule.fixedDelay(60000));
+        monitor.start();
+        // the slow check lasts until released, so the fast checks run beside it
+        final long deadline = System.currentTimeMillis() + 5000;
+        while ((fast.starts.get() < 8 || slowStarts.get() < 1) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        final int fastStarts = fast.starts.get();
+        release.countDown();
+        monitor.stop(1000);
+        assertTrue(fastStarts >= 8, "Fast observer checked often: " + fastStarts);
+        assertEquals(1, slowStarts.get(), "Slow observer checked once");
+    }
+
+    /**
+     * Test fixed rate checks due while the previous one is running are skipped.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testOverrunSkip() throws Exception {
+        final CountingListener listener = new CountingListener(20);
+        final NIOFileAlterationObserver observer = observer(listener);
+        final NIOFileAlterationMonitor monitor = new NIOFileAlterationMonitor();
+        monitor.setWorkerThreads(2);
+        monitor.addObserver(observer, NIOObserverSchedule.fixedRate(300, NIOObserverSchedule.Overrun.SKIP));
+        final NIOFileAlterationObserver overrun = observer(new CountingListener(100));
+        monitor.addObserver(overrun, NIOObserverSchedule.fixedRate(40, NIOObserverSchedule.Overrun.SKIP));
+        monitor.start();
+        final long deadline = System.currentTimeMillis() + 5000;
+        while ((listener.starts.get() < 3 || monitor.getOverrunCount(overrun) == 0)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        final long overruns = monitor.getOverrunCount(overrun);
+        final long noOverruns = monitor.getOverrunCount(observer);
+        monitor.stop(1000);
+        assertEquals(0, noOverruns, "Check shorter than the period");
+        assertTrue(overruns > 0, "Check longer than the period");
+        assertTrue(listener.starts.get() >= 3, "Checked at a fixed rate: " + listener.starts);
+    }
+
+    /**
+     * Test fixed rate checks due while the previous one is running are
+     * coalesced into one check run right after it.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testOverrunCoalesce() throws Exception {
+        final CountingListener listener = new CountingListener(100);
+        final NIOFileAlterationObserver observer = observer(listener);
+        final NIOFileAlterationMonitor monitor = new NIOFileAlterationMonitor();
+        monitor.addObserver(observer, NIOObserverSchedule.fixedRate(20, NIOObserverSchedule.Overrun.COALESCE));
+        monitor.start();
+        final long deadline = System.currentTimeMillis() + 5000;
+        while ((listener.starts.get() < 4 || monitor.getOverrunCount(observer) <= listener.starts.get())
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        final int starts = listener.starts.get();
+        final long overruns = monitor.getOverrunCount(observer);
+        monitor.stop(1000);
+        assertTrue(overruns > starts, "Several overruns per check: " + overruns);
+        assertTrue(starts >= 4, "Coalesced checks run back to back: " + starts);
+        assertTrue(listener.concurrent.get() == 0, "Checks never overlap");
+    }
+
+    /**
+     * Test the adaptive interval backs off while idle and snaps back on changes.
+     */
+    @Test
+    public void testAdaptiveInterval() {
+        final NIOObserverSchedule schedule = NIOObserverSchedule.adaptive(100, 1000, 3, 0);
+        assertEquals(300, schedule.nextInterval(100, 0), "Backs off");
+        assertEquals(900, schedule.nextInterval(300, 0), "Backs off");
+        assertEquals(1000, schedule.nextInterval(900, 0), "Bounded");
+        assertEquals(100, schedule.nextInterval(1000, 2), "Snaps back");
+        assertEquals(100, NIOObserverSchedule.fixedDelay(100).nextInterval(100, 0), "Fixed");
+
+        final NIOObserverSchedule jittered = NIOObserverSchedule.adaptive(100, 1000, 2, 0.5);
+        for (int i = 0; i < 100; i++) {
+            final long interval = jittered.jitter(1000);
+            assertTrue(interval >= 500 && interval <= 1500, "Jitter bounded: " + interval);
+        }
+    }
+
+    /**
+     * Test an adaptive monitor slows down while idle and speeds up on changes.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testAdaptiveMonitor() throws Exception {
+        final CollectionFileListener listener = new CollectionFileListener(false);
+        final NIOFileAlterationObserver observer = observer(listener);
+        final NIOFileAlterationMonitor monitor = new NIOFileAlterationMonitor(
+                NIOObserverSchedule.adaptive(10, 200, 2, 0), observer);
+        assertEquals(10, monitor.getInterval(), "Interval");
+        monitor.start();
+        final long idle = System.currentTimeMillis() + 5000;
+        while (monitor.getCurrentInterval(observer) < 200 && System.currentTimeMillis() < idle) {
+            Thread.sleep(5);
+        }
+        assertEquals(200, monitor.getCurrentInterval(observer), "Backed off while idle");
+        Files.write(testDir.resolve("new.txt"), new byte[1]);
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (listener.getCreatedFiles().isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        final long interval = monitor.getCurrentInterval(observer);
+        monitor.stop(1000);
+        assertEquals(1, listener.getCreatedFiles().size(), "Change found");
+        assertTrue(interval < 200, "Snapped back: " + interval);
+    }
+
+    /**
+     * Test an observer keeps being checked after a rejected submission and
+     * after a listener throwing an error.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRescheduledAfterFailures() throws Exception {
+        final AtomicInteger submissions = new AtomicInteger();
+        final AtomicInteger starts = new AtomicInteger();
+        final NIOFileAlterationObserver observer = observer(new NIOFileAlterationListenerAdaptor() {
+            @Override
+            public void onStart(final NIOFileAlterationObserver observer) {
+                if (starts.incrementAndGet() == 1) {
+                    throw new Error("Listener failed");
+                }
+            }
+        });
+        final NIOFileAlterationMonitor monitor = new NIOFileAlterationMonitor();
+        monitor.setExecutor(runnable -> {
+            if (submissions.getAndIncrement() == 0) {
+                throw new RejectedExecutionException("Saturated");
+            }
+            final Thread thread = new Thread(runnable);
+            thread.setUncaughtExceptionHandler((t, e) -> { });
+            thread.start();
+        });
+        monitor.addObserver(observer, NIOObserverSchedule.fixedDelay(20));
+        monitor.start();
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (starts.get() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        monitor.stop(1000);
+        assertTrue(starts.get() >= 3, "Checked again: " + starts);
+    }
+
+    private NIOFileAlterationObserver observer(final NIOFileAlterationListener listener) throws Exception {
+        final NIOFileAlterationObserver observer = new NIOFileAlterationObserver(testDir);
+        observer.addListener(listener);
+        return observer;
+    }
+
+    /**
+     * Listener counting the checks, each taking a given time.
+     */
+    private static final class CountingListener extends NIOFileAlterationListenerAdaptor {
+        private final long duration;
+        private final AtomicInteger starts = new AtomicInteger();
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicInteger concurrent = new AtomicInteger();
+
+        CountingListener(final long duration) {
+            this.duration = duration;
+        }
+
+        @Override
+        public void onStart(final NIOFileAlterationObserver observer) {
+            starts.incrementAndGet();
+            if (running.incrementAndGet() > 1) {
+                concurrent.incrementAndGet();
+            }
+            try {
+                Thread.sleep(duration);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void onStop(final NIOFileAlterationObserver observer) {
+            running.decrementAndGet();
+        }
+    }
+}
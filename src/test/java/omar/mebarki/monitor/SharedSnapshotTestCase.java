@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static omar.mebarki.monitor.AbstractMonitorTestCase.write;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link NIOSharedSnapshotPublisher} and {@link NIOSharedSnapshotReader} Test Case.
+ */
+public class SharedSnapshotTestCase {
+
+    @TempDir
+    protected Path tempDir;
+
+    private Path testDir;
+
+    private Path sharedDir;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        testDir = Files.createDirectory(tempDir.resolve("bucket"));
+        sharedDir = Files.createDirectory(tempDir.resolve("shared"));
+    }
+
+    /**
+     * Test a reader sees the published snapshot and changes.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testPublishAndRead() throws Exception {
+        write(testDir.resolve("a").resolve("one.txt"), 10, 1000L);
+        write(testDir.resolve("a-b").resolve("two.txt"), 20, 2000L);
+
+        final Path baseFile = sharedDir.resolve("bucket");
+        final NIOFileAlterationObserver observer = new NIOFileAlterationObserver(testDir);
+        try (NIOSharedSnapshotPublisher publisher = new NIOSharedSnapshotPublisher(baseFile, 4096)) {
+            observer.addListener(publisher);
+            observer.initialize();
+            observer.checkAndNotify();
+            assertEquals(1, publisher.getGeneration(), "Generation");
+
+            try (NIOSharedSnapshotReader reader = new NIOSharedSnapshotReader(baseFile, testDir)) {
+                final NIOFileEntry one = reader.lookup("a/one.txt");
+                assertNotNull(one, "Lookup file");
+                assertEquals(10, one.getLength(), "Length");
+                assertEquals(1000L, one.getLastModified(), "Last modified");
+                assertFalse(one.isDirectory(), "File");
+                assertTrue(reader.lookup("a-b").isDirectory(), "Lookup directory");
+                assertNotNull(reader.lookup("a-b/two.txt"), "Lookup after sibling");
+                assertNull(reader.lookup("a/two.txt"), "Lookup missing");
+
+                final CollectionFileListener listener = new CollectionFileListener(false);
+                assertEquals(0, reader.poll(listener), "Nothing yet");
+
+                write(testDir.resolve("a").resolve("three.txt"), 30, 3000L);
+                Files.delete(testDir.resolve("a").resolve("one.txt"));
+                observer.checkAndNotify();
+
+                assertEquals(3, reader.poll(listener), "Changes");
+                assertTrue(listener.getChangedDirectories().contains(testDir.resolve("a")), "Changed");
+                assertTrue(listener.getCreatedFiles().contains(testDir.resolve("a").resolve("three.txt")), "Created");
+                assertTrue(listener.getDeletedFiles().contains(testDir.resolve("a").resolve("one.txt")), "Deleted");
+                assertEquals(30, reader.lookup("a/three.txt").getLength(), "Lookup republished");
+                assertNull(reader.lookup("a/one.txt"), "Lookup deleted");
+            }
+        }
+    }
+
+    /**
+     * Test a reader that falls behind skips the overwritten changes.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testOverrun() throws Exception {
+        final Path baseFile = sharedDir.resolve("bucket");
+        final NIOFileAlterationObserver observer = new NIOFileAlterationObserver(testDir);
+        try (NIOSharedSnapshotPublisher publisher = new NIOSharedSnapshotPublisher(baseFile, 1024);
+             NIOSharedSnapshotReader reader = new NIOSharedSnapshotReader(baseFile, testDir)) {
+            observer.addListener(publisher);
+            observer.initialize();
+            for (int i = 0; i < 100; i++) {
+                write(testDir.resolve("file-" + i + ".txt"), i, 1000L);
+            }
+            observer.checkAndNotify();
+
+            assertEquals(0, reader.poll(new NIOFileAlterationListenerAdaptor()), "Skipped");
+            assertEquals(1, reader.getOverruns(), "Overruns");
+            assertNotNull(reader.lookup("file-99.txt"), "Lookup still works");
+        }
+    }
+
+    /**
+     * Test a reader skips a corrupt record instead of failing or looping.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testCorruptRecord() throws Exception {
+        final Path baseFile = sharedDir.resolve("bucket");
+        final NIOFileAlterationObserver observer = new NIOFileAlterationObserver(testDir);
+        try (NIOSharedSnapshotPublisher publisher = new NIOSharedSnapshotPublisher(baseFile, 4096);
+             NIOSharedSnapshotReader reader = new NIOSharedSnapshotReader(baseFile, testDir);
+             FileChannel channel = FileChannel.open(NIOSharedSnapshotFiles.eventsFile(baseFile),
+                     StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            observer.addListener(publisher);
+            observer.initialize();
+            final MappedByteBuffer events = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+
+            write(testDir.resolve("one.txt"), 1, 1000L);
+            observer.checkAndNotify();
+            events.put(NIOSharedSnapshotFiles.EVENTS_HEADER_SIZE + 4, (byte) 99);
+            assertEquals(0, reader.poll(new NIOFileAlterationListenerAdaptor()), "Bad kind");
+            assertEquals(1, reader.getOverruns(), "Overruns");
+
+            write(testDir.resolve("two.txt"), 2, 1000L);
+            observer.checkAndNotify();
+            final int record = NIOSharedSnapshotFiles.EVENTS_HEADER_SIZE
+                    + (int) events.getLong(NIOSharedSnapshotFiles.EVENTS_POSITION_OFFSET) - 31;
+            events.putInt(record, 0);
+            assertEquals(0, reader.poll(new NIOFileAlterationListenerAdaptor()), "Zero length");
+            assertEquals(2, reader.getOverruns(), "Overruns");
+
+            write(testDir.resolve("three.txt"), 3, 1000L);
+            observer.checkAndNotify();
+            final CollectionFileListener listener = new CollectionFileListener(false);
+            assertEquals(1, reader.poll(listener), "Resumed");
+            assertTrue(listener.getCreatedFiles().contains(testDir.resolve("three.txt")), "Created");
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static omar.mebarki.monitor.AbstractMonitorTestCase.write;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link NIOSnapshotCheckpoint} Test Case.
+ */
+public class SnapshotCheckpointTestCase {
+
+    @TempDir
+    protected Path tempDir;
+
+    private Path testDir;
+
+    private Path checkpointFile;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        testDir = Files.createDirectory(tempDir.resolve("bucket"));
+        checkpointFile = tempDir.resolve("bucket.checkpoint");
+        write(testDir.resolve("a").resolve("one.txt"), 10, 1000L);
+        write(testDir.resolve("a").resolve("two.txt"), 20, 1000L);
+        write(testDir.resolve("b").resolve("three.txt"), 30, 1000L);
+    }
+
+    /**
+     * Test changes made while no observer was running are reported after a restart.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testWarmRestart() throws Exception {
+        final NIOFileAlterationObserver before = new NIOFileAlterationObserver(testDir);
+        before.setCheckpointFile(checkpointFile);
+        before.initialize();
+        before.destroy();
+        assertTrue(Files.exists(checkpointFile), "Checkpoint written");
+
+        write(testDir.resolve("a").resolve("one.txt"), 15, 2000L);
+        Files.delete(testDir.resolve("a").resolve("two.txt"));
+        write(testDir.resolve("b").resolve("four.txt"), 40, 2000L);
+        final long bLastModified = Files.getLastModifiedTime(testDir.resolve("b")).toMillis();
+
+        final CollectionFileListener listener = new CollectionFileListener(true);
+        final NIOFileAlterationObserver after = new NIOFileAlterationObserver(testDir);
+        after.setCheckpointFile(checkpointFile);
+        after.addListener(listener);
+        after.initialize();
+        assertArrayEquals(before.getSnapshotHash(), after.getSnapshotHash(), "Loaded snapshot");
+        assertEquals(3, after.getIndex().getCount(""), "Loaded index");
+
+        after.checkAndNotify();
+        assertEquals(1, listener.getChangedFiles().size(), "Changed");
+        assertTrue(listener.getChangedFiles().contains(testDir.resolve("a").resolve("one.txt")), "Changed file");
+        assertEquals(1, listener.getDeletedFiles().size(), "Deleted");
+        assertTrue(listener.getDeletedFiles().contains(testDir.resolve("a").resolve("two.txt")), "Deleted file");
+        assertEquals(1, listener.getCreatedFiles().size(), "Created");
+        assertTrue(listener.getCreatedFiles().contains(testDir.resolve("b").resolve("four.txt")), "Created file");
+        assertEquals(bLastModified, after.getIndex().lookup("b").getLastModified(), "Directory refreshed");
+    }
+
+    /**
+     * Test an unreadable checkpoint falls back to walking the directory.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testInvalidCheckpoint() throws Exception {
+        Files.write(checkpointFile, new byte[]{1, 2, 3});
+        final CollectionFileListener listener = new CollectionFileListener(true);
+        final NIOFileAlterationObserver observer = new NIOFileAlterationObserver(testDir);
+        observer.setCheckpointFile(checkpointFile);
+        observer.addListener(listener);
+        observer.initialize();
+        assertEquals(3, observer.getIndex().getCount(""), "Walked");
+
+        observer.checkAndNotify();
+        assertTrue(listener.getCreatedFiles().isEmpty(), "No event");
+    }
+
+    /**
+     * Test a checkpoint written while a check runs waits for it, so it is not torn.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testCheckpointDuringCheck() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final NIOFileAlterationObserver observer = new NIOFileAlterationObserver(testDir);
+        observer.setCheckpointFile(checkpointFile);
+        observer.addListener(new NIOFileAlterationListenerAdaptor() {
+            @Override
+            public void onStart(final NIOFileAlterationObserver observer) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        observer.initialize();
+        write(testDir.resolve("b").resolve("four.txt"), 40, 2000L);
+
+        final CompletableFuture<Void> check = CompletableFuture.runAsync(observer::checkAndNotify);
+        assertTrue(started.await(5, TimeUnit.SECONDS), "Check started");
+        final CompletableFuture<Void> destroyed = CompletableFuture.runAsync(() -> {
+            try {
+                observer.destroy();
+            } catch (final Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertThrows(TimeoutException.class, () -> destroyed.get(100, TimeUnit.MILLISECONDS), "Waits for the check");
+        release.countDown();
+        check.get(5, TimeUnit.SECONDS);
+        destroyed.get(5, TimeUnit.SECONDS);
+
+        final NIOFileAlterationObserver restarted = new NIOFileAlterationObserver(testDir);
+        restarted.setCheckpointFile(checkpointFile);
+        restarted.initialize();
+        assertEquals(4, restarted.getIndex().getCount(""), "Checkpoint of the whole check");
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link NIOSnapshotDiff} Test Case.
+ */
+public class SnapshotDiffTestCase {
+
+    @TempDir
+    protected Path testDir;
+
+    private final List<String> leftOnly = new ArrayList<>();
+    private final List<String> rightOnly = new ArrayList<>();
+    private final List<String> different = new ArrayList<>();
+
+    private final NIOSnapshotDiffListener diffListener = new NIOSnapshotDiffListener() {
+        @Override
+        public void onLeftOnly(final NIOFileEntry left) {
+            leftOnly.add(left.getName());
+        }
+
+        @Override
+        public void onRightOnly(final NIOFileEntry right) {
+            rightOnly.add(right.getName());
+        }
+
+        @Override
+        public void onDifferent(final NIOFileEntry left, final NIOFileEntry right) {
+            different.add(left.getName());
+        }
+    };
+
+    /**
+     * Test comparing identical and diverging replicas.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testCompareReplicas() throws Exception {
+        final Path primaryDir = testDir.resolve("primary");
+        final Path replicaDir = testDir.resolve("replica");
+        populate(primaryDir);
+        populate(replicaDir);
+
+        final NIOFileAlterationObserver primary = new NIOFileAlterationObserver(primaryDir);
+        final NIOFileAlterationObserver replica = new NIOFileAlterationObserver(replicaDir);
+        primary.initialize();
+        replica.initialize();
+
+        assertArrayEquals(primary.getSnapshotHash(), replica.getSnapshotHash(), "Identical hash");
+        assertTrue(primary.compareSnapshot(replica, diffListener), "Identical");
+        assertTrue(leftOnly.isEmpty() && rightOnly.isEmpty() && different.isEmpty(), "No differences");
+
+        Files.setLastModifiedTime(replicaDir.resolve("top.txt"), FileTime.fromMillis(5000L));
+        replica.checkAndNotify();
+        assertFalse(Arrays.equals(primary.getSnapshotHash(), replica.getSnapshotHash()), "Modified with a new date");
+        Files.setLastModifiedTime(replicaDir.resolve("top.txt"), FileTime.fromMillis(1000L));
+        replica.checkAndNotify();
+        assertArrayEquals(primary.getSnapshotHash(), replica.getSnapshotHash(), "Same date restored");
+
+        write(replicaDir.resolve("a").resolve("b").resolve("file2.txt"), "changed", 2000L);
+        write(replicaDir.resolve("c").resolve("extra.txt"), "extra", 1000L);
+        Files.delete(replicaDir.resolve("top.txt"));
+        replica.checkAndNotify();
+
+        assertFalse(Arrays.equals(primary.getSnapshotHash(), replica.getSnapshotHash()), "Different hash");
+        assertFalse(primary.compareSnapshot(replica, diffListener), "Different");
+        assertEquals(Arrays.asList("top.txt"), leftOnly, "Left only");
+        assertEquals(Arrays.asList("extra.txt"), rightOnly, "Right only");
+        assertEquals(Arrays.asList("file2.txt"), different, "Different");
+    }
+
+    /**
+     * Test the directory hash is only recomputed when something below it changes.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testHashCaching() throws Exception {
+        final Path primaryDir = testDir.resolve("primary");
+        populate(primaryDir);
+        final NIOFileAlterationObserver observer = new NIOFileAlterationObserver(primaryDir);
+        observer.initialize();
+
+        final byte[] before = observer.getSnapshotHash();
+        observer.checkAndNotify();
+        assertSame(before, observer.getSnapshotHash(), "Cached hash");
+
+        write(primaryDir.resolve("c").resolve("file3.txt"), "other content", 1000L);
+        observer.checkAndNotify();
+        assertFalse(Arrays.equals(before, observer.getSnapshotHash()), "Rehashed");
+    }
+
+    private void populate(final Path root) throws IOException {
+        write(root.resolve("top.txt"), "top", 1000L);
+        write(root.resolve("a").resolve("file1.txt"), "one", 1000L);
+        write(root.resolve("a").resolve("b").resolve("file2.txt"), "two", 1000L);
+        write(root.resolve("c").resolve("file3.txt"), "three", 1000L);
+    }
+
+    private void write(final Path file, final String content, final long lastModified) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes("UTF-8"));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(lastModified));
+    }
+}
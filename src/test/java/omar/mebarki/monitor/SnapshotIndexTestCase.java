@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+import static omar.mebarki.monitor.AbstractMonitorTestCase.write;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link NIOSnapshotIndex} Test Case.
+ */
+public class SnapshotIndexTestCase {
+
+    @TempDir
+    protected Path testDir;
+
+    /**
+     * Test lookups, aggregates and ordered queries, before and after a check.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testQueries() throws Exception {
+        write(testDir.resolve("a").resolve("one.txt"), 10, 1000L);
+        write(testDir.resolve("a").resolve("b").resolve("two.txt"), 20, 2000L);
+        write(testDir.resolve("c").resolve("three.txt"), 30, 3000L);
+
+        final NIOFileAlterationObserver observer = new NIOFileAlterationObserver(testDir);
+        final NIOSnapshotIndex index = observer.getIndex();
+        observer.initialize();
+
+        assertEquals(testDir.resolve("a").resolve("b").resolve("two.txt"), index.lookup("a/b/two.txt").getFile(), "Lookup key");
+        assertEquals(testDir.resolve("c"), index.lookup(testDir.resolve("c")).getFile(), "Lookup path");
+        assertNull(index.lookup("a/missing.txt"), "Lookup missing");
+
+        assertEquals(3, index.getCount(""), "Root count");
+        assertEquals(60, index.getLength(""), "Root length");
+        assertEquals(2, index.getCount("a"), "Prefix count");
+        assertEquals(30, index.getLength("a"), "Prefix length");
+
+        assertEquals(Arrays.asList("two.txt", "three.txt"), names(index.getModifiedSince(2000L)), "Modified since");
+        assertEquals(Arrays.asList("three.txt", "two.txt"), names(index.getNewest(2)), "Newest");
+        assertEquals(Arrays.asList("three.txt"), names(index.getLargest(1)), "Largest");
+
+        write(testDir.resolve("a").resolve("one.txt"), 100, 4000L);
+        write(testDir.resolve("a").resolve("four.txt"), 5, 500L);
+        Files.delete(testDir.resolve("c").resolve("three.txt"));
+        observer.checkAndNotify();
+
+        assertEquals(3, index.size(), "Indexed files");
+        assertEquals(3, index.getCount("a"), "Prefix count after check");
+        assertEquals(125, index.getLength("a"), "Prefix length after check");
+        assertEquals(0, index.getCount("c"), "Emptied prefix count");
+        assertEquals(Arrays.asList("one.txt"), names(index.getNewest(1)), "Newest after check");
+        assertEquals(Arrays.asList("one.txt", "two.txt", "four.txt"), names(index.getLargest(5)), "Largest after check");
+    }
+
+    /**
+     * Test an index created while a check runs waits for it, so it misses
+     * none of its changes.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testIndexDuringCheck() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final NIOFileAlterationObserver observer = new NIOFileAlterationObserver(testDir);
+        observer.addListener(new NIOFileAlterationListenerAdaptor() {
+            @Override
+            public void onStart(final NIOFileAlterationObserver observer) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        observer.initialize();
+        write(testDir.resolve("one.txt"), 10, 1000L);
+
+        final CompletableFuture<Void> check = CompletableFuture.runAsync(observer::checkAndNotify);
+        assertTrue(started.await(5, TimeUnit.SECONDS), "Check started");
+        final CompletableFuture<NIOSnapshotIndex> index = CompletableFuture.supplyAsync(observer::getIndex);
+        assertThrows(TimeoutException.class, () -> index.get(100, TimeUnit.MILLISECONDS), "Waits for the check");
+        release.countDown();
+        check.get(5, TimeUnit.SECONDS);
+        assertEquals(1, index.get(5, TimeUnit.SECONDS).getCount(""), "Change of the check indexed");
+    }
+
+    private static List<String> names(final List<NIOFileEntry> entries) {
+        return entries.stream().map(NIOFileEntry::getName).collect(Collectors.toList());
+    }
+}
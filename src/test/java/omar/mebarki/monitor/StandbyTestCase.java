@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link NIOStandby} Test Case.
+ */
+public class StandbyTestCase {
+
+    @TempDir
+    protected Path tempDir;
+
+    /**
+     * Test a standby following the primary takes over without walking the
+     * directory nor reporting the changes the primary already reported.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testFailover() throws Exception {
+        final Path testDir = Files.createDirectory(tempDir.resolve("bucket"));
+        final Path baseFile = Files.createDirectory(tempDir.resolve("shared")).resolve("bucket");
+        Files.write(Files.createDirectory(testDir.resolve("a")).resolve("one.txt"), new byte[1]);
+
+        final NIOFileAlterationObserver primary = new NIOFileAlterationObserver(testDir);
+        final NIOFileAlterationObserver standbyObserver = new NIOFileAlterationObserver(testDir);
+        final CollectionFileListener listener = new CollectionFileListener(true);
+        standbyObserver.addListener(listener);
+        try (NIOSharedSnapshotPublisher publisher = new NIOSharedSnapshotPublisher(baseFile, 4096)) {
+            primary.addListener(publisher);
+            primary.initialize();
+            try (NIOSharedSnapshotReader reader = new NIOSharedSnapshotReader(baseFile, testDir);
+                 NIOStandby standby = new NIOStandby(standbyObserver)) {
+                standby.follow(reader, 10);
+
+                Files.write(Files.createDirectories(testDir.resolve("b").resolve("c")).resolve("two.txt"), new byte[2]);
+                Files.write(testDir.resolve("a").resolve("three.txt"), new byte[3]);
+                Files.delete(testDir.resolve("a").resolve("one.txt"));
+                primary.checkAndNotify();
+                final long deadline = System.currentTimeMillis() + 5000;
+                while (standby.getAppliedCount() < 6 && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(10);
+                }
+                assertEquals(6, standby.getAppliedCount(), "Changes applied");
+                assertNotNull(standbyObserver.getIndex().lookup("b/c/two.txt"), "Snapshot up to date");
+
+                // the primary fails
+                assertSame(standbyObserver, standby.promote());
+            }
+        }
+        assertArrayEquals(primary.getSnapshotHash(), standbyObserver.getSnapshotHash(), "Same snapshot");
+
+        standbyObserver.initialize();
+        standbyObserver.checkAndNotify();
+        assertTrue(listener.getCreatedFiles().isEmpty() && listener.getDeletedFiles().isEmpty(), "No duplicate events");
+        final Path four = Files.write(testDir.resolve("b").resolve("four.txt"), new byte[4]);
+        standbyObserver.checkAndNotify();
+        assertEquals(Collections.singletonList(four), listener.getCreatedFiles(), "Observing");
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link NIOFileAlterationObserver#triggerNow(Path)} Test Case.
+ */
+public class TriggerTestCase {
+
+    @TempDir
+    protected Path testDir;
+
+    private final CollectionFileListener listener = new CollectionFileListener(true);
+
+    private NIOFileAlterationObserver observer;
+
+    private Path dirA;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        dirA = Files.createDirectory(testDir.resolve("a"));
+        Files.createDirectory(testDir.resolve("b"));
+        observer = new NIOFileAlterationObserver(testDir);
+        observer.addListener(listener);
+        observer.initialize();
+    }
+
+    /**
+     * Test a trigger checks only its subtree and merges it into the snapshot.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testTriggerSubtree() throws Exception {
+        final Path inA = write(dirA.resolve("one.txt"));
+        final Path inB = write(testDir.resolve("b").resolve("two.txt"));
+        observer.triggerNow(dirA);
+        assertEquals(Collections.singletonList(inA), listener.getCreatedFiles(), "Only the subtree checked");
+        assertEquals(2, observer.getLastRequestCount(), "Requests");
+
+        observer.checkAndNotify();
+        assertEquals(Collections.singletonList(inB), listener.getCreatedFiles(), "Merged into the snapshot");
+    }
+
+    /**
+     * Test a trigger for a key below directories not yet known.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testTriggerNewKeys() throws Exception {
+        final Path dir = Files.createDirectories(dirA.resolve("x").resolve("y"));
+        final Path file = write(dir.resolve("file.txt"));
+        observer.triggerNow(file);
+        assertEquals(Collections.singletonList(file), listener.getCreatedFiles(), "File created");
+        assertEquals(new HashSet<>(Arrays.asList(dir.getParent(), dir)), new HashSet<>(listener.getCreatedDirectories()),
+                "Directories created");
+
+        Files.delete(file);
+        observer.triggerNow(file);
+        assertEquals(Collections.singletonList(file), listener.getDeletedFiles(), "File deleted");
+        observer.checkAndNotify();
+        assertTrue(listener.getDeletedFiles().isEmpty() && listener.getCreatedFiles().isEmpty(), "Snapshot up to date");
+    }
+
+    /**
+     * Test concurrent triggers are coalesced into one check.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testCoalescing() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicInteger checks = new AtomicInteger();
+        observer.addListener(new NIOFileAlterationListenerAdaptor() {
+            @Override
+            public void onStart(final NIOFileAlterationObserver observer) {
+                checks.incrementAndGet();
+                started.countDown();
+                sleep(200);
+            }
+        });
+        final Thread first = new Thread(() -> observer.triggerNow(dirA));
+        first.start();
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        final List<Thread> others = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final Thread thread = new Thread(() -> observer.triggerNow(dirA));
+            thread.start();
+            others.add(thread);
+        }
+        first.join();
+        for (final Thread thread : others) {
+            thread.join();
+        }
+        assertEquals(2, checks.get(), "Triggers made during a check coalesced");
+    }
+
+    /**
+     * Test a trigger taken by a check still running waits for that check.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testTriggerTakenByRunningCheck() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        observer.addListener(new NIOFileAlterationListenerAdaptor() {
+            @Override
+            public void onStart(final NIOFileAlterationObserver observer) {
+                started.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        final Path file = write(dirA.resolve("new.txt"));
+        final long ticket = observer.requestTrigger(file);
+        final Thread check = new Thread(observer::checkAndNotify);
+        check.start();
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        final Thread trigger = new Thread(() -> observer.runTriggers(ticket));
+        trigger.start();
+        trigger.join(200);
+        assertTrue(trigger.isAlive(), "Waiting for the running check");
+        release.countDown();
+        trigger.join(5000);
+        assertFalse(trigger.isAlive(), "Done once the check finished");
+        check.join();
+        assertEquals(Collections.singletonList(file), listener.getCreatedFiles(), "Checked");
+    }
+
+    /**
+     * Test a trigger made while the baseline is being listed waits for it.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testTriggerDuringInitialization() throws Exception {
+        final NIOFileAlterationObserver loading = new NIOFileAlterationObserver(testDir);
+        final List<Runnable> listings = Collections.synchronizedList(new ArrayList<>());
+        loading.initializeAsync(listings::add);
+        final Thread trigger = new Thread(() -> loading.triggerNow(dirA));
+        trigger.start();
+        trigger.join(200);
+        assertTrue(trigger.isAlive(), "Waiting for the baseline");
+        while (!listings.isEmpty()) {
+            listings.remove(0).run();
+        }
+        trigger.join(5000);
+        assertFalse(trigger.isAlive(), "Checked once the baseline is loaded");
+        assertTrue(loading.getReadyFuture().isDone(), "Baseline loaded");
+    }
+
+    /**
+     * Test the monitor checks a triggered subtree without waiting for the interval.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testMonitorTrigger() throws Exception {
+        final NIOFileAlterationMonitor monitor = new NIOFileAlterationMonitor(60000, observer);
+        monitor.start();
+        try {
+            Thread.sleep(100);
+            final Path file = write(dirA.resolve("new.txt"));
+            monitor.triggerNow(file).get(5, TimeUnit.SECONDS);
+            assertEquals(Collections.singletonList(file), listener.getCreatedFiles(), "Checked right away");
+        } finally {
+            monitor.stop(1000);
+        }
+    }
+
+    private static Path write(final Path file) throws IOException {
+        return Files.write(file, new byte[1]);
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
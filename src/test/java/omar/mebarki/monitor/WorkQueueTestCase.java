@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link NIOWorkQueueListener} Test Case.
+ */
+public class WorkQueueTestCase {
+
+    @TempDir
+    protected Path tempDir;
+
+    /**
+     * Test concurrent consumers each process a different share of the files.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testExactlyOnce() throws Exception {
+        final Path testDir = Files.createDirectory(tempDir.resolve("bucket"));
+        final NIOClaimStore store = new NIOFileClaimStore(tempDir.resolve("claims"));
+        final List<NIOFileAlterationObserver> observers = new ArrayList<>();
+        final List<CollectionFileListener> delegates = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            final NIOFileAlterationObserver observer = new NIOFileAlterationObserver(testDir);
+            final CollectionFileListener delegate = new CollectionFileListener(false);
+            observer.addListener(new NIOWorkQueueListener(store, "consumer-" + i, delegate, 60000));
+            observer.initialize();
+            observers.add(observer);
+            delegates.add(delegate);
+        }
+        for (int i = 0; i < 20; i++) {
+            Files.write(testDir.resolve("file" + i + ".txt"), new byte[i]);
+        }
+
+        final List<CompletableFuture<Void>> checks = new ArrayList<>();
+        for (final NIOFileAlterationObserver observer : observers) {
+            checks.add(CompletableFuture.runAsync(observer::checkAndNotify));
+        }
+        CompletableFuture.allOf(checks.toArray(new CompletableFuture<?>[0])).join();
+
+        final Set<Path> processed = new HashSet<>();
+        int deliveries = 0;
+        for (final CollectionFileListener delegate : delegates) {
+            processed.addAll(delegate.getCreatedFiles());
+            deliveries += delegate.getCreatedFiles().size();
+        }
+        assertEquals(20, processed.size(), "All files processed");
+        assertEquals(20, deliveries, "Each file processed once");
+
+        // a changed file is new work
+        Files.write(testDir.resolve("file3.txt"), new byte[42]);
+        int changes = 0;
+        for (final NIOFileAlterationObserver observer : observers) {
+            observer.checkAndNotify();
+        }
+        for (final CollectionFileListener delegate : delegates) {
+            changes += delegate.getChangedFiles().size();
+        }
+        assertEquals(1, changes, "Changed file processed once");
+    }
+
+    /**
+     * Test files are delivered again after a failure or an expired claim.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRedelivery() throws Exception {
+        final Path testDir = Files.createDirectory(tempDir.resolve("bucket"));
+        final NIOClaimStore store = new NIOFileClaimStore(tempDir.resolve("claims"));
+        final NIOFileAlterationObserver failing = new NIOFileAlterationObserver(testDir);
+        failing.addListener(new NIOWorkQueueListener(store, "failing", new NIOFileAlterationListenerAdaptor() {
+            @Override
+            public void onFileCreate(final Path file) {
+                throw new IllegalStateException("Processing failed");
+            }
+        }, 60000));
+        final NIOFileAlterationObserver healthy = new NIOFileAlterationObserver(testDir);
+        final CollectionFileListener delegate = new CollectionFileListener(false);
+        final NIOWorkQueueListener queue = new NIOWorkQueueListener(store, "healthy", delegate, 60000);
+        healthy.addListener(queue);
+        failing.initialize();
+        healthy.initialize();
+
+        final Path one = Files.write(testDir.resolve("one.txt"), new byte[1]);
+        failing.checkAndNotify();
+        healthy.checkAndNotify();
+        assertEquals(Collections.singletonList(one), delegate.getCreatedFiles(), "Abandoned file redelivered");
+        assertTrue(queue.getQueuedFiles().isEmpty(), "Nothing queued");
+
+        // a consumer claims a file, then fails before completing it
+        final Path two = Files.write(testDir.resolve("two.txt"), new byte[2]);
+        final NIOFileEntry entry = new NIOFileEntry(two);
+        entry.refresh(two);
+        final String key = queue.keyOf(NIOFileChange.of(NIOFileChange.Kind.CREATE, entry));
+        assertTrue(store.tryClaim(key, "crashed", 200), "Claimed");
+        healthy.checkAndNotify();
+        assertEquals(Collections.singletonList(two), queue.getQueuedFiles(), "Claimed elsewhere");
+        final long deadline = System.currentTimeMillis() + 5000;
+        int delivered = 0;
+        while (delivered == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            delivered = queue.deliver();
+        }
+        assertEquals(1, delivered, "Expired claim redelivered");
+        assertTrue(delegate.getCreatedFiles().contains(two), "Delivered");
+        assertTrue(store.isCompleted(key), "Completed");
+        assertFalse(store.tryClaim(key, "crashed", 200), "Completed work is not claimed again");
+    }
+
+    /**
+     * Test completed and expired claims are removed after the retention.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testCompaction() throws Exception {
+        final Path claims = tempDir.resolve("claims");
+        final NIOFileClaimStore store = new NIOFileClaimStore(claims, 200);
+        assertTrue(store.tryClaim("done", "consumer", 60000), "Claimed");
+        assertTrue(store.complete("done", "consumer"), "Completed");
+        assertTrue(store.tryClaim("expired", "crashed", 10), "Claimed");
+        assertTrue(store.tryClaim("held", "consumer", 60000), "Claimed");
+        assertEquals(0, store.compact(), "Nothing past the retention");
+        assertTrue(store.isCompleted("done"), "Completed kept");
+
+        // completing runs the compaction once the retention has passed
+        final Path done = claims.resolve("done.claim");
+        final Path expired = claims.resolve("expired.claim");
+        final long deadline = System.currentTimeMillis() + 5000;
+        String next = null;
+        for (int i = 0; (next == null || Files.exists(done) || Files.exists(expired))
+                && System.currentTimeMillis() < deadline; i++) {
+            Thread.sleep(20);
+            next = "next" + i;
+            assertTrue(store.tryClaim(next, "consumer", 60000), "Claimed");
+            assertTrue(store.complete(next, "consumer"), "Completed");
+        }
+        assertFalse(store.isCompleted("done"), "Completed claim removed");
+        assertFalse(Files.exists(expired), "Expired claim removed");
+        assertTrue(store.isCompleted(next), "Recent completed claim kept");
+        assertFalse(store.tryClaim("held", "other", 60000), "Claim held kept");
+    }
+}
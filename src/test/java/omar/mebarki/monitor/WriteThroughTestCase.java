@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package omar.mebarki.monitor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link NIOWriteThroughFiles} Test Case.
+ */
+public class WriteThroughTestCase {
+
+    @TempDir
+    protected Path tempDir;
+
+    /**
+     * Test changes made through the facade fire events right away and are
+     * not reported again by the next check.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testWriteThrough() throws Exception {
+        final Path testDir = Files.createDirectory(tempDir.resolve("bucket"));
+        final Path outside = Files.write(tempDir.resolve("upload.txt"), new byte[3]);
+        final CollectionFileListener listener = new CollectionFileListener(true);
+        final NIOFileAlterationObserver observer = new NIOFileAlterationObserver(testDir);
+        observer.addListener(listener);
+        observer.initialize();
+        final NIOWriteThroughFiles files = new NIOWriteThroughFiles(observer);
+
+        final Path uploaded = testDir.resolve("dir").resolve("upload.txt");
+        files.createDirectories(uploaded.getParent());
+        assertEquals(Collections.singletonList(uploaded.getParent()), listener.getCreatedDirectories(), "Directory");
+        files.copy(outside, uploaded);
+        assertEquals(Collections.singletonList(uploaded), listener.getCreatedFiles(), "Upload");
+        assertEquals(0, observer.getLastRequestCount(), "Nothing listed");
+
+        final Path moved = testDir.resolve("moved.txt");
+        files.move(uploaded, moved, StandardCopyOption.REPLACE_EXISTING);
+        assertEquals(Collections.singletonList(moved), listener.getCreatedFiles(), "Move target");
+        assertEquals(Collections.singletonList(uploaded), listener.getDeletedFiles(), "Move source, same check");
+
+        observer.checkAndNotify();
+        assertTrue(listener.getCreatedFiles().isEmpty(), "Nothing left for the check");
+
+        files.delete(moved);
+        assertEquals(Collections.singletonList(moved), listener.getDeletedFiles(), "Delete");
+        files.copy(moved.getParent().resolve("dir"), tempDir.resolve("copy"));
+        assertTrue(listener.getCreatedFiles().isEmpty(), "Paths outside the observer ignored");
+    }
+
+    /**
+     * Test the source and target of a move are reported in one check, so
+     * that they are paired as a move.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testMovePaired() throws Exception {
+        final Path testDir = Files.createDirectory(tempDir.resolve("bucket"));
+        final Path from = Files.createDirectories(testDir.resolve("from").resolve("dir"));
+        Files.write(from.resolve("file.txt"), new byte[3]);
+        Files.createDirectory(testDir.resolve("to"));
+        final Path file = Files.write(testDir.resolve("from").resolve("single.txt"), new byte[4]);
+        final List<String> moves = new ArrayList<>();
+        final NIOFileAlterationObserver observer = new NIOFileAlterationObserver(testDir);
+        observer.setMoveDetection(true);
+        observer.addListener(new MoveRecorder(testDir, moves));
+        observer.initialize();
+        final NIOWriteThroughFiles files = new NIOWriteThroughFiles(observer);
+
+        files.move(file, testDir.resolve("to").resolve("single.txt"));
+        files.move(from, testDir.resolve("to").resolve("dir"));
+        assertEquals(Arrays.asList(
+                Paths.get("from", "single.txt") + " -> " + Paths.get("to", "single.txt"),
+                Paths.get("from", "dir") + " -> " + Paths.get("to", "dir")), moves, "Moves");
+    }
+
+    /**
+     * Test a write made while a check runs does not wait for it, and is
+     * reported by that check.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testWriteDuringCheck() throws Exception {
+        final Path testDir = Files.createDirectory(tempDir.resolve("bucket"));
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger starts = new AtomicInteger();
+        final CollectionFileListener listener = new CollectionFileListener(false);
+        final NIOFileAlterationObserver observer = new NIOFileAlterationObserver(testDir);
+        observer.addListener(new NIOFileAlterationListenerAdaptor() {
+            @Override
+            public void onStart(final NIOFileAlterationObserver observer) {
+                starts.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        observer.addListener(listener);
+        observer.initialize();
+        final NIOWriteThroughFiles files = new NIOWriteThroughFiles(observer);
+
+        final CompletableFuture<Void> check = CompletableFuture.runAsync(observer::checkAndNotify);
+        assertTrue(started.await(5, TimeUnit.SECONDS), "Check started");
+        final Path written = files.write(testDir.resolve("written.txt"), new byte[2]);
+        assertTrue(listener.getCreatedFiles().isEmpty(), "Queued for the running check");
+        release.countDown();
+        check.get(5, TimeUnit.SECONDS);
+        assertEquals(Collections.singletonList(written), listener.getCreatedFiles(), "Reported by the check");
+        assertEquals(1, starts.get(), "Within the check");
+    }
+
+    /**
+     * Records the moves, relative to a directory.
+     */
+    private static final class MoveRecorder extends NIOFileAlterationListenerAdaptor implements NIOFileMoveListener {
+
+        private final Path directory;
+        private final List<String> moves;
+
+        private MoveRecorder(final Path directory, final List<String> moves) {
+            this.directory = directory;
+            this.moves = moves;
+        }
+
+        @Override
+        public void onFileMove(final Path from, final Path to) {
+            moves.add(directory.relativize(from) + " -> " + directory.relativize(to));
+        }
+
+        @Override
+        public void onDirectoryMove(final Path from, final Path to) {
+            moves.add(directory.relativize(from) + " -> " + directory.relativize(to));
+        }
+    }
+}